@@ -2,8 +2,8 @@ package jpacman.controller;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.List;
 import java.util.Random;
-import java.util.Vector;
 
 import javax.swing.Timer;
 
@@ -35,9 +35,9 @@ IMonsterController {
     private Timer timer;
 
     /**
-     * Vector of monsters that are to be moved.
+     * List of monsters that are to be moved.
      */
-    private Vector<Monster> monsters;
+    private volatile List<Monster> monsters;
 
     /**
      * Underlying game engine.
@@ -49,6 +49,12 @@ IMonsterController {
      */
     public static final int DELAY = 40;
 
+    /**
+     * Whether ticks are triggered by someone else, such as the game
+     * loop, rather than by the timer.
+     */
+    private boolean externalTicks = false;
+
     /**
      * Create a new monstercontroller using the default
      * delay and the given game engine.
@@ -80,6 +86,18 @@ IMonsterController {
         assert controllerInvariant();
     }
 
+    /**
+     * Let someone else, such as the game loop, call doTick,
+     * instead of the timer.
+     * @param external Whether ticks are triggered externally.
+     */
+    synchronized void setExternalTicks(boolean external) {
+        externalTicks = external;
+        if (external) {
+            timer.stop();
+        }
+    }
+
     /**
      * @see jpacman.controller.IMonsterController#start()
      */
@@ -88,7 +106,9 @@ IMonsterController {
         // the game may have been restarted -- refresh the monster list
         // contained.
         monsters = theEngine.getMonsters();
-        timer.start();
+        if (!externalTicks) {
+            timer.start();
+        }
         assert controllerInvariant();
         assert monsters != null;
     }
@@ -111,7 +131,7 @@ IMonsterController {
         Monster theMonster = null;
         if (monsters.size() > 0) {
             int monsterIndex = randomizer.nextInt(monsters.size());
-            theMonster = monsters.elementAt(monsterIndex);
+            theMonster = monsters.get(monsterIndex);
         }
         return theMonster;
     }
@@ -5,10 +5,14 @@ import java.awt.event.ActionListener;
 
 import javax.swing.Timer;
 
+import jpacman.model.Engine;
+
 /**
  * The primary responsibility of this class is
  * to trigger the board viewer to display the
- * next animation.
+ * next animation. While the game isn't being played,
+ * e.g. because it is halted or over, nothing animates,
+ * so the animator stops until it is started again.
  *
  * @author Arie van Deursen, 2007.
  * @version $Id: Animator.java,v 1.5 2008/02/03 19:43:38 arie Exp $
@@ -22,6 +26,12 @@ public class Animator {
      */
     private BoardViewer boardViewer;
 
+    /**
+     * The engine whose game is animated, or null to animate regardless
+     * of the game's state.
+     */
+    private Engine engine;
+
     /**
      * The timer used.
      */
@@ -30,18 +40,33 @@ public class Animator {
     /**
      * The delay between two animations.
      */
-    private static final int DELAY = 200;
+    static final int DELAY = 200;
 
     /**
      * Create an animator for a particular board viewer.
      * @param bv The view to be animated.
      */
     public Animator(BoardViewer bv) {
+        this(bv, null);
+    }
+
+    /**
+     * Create an animator for a particular board viewer,
+     * which stops once the game is no longer played.
+     * @param bv The view to be animated.
+     * @param e The engine playing the game, or null.
+     */
+    public Animator(BoardViewer bv, Engine e) {
         boardViewer = bv;
+        engine = e;
         timer = new Timer(DELAY,
                 new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
-                boardViewer.nextAnimation();
+            public void actionPerformed(ActionEvent event) {
+                if (engine == null || engine.inPlayingState()) {
+                    boardViewer.nextAnimation();
+                } else {
+                    timer.stop();
+                }
             }
         }
         );
@@ -60,4 +85,11 @@ public class Animator {
     public void start()  {
         timer.start();
     }
+
+    /**
+     * @return True iff animation events are triggered.
+     */
+    public boolean isRunning() {
+        return timer.isRunning();
+    }
 }
@@ -2,20 +2,21 @@ package jpacman.controller;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Image;
-import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.Arrays;
 
 import javax.swing.JPanel;
 
+import jpacman.model.BoardChanges;
+import jpacman.model.Cell;
 import jpacman.model.Engine;
 import jpacman.model.Guest;
+import jpacman.model.Monster;
 
 /**
  * A simple way to paint a pacman board. Benefited from code by code from the
@@ -44,9 +45,142 @@ public class BoardViewer extends JPanel {
     private Engine engine;
 
     /**
-     * Buffered image used for drawing cells.
+     * Image of the cells with their static guests (walls and food),
+     * on which the moving guests are drawn.
      */
-    private BufferedImage bimg = null;
+    private BufferedImage staticLayer = null;
+
+    /**
+     * Layout version of the walls drawn in the static layer.
+     */
+    private int staticVersion;
+
+    /**
+     * Graphics drawing on the static layer, kept for as long as the layer.
+     */
+    private Graphics2D layerGraphics = null;
+
+    /**
+     * Codes of the static guests drawn in the static layer, per visible
+     * cell, in row-major order.
+     */
+    private char[] shown;
+
+    /**
+     * Spare array of the size of shown, which takes the codes of the
+     * cells that remain visible when the static layer is scrolled.
+     */
+    private char[] scrolled;
+
+    /**
+     * Maximum number of columns of cells shown at a time.
+     */
+    public static final int MAX_VIEW_COLUMNS = 48;
+
+    /**
+     * Maximum number of rows of cells shown at a time.
+     */
+    public static final int MAX_VIEW_ROWS = 30;
+
+    /**
+     * The visible cell in the top left corner of the viewer, which
+     * follows the player over boards larger than the viewer.
+     */
+    private volatile int originX = 0, originY = 0;
+
+    /**
+     * The corner cell, and the number of columns and rows of cells,
+     * drawn in the static layer.
+     */
+    private int layerX, layerY, layerColumns, layerRows;
+
+    /**
+     * Whether the whole board is shown, scaled down to the viewer,
+     * rather than the cells around the player.
+     */
+    private volatile boolean overview = false;
+
+    /**
+     * Image of sampled cells of the overview, and the samples' colors.
+     */
+    private BufferedImage overviewImage = null;
+
+    /**
+     * The colors of the sampled cells of the overview, row by row.
+     */
+    private int[] samples = null;
+
+    /**
+     * Width and height of the mark of the player in the overview.
+     */
+    private static final int PLAYER_MARK = 7;
+
+    /**
+     * Stroke of the outlines of the cells.
+     */
+    private static final BasicStroke OUTLINE = new BasicStroke(5.0f);
+
+    /**
+     * Maximum number of changed cells waiting to be redrawn; beyond it,
+     * all cells are brought up to date.
+     */
+    private static final int MAX_PENDING = 1 << 14;
+
+    /**
+     * The thread painting the viewer instead of Swing, e.g. a game loop
+     * rendering on a canvas, or null if Swing paints it. The painting
+     * state, i.e. the static layer, the overview and the origin, belongs
+     * to that thread only; other threads merely report changes, switch
+     * the overview, and size the viewer.
+     */
+    private volatile Thread painter = null;
+
+    /**
+     * Guards the changed cells waiting to be redrawn, which are reported
+     * by the engine's thread and redrawn by Swing's.
+     */
+    private final Object pendingLock = new Object();
+
+    /**
+     * The changed cells waiting to be redrawn, as (x,y) pairs.
+     */
+    private int[] pending = new int[2 * 2 * 2];
+
+    /**
+     * The changed cells being redrawn, swapped with pending
+     * at the start of each frame.
+     */
+    private int[] redrawing = new int[2 * 2 * 2];
+
+    /**
+     * The number of changed cells waiting to be redrawn.
+     */
+    private int pendingCount = 0;
+
+    /**
+     * Whether any cell may have changed since the last frame.
+     */
+    private boolean pendingAll = true;
+
+    /**
+     * Buffer receiving the monsters to be drawn.
+     */
+    private Monster[] monsters = new Monster[2 * 2 * 2];
+
+    /**
+     * Buffer receiving the monsters whose animation is repainted.
+     */
+    private Monster[] animated = new Monster[2 * 2 * 2];
+
+    /**
+     * The number of cells redrawn in the last frame.
+     */
+    private int cellsRedrawn = 0;
+
+    /**
+     * The part of the viewer being drawn, reused across frames.
+     */
+    private final Rectangle clip = new Rectangle();
 
     /**
      * Width of an individual cell, in pixels.
@@ -94,7 +228,7 @@ public class BoardViewer extends JPanel {
         animationCount = 0;
         imageFactory = new ImageFactory();
         try {
-            imageFactory.loadImages();
+            imageFactory.loadImages(cellWidth(), cellHeight());
         } catch (IOException e) {
             // Issue a warning, and continue to work
             // with a null imageFactory.
@@ -106,34 +240,37 @@ public class BoardViewer extends JPanel {
     /**
      * @return The board width measured in cells, >= 0.
      */
-    private int worldWidth() {
+    int worldWidth() {
         return engine.boardWidth();
     }
 
     /**
      * @return The board height measured in cells, >= 0.
      */
-    private int worldHeight() {
+    int worldHeight() {
         return engine.boardHeight();
     }
 
     /**
-     * The width of the board viewer in pixels.
+     * The width of the board viewer in pixels, showing the whole board,
+     * or at most MAX_VIEW_COLUMNS of its columns.
      *
      * @return The width of the board viewer.
      */
     public int windowWidth() {
-        return (cellWidth() + CELL_HGAP) * worldWidth() + 2 * CELL_HGAP;
+        return (cellWidth() + CELL_HGAP)
+            * Math.min(worldWidth(), MAX_VIEW_COLUMNS) + 2 * CELL_HGAP;
     }
 
     /**
-     * The height of the board viewer in pixels.
+     * The height of the board viewer in pixels, showing the whole board,
+     * or at most MAX_VIEW_ROWS of its rows.
      *
      * @return The height of the board viewer.
      */
     public int windowHeight() {
         return
-        (cellHeight() + CELL_VGAP) * worldHeight()
+        (cellHeight() + CELL_VGAP) * Math.min(worldHeight(), MAX_VIEW_ROWS)
         + 2 * CELL_VGAP;
     }
 
@@ -155,120 +292,859 @@ public class BoardViewer extends JPanel {
 
     /**
      * JComponent method invoked when the board needs to be drawn.
+     * The cells that changed since the last frame are brought up to date
+     * in the static layer, which is copied, and the moving guests within
+     * the clip are drawn on top; Swing's double buffering takes care of
+     * showing the result at once. Painting a frame allocates no objects,
+     * unless the static layer must be drawn anew.
+     * <p>
+     * Only the cells visible in the viewer are drawn, so the time needed
+     * depends on the size of the viewer rather than on that of the board.
+     * If the player comes near the edge of the viewer, the viewer scrolls
+     * to center it, and the static layer is drawn anew.
      * @param g The graphics to paint the board on.
      */
     @Override
     public void paint(Graphics g) {
-        Dimension d = getSize();
-        Graphics2D g2 = createGraphics2D(d.width, d.height);
-        drawCells(g2);
-        g2.dispose();
-        g.drawImage(bimg, 0, 0, this);
+        Graphics2D g2 = (Graphics2D) g;
+        if (overview) {
+            cellsRedrawn = paintOverview(g2);
+            return;
+        }
+        int redrawn = paintBoard(g2);
+        clip.setBounds(0, 0, getWidth(), getHeight());
+        g2.getClipBounds(clip);
+        cellsRedrawn = redrawn + drawMovingGuests(clip, g2);
+    }
+
+    /**
+     * Bring the cells that changed since the last frame up to date in
+     * the static layer, and copy it, without the moving guests.
+     * @param g2 The graphics to paint the board on.
+     * @return The number of cells redrawn.
+     */
+    int paintBoard(Graphics2D g2) {
+        assert paintingThread() : "Painted by another thread than its painter";
+        int count = takePending();
+        if (followPlayer()) {
+            // the clip may cover just a few cells.
+            repaint();
+        }
+        BufferedImage layer = staticLayer(getWidth(), getHeight());
+        int redrawn;
+        if (count < 0) {
+            redrawn = updateStaticLayer();
+        } else {
+            redrawn = updateStaticLayer(redrawing, count);
+        }
+        g2.drawImage(layer, 0, 0, null);
+        return redrawn;
+    }
+
+    /**
+     * Make a thread, rather than Swing, paint the viewer from now on.
+     * @param t The thread painting the viewer, or null for Swing.
+     */
+    void setPainter(Thread t) {
+        painter = t;
+    }
+
+    /**
+     * @return True iff the viewer is painted by the current thread,
+     *         or there's no thread painting it instead of Swing.
+     */
+    private boolean paintingThread() {
+        Thread t = painter;
+        return t == null || t == Thread.currentThread();
+    }
+
+    /**
+     * Take the cells that changed since the last frame, which are left
+     * in redrawing, and start collecting them anew.
+     * @return The number of changed cells, or -1 if all cells must be
+     *         brought up to date.
+     */
+    private int takePending() {
+        synchronized (pendingLock) {
+            int[] cells = pending;
+            pending = redrawing;
+            redrawing = cells;
+            int result = pendingCount;
+            if (pendingAll) {
+                result = -1;
+            }
+            pendingCount = 0;
+            pendingAll = false;
+            return result;
+        }
+    }
+
+    /**
+     * Schedule the cells that have changed to be redrawn, rather than
+     * the whole board. Swing may join the cells into one larger region
+     * before drawing them.
+     * @param changes The changed cells, as reported by the engine.
+     */
+    public void repaintChanges(BoardChanges changes) {
+        synchronized (pendingLock) {
+            if (!changes.isComplete()
+                    || pendingCount + changes.size() > MAX_PENDING) {
+                pendingAll = true;
+            } else if (!pendingAll) {
+                int needed = 2 * (pendingCount + changes.size());
+                if (needed > pending.length) {
+                    pending = Arrays.copyOf(pending,
+                            Math.max(2 * pending.length, needed));
+                    redrawing = new int[pending.length];
+                }
+                for (int i = 0; i < changes.size(); i++) {
+                    pending[2 * pendingCount] = changes.getX(i);
+                    pending[2 * pendingCount + 1] = changes.getY(i);
+                    pendingCount++;
+                }
+            }
+        }
+        if (!changes.isComplete()) {
+            repaintAll();
+            return;
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            repaintCell(changes.getX(i), changes.getY(i));
+        }
+        // the player may have turned without moving.
+        Cell at = engine.getPlayer().getLocation();
+        if (at != null) {
+            repaintCell(at.getX(), at.getY());
+        }
+    }
+
+    /**
+     * @return True iff cells changed since the last frame, so that
+     *         a frame painted now would differ from the last one.
+     */
+    boolean hasPendingChanges() {
+        synchronized (pendingLock) {
+            return pendingAll || pendingCount > 0;
+        }
+    }
+
+    /**
+     * Schedule all cells to be brought up to date and redrawn.
+     */
+    void repaintAll() {
+        synchronized (pendingLock) {
+            pendingAll = true;
+        }
+        repaint();
+    }
+
+    /**
+     * Schedule a single cell to be redrawn.
+     * @param x x-coordinate
+     * @param y y-coordinate
+     */
+    private void repaintCell(int x, int y) {
+        if (overview) {
+            // the part of the overview showing the cell, and the mark
+            // of the player, if it is there.
+            int w = getWidth();
+            int h = getHeight();
+            int left = (int) ((long) x * w / worldWidth());
+            int top = (int) ((long) y * h / worldHeight());
+            int right = (int) ((long) (x + 1) * w / worldWidth());
+            int bottom = (int) ((long) (y + 1) * h / worldHeight());
+            repaint(left - PLAYER_MARK, top - PLAYER_MARK,
+                    right - left + 2 * PLAYER_MARK,
+                    bottom - top + 2 * PLAYER_MARK);
+        } else if (visible(x, y)) {
+            repaint(cellX(x), cellY(y), cellWidth(), cellHeight());
+        }
+    }
+
+    /**
+     * @return The number of columns of cells that fit in the viewer.
+     */
+    private int viewColumns() {
+        return Math.max(1, Math.min(worldWidth(),
+                (getWidth() - CELL_HGAP) / (cellWidth() + CELL_HGAP)));
+    }
+
+    /**
+     * @return The number of rows of cells that fit in the viewer.
+     */
+    private int viewRows() {
+        return Math.max(1, Math.min(worldHeight(),
+                (getHeight() - CELL_VGAP) / (cellHeight() + CELL_VGAP)));
+    }
+
+    /**
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @return True iff the cell at (x,y) is (partly) visible.
+     */
+    private boolean visible(int x, int y) {
+        return x >= originX && x < originX + viewColumns()
+            && y >= originY && y < originY + viewRows();
+    }
+
+    /**
+     * Scroll the viewer, if needed, so that the player stays away from
+     * its edges, keeping the viewer within the board.
+     * @return True iff the viewer scrolled.
+     */
+    private boolean followPlayer() {
+        Cell at = engine.getPlayer().getLocation();
+        if (at == null) {
+            return false;
+        }
+        int x = scroll(originX, at.getX(), viewColumns(), worldWidth());
+        int y = scroll(originY, at.getY(), viewRows(), worldHeight());
+        boolean result = x != originX || y != originY;
+        originX = x;
+        originY = y;
+        return result;
+    }
+
+    /**
+     * Scroll along one axis: if the player is within a quarter of
+     * the visible cells from an edge, center it.
+     * @param origin First visible cell
+     * @param player Position of the player
+     * @param visible Number of visible cells
+     * @param world Number of cells of the board
+     * @return The new first visible cell.
+     */
+    private static int scroll(int origin, int player, int visible,
+            int world) {
+        int margin = visible / 4;
+        int result = origin;
+        if (player < origin + margin || player >= origin + visible - margin) {
+            result = player - visible / 2;
+        }
+        return Math.max(0, Math.min(result, world - visible));
+    }
+
+    /**
+     * @return The column of the visible cell in the top left corner.
+     */
+    public int getOriginX() {
+        return originX;
+    }
+
+    /**
+     * @return The row of the visible cell in the top left corner.
+     */
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * Switch between showing the cells around the player, and an
+     * overview of the whole board.
+     * @param on Whether to show the overview.
+     */
+    public void setOverview(boolean on) {
+        overview = on;
+        repaintAll();
+    }
+
+    /**
+     * @return True iff the whole board is shown, scaled down.
+     */
+    public boolean isOverview() {
+        return overview;
     }
 
     /**
-     * Create a piece of graphics to display the board on.
-     * @param w desired width in pixels
-     * @param h desired height in pixels
-     * @return The graphics to display the board.
+     * Paint the whole board scaled down to the viewer. Rather than
+     * drawing each cell, the board is sampled at (at most) one cell per
+     * pixel, so the time needed depends on the size of the viewer. The
+     * samples are kept between frames: only those of cells that changed
+     * since the last frame are taken anew, unless all cells may have
+     * changed, in which case the sampled cells are read a row at a time,
+     * locking the engine once per row.
+     * The player, who may not be sampled, is marked separately.
+     * @param g2 The graphics to paint the overview on.
+     * @return The number of cells sampled.
      */
-    private Graphics2D createGraphics2D(int w, int h) {
-        Graphics2D g2 = null;
-        if (bimg == null
-                || bimg.getWidth() != w
-                || bimg.getHeight() != h) {
-            bimg = (BufferedImage) createImage(w, h);
+    int paintOverview(Graphics2D g2) {
+        assert paintingThread() : "Painted by another thread than its painter";
+        int count = takePending();
+        int w = Math.max(1, getWidth());
+        int h = Math.max(1, getHeight());
+        int sw = Math.min(w, worldWidth());
+        int sh = Math.min(h, worldHeight());
+        if (sw == 0 || sh == 0) {
+            return 0;
         }
-        g2 = bimg.createGraphics();
+        if (overviewImage == null || overviewImage.getWidth() != sw
+                || overviewImage.getHeight() != sh) {
+            overviewImage = new BufferedImage(sw, sh,
+                    BufferedImage.TYPE_INT_RGB);
+            samples = new int[sw * sh];
+            count = -1;
+        }
+        int sampled = 0;
+        if (count < 0) {
+            sampled = sampleOverview(sw, sh);
+            overviewImage.setRGB(0, 0, sw, sh, samples, 0, sw);
+        } else {
+            for (int i = 0; i < count; i++) {
+                sampled += resample(redrawing[2 * i], redrawing[2 * i + 1],
+                        sw, sh);
+            }
+        }
+        g2.drawImage(overviewImage, 0, 0, w, h, null);
+        Cell at = engine.getPlayer().getLocation();
+        if (at != null) {
+            g2.setColor(Color.YELLOW);
+            g2.fillOval((int) ((long) at.getX() * w / worldWidth())
+                    - PLAYER_MARK / 2,
+                    (int) ((long) at.getY() * h / worldHeight())
+                    - PLAYER_MARK / 2,
+                    PLAYER_MARK, PLAYER_MARK);
+        }
+        return sampled;
+    }
+
+    /**
+     * Take all samples of the overview anew. Only the sampled cells are
+     * read, those of a row of samples while the engine is locked once.
+     * @param sw Number of samples along a row
+     * @param sh Number of rows of samples
+     * @return The number of cells sampled.
+     */
+    private int sampleOverview(int sw, int sh) {
+        int width = worldWidth();
+        int height = worldHeight();
+        for (int sy = 0; sy < sh; sy++) {
+            int y = (int) ((long) sy * height / sh);
+            synchronized (engine) {
+                for (int sx = 0; sx < sw; sx++) {
+                    int x = (int) ((long) sx * width / sw);
+                    samples[sy * sw + sx] =
+                        colorOf(engine.getGuestCode(x, y)).getRGB();
+                }
+            }
+        }
+        return sw * sh;
+    }
+
+    /**
+     * Take the sample of a changed cell anew, if the cell is sampled.
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @param sw Number of samples along a row
+     * @param sh Number of rows of samples
+     * @return The number of cells sampled, 0 or 1.
+     */
+    private int resample(int x, int y, int sw, int sh) {
+        int sx = sampleOf(x, worldWidth(), sw);
+        int sy = sampleOf(y, worldHeight(), sh);
+        if (sx < 0 || sy < 0) {
+            return 0;
+        }
+        int rgb = colorOf(engine.getGuestCode(x, y)).getRGB();
+        samples[sy * sw + sx] = rgb;
+        overviewImage.setRGB(sx, sy, rgb);
+        return 1;
+    }
+
+    /**
+     * Find the sample of a cell along one axis, the sample s taking
+     * cell s * cells / count.
+     * @param cell Position of the cell
+     * @param cells Number of cells along the axis
+     * @param count Number of samples along the axis, at most cells
+     * @return The sample taking the cell, or -1 if it isn't sampled.
+     */
+    static int sampleOf(int cell, int cells, int count) {
+        // the first sample taking a cell at or beyond the given one.
+        int s = (int) (((long) cell * count + cells - 1) / cells);
+        if (s < count && (int) ((long) s * cells / count) == cell) {
+            return s;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The number of cells redrawn in the last frame, counting
+     *         both cells of the static layer and moving guests.
+     */
+    public int getCellsRedrawn() {
+        return cellsRedrawn;
+    }
+
+    /**
+     * Render part of the board on an image, as the viewer would show it
+     * with cell (x0,y0) in its top left corner, but without changing
+     * what the viewer shows. The viewer needn't be displayed, so this
+     * also works headless, e.g. to export or benchmark the board.
+     * @param target The image to render on
+     * @param x0 Column of the top left cell
+     * @param y0 Row of the top left cell
+     * @return The number of cells rendered.
+     */
+    public int render(BufferedImage target, int x0, int y0) {
+        Graphics2D g2 = target.createGraphics();
+        try {
+            return render(g2, target.getWidth(), target.getHeight(), x0, y0);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Render the cells from (x0,y0) that are (partly) within an area.
+     * The guest codes of these cells are read at once, so the engine
+     * is locked just once.
+     * @param g2 The graphics to render on
+     * @param width Width of the area in pixels
+     * @param height Height of the area in pixels
+     * @param x0 Column of the top left cell
+     * @param y0 Row of the top left cell
+     * @return The number of cells rendered.
+     */
+    int render(Graphics2D g2, int width, int height, int x0, int y0) {
+        assert x0 >= 0 && y0 >= 0;
+        int columns = Math.min(worldWidth() - x0,
+                (width - CELL_HGAP / 2 + cellWidth() + CELL_HGAP - 1)
+                / (cellWidth() + CELL_HGAP));
+        int rows = Math.min(worldHeight() - y0,
+                (height - CELL_VGAP / 2 + cellHeight() + CELL_VGAP - 1)
+                / (cellHeight() + CELL_VGAP));
         g2.setBackground(getBackground());
-        g2.clearRect(0, 0, w, h);
+        g2.clearRect(0, 0, width, height);
+        if (columns <= 0 || rows <= 0) {
+            return 0;
+        }
+        char[] codes = new char[columns * rows];
+        engine.getGuestCodes(x0, y0, columns, rows, codes);
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                 RenderingHints.VALUE_ANTIALIAS_ON);
-        return g2;
+        g2.setStroke(OUTLINE);
+        for (int y = 0; y < rows; y++) {
+            int py = CELL_VGAP / 2 + (cellHeight() + CELL_VGAP) * y;
+            for (int x = 0; x < columns; x++) {
+                int px = CELL_HGAP / 2 + (cellWidth() + CELL_HGAP) * x;
+                char code = codes[y * columns + x];
+                if (code == Guest.PLAYER_TYPE || code == Guest.MONSTER_TYPE) {
+                    code = Guest.EMPTY_TYPE;
+                }
+                g2.setColor(Color.blue);
+                g2.drawRect(px, py, cellWidth(), cellHeight());
+                g2.setColor(colorOf(code));
+                g2.fillRect(px, py, cellWidth(), cellHeight());
+            }
+        }
+        // moving guests are drawn on top, as in the viewer.
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                char code = codes[y * columns + x];
+                if (code == Guest.PLAYER_TYPE || code == Guest.MONSTER_TYPE) {
+                    drawSprite(CELL_HGAP / 2 + (cellWidth() + CELL_HGAP) * x,
+                            CELL_VGAP / 2 + (cellHeight() + CELL_VGAP) * y,
+                            code, g2);
+                }
+            }
+        }
+        return columns * rows;
+    }
+
+    /**
+     * Render a map of cells from (x0,y0), each a square of a single
+     * color, as in the overview. Runs of cells of the same color along
+     * a row are filled at once.
+     * @param g2 The graphics to render on
+     * @param x0 Column of the top left cell
+     * @param y0 Row of the top left cell
+     * @param columns Number of columns, within the board
+     * @param rows Number of rows, within the board
+     * @param pixelsPerCell Width and height of a cell in pixels
+     * @return The number of cells rendered.
+     */
+    int renderMap(Graphics2D g2, int x0, int y0, int columns, int rows,
+            int pixelsPerCell) {
+        assert x0 >= 0 && y0 >= 0 && pixelsPerCell > 0;
+        assert x0 + columns <= worldWidth() && y0 + rows <= worldHeight();
+        char[] codes = new char[columns * rows];
+        engine.getGuestCodes(x0, y0, columns, rows, codes);
+        for (int y = 0; y < rows; y++) {
+            int start = 0;
+            for (int x = 1; x <= columns; x++) {
+                if (x == columns || codes[y * columns + x]
+                        != codes[y * columns + start]) {
+                    g2.setColor(colorOf(codes[y * columns + start]));
+                    g2.fillRect(start * pixelsPerCell, y * pixelsPerCell,
+                            (x - start) * pixelsPerCell, pixelsPerCell);
+                    start = x;
+                }
+            }
+        }
+        return columns * rows;
+    }
+
+    /**
+     * Create an image compatible with the screen, or, without a screen,
+     * e.g. in headless benchmarks, an ordinary RGB image.
+     * @param w width in pixels
+     * @param h height in pixels
+     * @return The image.
+     */
+    private BufferedImage newImage(int w, int h) {
+        BufferedImage result = (BufferedImage) createImage(w, h);
+        if (result == null) {
+            result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        }
+        return result;
+    }
+
+    /**
+     * Return the static layer, drawing it anew if the size of the viewer,
+     * or the layout of the walls have changed since it was drawn. If
+     * only the visible cells have changed, the layer is scrolled instead,
+     * and just the cells that came into view are drawn.
+     * @param w width in pixels
+     * @param h height in pixels
+     * @return The static layer.
+     */
+    private BufferedImage staticLayer(int w, int h) {
+        int version = engine.getLayoutVersion();
+        if (staticLayer == null
+                || staticLayer.getWidth() != w
+                || staticLayer.getHeight() != h
+                || staticVersion != version
+                || layerColumns != viewColumns()
+                || layerRows != viewRows()) {
+            if (layerGraphics != null) {
+                layerGraphics.dispose();
+            }
+            staticLayer = newImage(w, h);
+            staticVersion = version;
+            layerX = originX;
+            layerY = originY;
+            layerColumns = viewColumns();
+            layerRows = viewRows();
+            shown = new char[layerColumns * layerRows];
+            scrolled = new char[layerColumns * layerRows];
+            layerGraphics = staticLayer.createGraphics();
+            layerGraphics.setBackground(getBackground());
+            layerGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            layerGraphics.setStroke(OUTLINE);
+            layerGraphics.clearRect(0, 0, w, h);
+            for (int x = layerX; x < layerX + layerColumns; x++) {
+                for (int y = layerY; y < layerY + layerRows; y++) {
+                    drawLayerCell(x, y);
+                }
+            }
+        } else if (layerX != originX || layerY != originY) {
+            scrollLayer(w, h);
+        }
+        return staticLayer;
+    }
+
+    /**
+     * Scroll the static layer to the visible cells, moving the cells that
+     * remain visible, and drawing those that came into view.
+     * @param w width in pixels
+     * @param h height in pixels
+     */
+    private void scrollLayer(int w, int h) {
+        int pw = cellWidth() + CELL_HGAP;
+        int ph = cellHeight() + CELL_VGAP;
+        int dx = originX - layerX;
+        int dy = originY - layerY;
+        layerGraphics.copyArea(0, 0, layerColumns * pw, layerRows * ph,
+                -dx * pw, -dy * ph);
+        // cells may have been moved beyond the last column or row.
+        layerGraphics.clearRect(layerColumns * pw, 0,
+                w - layerColumns * pw, h);
+        layerGraphics.clearRect(0, layerRows * ph, w, h - layerRows * ph);
+        char[] old = shown;
+        shown = scrolled;
+        scrolled = old;
+        int oldX = layerX;
+        int oldY = layerY;
+        layerX = originX;
+        layerY = originY;
+        for (int y = layerY; y < layerY + layerRows; y++) {
+            for (int x = layerX; x < layerX + layerColumns; x++) {
+                if (x >= oldX && x < oldX + layerColumns
+                        && y >= oldY && y < oldY + layerRows) {
+                    shown[(y - layerY) * layerColumns + x - layerX] =
+                        old[(y - oldY) * layerColumns + x - oldX];
+                } else {
+                    drawLayerCell(x, y);
+                }
+            }
+        }
     }
 
     /**
-     * Draw an individual cell.
+     * Draw a cell of the static layer from scratch: its outline, and its
+     * static guest. The gaps between cells are wider than the outline,
+     * so the neighbouring cells are left as they are.
      * @param x x-coordinate
      * @param y y-coordinate
+     */
+    private void drawLayerCell(int x, int y) {
+        layerGraphics.clearRect(cellX(x) - CELL_HGAP / 2,
+                cellY(y) - CELL_VGAP / 2,
+                cellWidth() + CELL_HGAP, cellHeight() + CELL_VGAP);
+        layerGraphics.setColor(Color.blue);
+        layerGraphics.drawRect(cellX(x), cellY(y), cellWidth(), cellHeight());
+        drawStaticCell(x, y, staticCode(x, y), layerGraphics);
+    }
+
+    /**
+     * Redraw all visible cells whose static guest has changed, e.g.
+     * because food was eaten or a moving guest left the cell.
+     * @return The number of cells redrawn.
+     */
+    private int updateStaticLayer() {
+        int result = 0;
+        for (int y = layerY; y < layerY + layerRows; y++) {
+            for (int x = layerX; x < layerX + layerColumns; x++) {
+                if (updateStaticCell(x, y, layerGraphics)) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Redraw the given cells if they are visible and their static guest
+     * has changed.
+     * @param cells The cells, as (x,y) pairs
+     * @param count The number of cells
+     * @return The number of cells redrawn.
+     */
+    private int updateStaticLayer(int[] cells, int count) {
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            int x = cells[2 * i];
+            int y = cells[2 * i + 1];
+            if (x >= layerX && x < layerX + layerColumns
+                    && y >= layerY && y < layerY + layerRows
+                    && updateStaticCell(x, y, layerGraphics)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Redraw a cell of the static layer if its static guest has changed.
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @param g2 Graphics of the static layer
+     * @return True iff the cell was redrawn.
+     */
+    private boolean updateStaticCell(int x, int y, Graphics2D g2) {
+        char code = staticCode(x, y);
+        if (code == shown[(y - layerY) * layerColumns + x - layerX]) {
+            return false;
+        }
+        drawStaticCell(x, y, code, g2);
+        return true;
+    }
+
+    /**
+     * Draw the player and the monsters within a clip.
+     * @param clip The part of the viewer to be drawn.
      * @param g2 Graphics to draw on
+     * @return The number of guests drawn.
      */
-    private void drawCell(int x, int y, Graphics2D g2) {
-        Dimension dim = new Dimension(cellWidth(), cellHeight());
-        Point loc = new Point(
-                CELL_HGAP / 2 + (cellWidth() + CELL_HGAP) * x,
-                CELL_VGAP / 2 + (cellHeight() + CELL_VGAP) * y);
-        Rectangle rect = new Rectangle(loc, dim);
-        g2.setColor(Color.blue);
-        g2.draw(rect);
-        Color fill = null;
-        Image img = null;
-
-        switch (engine.getGuestCode(x, y)) {
-        case Guest.WALL_TYPE:
-            fill = Color.ORANGE;
-            break;
-        case Guest.PLAYER_TYPE:
-            if (imageFactory != null) {
-                img = imageFactory.player(
-                        engine.getPlayerLastDx(),
-                        engine.getPlayerLastDy(),
-                        animationCount);
-            } else {
-                fill = Color.YELLOW;
+    private int drawMovingGuests(Rectangle clip, Graphics2D g2) {
+        int x0 = layerX + Math.max(0, clip.x / (cellWidth() + CELL_HGAP));
+        int y0 = layerY + Math.max(0, clip.y / (cellHeight() + CELL_VGAP));
+        int x1 = layerX + Math.min(layerColumns - 1,
+                (clip.x + clip.width) / (cellWidth() + CELL_HGAP));
+        int y1 = layerY + Math.min(layerRows - 1,
+                (clip.y + clip.height) / (cellHeight() + CELL_VGAP));
+        if (x0 > x1 || y0 > y1) {
+            return 0;
+        }
+        int count = engine.monstersInRectangle(x0, y0, x1, y1, monsters);
+        if (count > monsters.length) {
+            monsters = new Monster[2 * count];
+            count = engine.monstersInRectangle(x0, y0, x1, y1, monsters);
+        }
+        int result = 0;
+        for (int i = 0; i < count && i < monsters.length; i++) {
+            Cell at = monsters[i].getLocation();
+            monsters[i] = null;
+            if (at != null) {
+                drawMovingGuest(at.getX(), at.getY(), Guest.MONSTER_TYPE, g2);
+                result++;
             }
+        }
+        Cell at = engine.getPlayer().getLocation();
+        if (at != null && at.getX() >= x0 && at.getX() <= x1
+                && at.getY() >= y0 && at.getY() <= y1) {
+            drawMovingGuest(at.getX(), at.getY(), Guest.PLAYER_TYPE, g2);
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @return The code of the static guest at (x,y), or EMPTY_TYPE.
+     */
+    private char staticCode(int x, int y) {
+        char code = engine.getGuestCode(x, y);
+        if (code == Guest.PLAYER_TYPE || code == Guest.MONSTER_TYPE) {
+            code = Guest.EMPTY_TYPE;
+        }
+        return code;
+    }
+
+    /**
+     * @param x x-coordinate of a cell
+     * @return Horizontal position of the cell in the viewer, in pixels.
+     */
+    int cellX(int x) {
+        return CELL_HGAP / 2 + (cellWidth() + CELL_HGAP) * (x - originX);
+    }
+
+    /**
+     * @param y y-coordinate of a cell
+     * @return Vertical position of the cell in the viewer, in pixels.
+     */
+    int cellY(int y) {
+        return CELL_VGAP / 2 + (cellHeight() + CELL_VGAP) * (y - originY);
+    }
+
+    /**
+     * Fill a cell of the static layer according to its static guest:
+     * orange for walls, green for food, and black for empty cells.
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @param code The code of the static guest, or EMPTY_TYPE
+     * @param g2 Graphics of the static layer
+     */
+    private void drawStaticCell(int x, int y, char code, Graphics2D g2) {
+        assert code == Guest.WALL_TYPE || code == Guest.FOOD_TYPE
+            || code == Guest.EMPTY_TYPE : "Illegal guest code";
+        g2.setColor(colorOf(code));
+        g2.fillRect(cellX(x), cellY(y), cellWidth(), cellHeight());
+        shown[(y - layerY) * layerColumns + x - layerX] = code;
+    }
+
+    /**
+     * @param code The guest code of a cell
+     * @return The color the cell is drawn in, if not drawn as a sprite.
+     */
+    private static Color colorOf(char code) {
+        Color result;
+        switch (code) {
+        case Guest.WALL_TYPE:
+            result = Color.ORANGE;
             break;
         case Guest.FOOD_TYPE:
-            fill = Color.GREEN;
+            result = Color.GREEN;
             break;
-        case Guest.MONSTER_TYPE:
-            if (imageFactory != null) {
-                img = imageFactory.monster(animationCount);
-            } else {
-                fill = Color.BLUE;
-            }
+        case Guest.PLAYER_TYPE:
+            result = Color.YELLOW;
             break;
-        case Guest.EMPTY_TYPE:
-            fill = Color.BLACK;
+        case Guest.MONSTER_TYPE:
+            result = Color.BLUE;
             break;
         default:
-            assert false : "Illegal guest code";
-        }
-
-        if (img != null) {
-            g2.drawImage(img, loc.x, loc.y, this);
-        } else {
-            assert fill != null;
-            g2.setColor(fill);
-            g2.fill(rect);
+            result = Color.BLACK;
         }
+        return result;
     }
 
     /**
-     * Draw all cells on the board.
-     * @param g2 The graphics to draw the cells on.
+     * Draw the player or a monster.
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @param code The guest code
+     * @param g2 Graphics to draw on
      */
-    private void drawCells(Graphics2D g2) {
-        final float strokeWidth = 5.0f;
-        g2.setStroke(new BasicStroke(strokeWidth));
+    private void drawMovingGuest(int x, int y, char code, Graphics2D g2) {
+        drawSprite(cellX(x), cellY(y), code, g2);
+    }
 
-        for (int x = 0; x < worldWidth(); x++) {
-            for (int y = 0; y < worldHeight(); y++) {
-                drawCell(x, y, g2);
+    /**
+     * Draw the player or a monster at a given position, which may
+     * lie between cells.
+     * @param px Horizontal position in pixels
+     * @param py Vertical position in pixels
+     * @param code The guest code
+     * @param g2 Graphics to draw on
+     */
+    void drawSprite(int px, int py, char code, Graphics2D g2) {
+        if (imageFactory == null) {
+            if (code == Guest.PLAYER_TYPE) {
+                g2.setColor(Color.YELLOW);
+            } else {
+                g2.setColor(Color.BLUE);
+            }
+        } else {
+            // images are drawn on the background, not on the floor.
+            g2.setColor(getBackground());
+        }
+        g2.fillRect(px, py, cellWidth(), cellHeight());
+        if (imageFactory != null) {
+            if (code == Guest.PLAYER_TYPE) {
+                imageFactory.drawPlayer(g2, px, py,
+                        engine.getPlayerLastDx(),
+                        engine.getPlayerLastDy(),
+                        animationCount);
+            } else {
+                imageFactory.drawMonster(g2, px, py, animationCount);
             }
         }
     }
 
     /**
-     * Increment the animation counter, and redisplay,
-     * so that the next animation becomes visible.
+     * Increment the animation counter, and repaint the cells of the
+     * visible moving guests, so that the next animation becomes visible.
+     * The rest of the board doesn't change, so it isn't repainted.
      */
     public void nextAnimation() {
         if (imageFactory != null) {
             animationCount = (animationCount + 1)
             % (imageFactory.monsterAnimationCount()
                     * imageFactory.playerAnimationCount());
-            repaint();
+            if (!overview) {
+                repaintMovingGuests();
+            }
+        }
+    }
+
+    /**
+     * Schedule the cells of the visible moving guests to be repainted.
+     */
+    private void repaintMovingGuests() {
+        int x0 = originX;
+        int y0 = originY;
+        int x1 = Math.min(worldWidth(), x0 + viewColumns()) - 1;
+        int y1 = Math.min(worldHeight(), y0 + viewRows()) - 1;
+        if (x0 > x1 || y0 > y1) {
+            return;
+        }
+        int count = engine.monstersInRectangle(x0, y0, x1, y1, animated);
+        if (count > animated.length) {
+            animated = new Monster[2 * count];
+            count = engine.monstersInRectangle(x0, y0, x1, y1, animated);
+        }
+        for (int i = 0; i < count && i < animated.length; i++) {
+            Cell at = animated[i].getLocation();
+            animated[i] = null;
+            if (at != null) {
+                repaintCell(at.getX(), at.getY());
+            }
+        }
+        Cell at = engine.getPlayer().getLocation();
+        if (at != null) {
+            repaintCell(at.getX(), at.getY());
         }
     }
 }
@@ -0,0 +1,539 @@
+package jpacman.controller;
+
+import java.awt.Canvas;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferStrategy;
+import java.util.Arrays;
+import java.util.List;
+
+import jpacman.model.Cell;
+import jpacman.model.Engine;
+import jpacman.model.Guest;
+import jpacman.model.Monster;
+
+/**
+ * A game loop running in a thread of its own, as an alternative to the
+ * Swing timers of the monster controller and the animator, which all
+ * fire on the event dispatch thread. The loop advances the game in
+ * ticks of a fixed length, moving a monster and, now and then, advancing
+ * the animation, and renders frames in between through a buffer strategy
+ * on a canvas, at most MAX_FRAME_RATE times per second. While the game
+ * isn't being played, e.g. after the player died or won, frames are only
+ * rendered if the board changed, and otherwise every REFRESH_NANOS.
+ * <p>
+ * Monsters are drawn between the cells they occupied at the last two
+ * ticks, in proportion to the time elapsed since the last tick, so that
+ * they glide rather than jump. The player moves on key presses rather
+ * than on ticks, and is drawn where it is.
+ * <p>
+ * The engine's methods are synchronized, so the model stays consistent
+ * with moves made by the loop and by the event dispatch thread. The
+ * viewer's painting state belongs to the loop's thread, which is the
+ * only one to paint it; the event dispatch thread merely reports changes
+ * to it, switches its overview, and sizes it to the canvas whenever the
+ * canvas is resized. The loop is used instead of the timers if
+ * LOOP_PROPERTY is set.
+ *
+ * @version $Id$
+ */
+public class GameLoop implements Runnable {
+
+    /**
+     * System property selecting the game loop instead of the timers.
+     */
+    public static final String LOOP_PROPERTY = "jpacman.loop";
+
+    /**
+     * Length of a tick, in nanoseconds.
+     */
+    public static final long TICK_NANOS =
+        AbstractMonsterController.DELAY * 1000000L;
+
+    /**
+     * Number of ticks between two animation steps.
+     */
+    static final int TICKS_PER_ANIMATION =
+        Animator.DELAY / AbstractMonsterController.DELAY;
+
+    /**
+     * Maximum number of frames rendered per second.
+     */
+    public static final int MAX_FRAME_RATE = 60;
+
+    /**
+     * Minimum time between two frames, in nanoseconds.
+     */
+    private static final long FRAME_NANOS = 1000000000L / MAX_FRAME_RATE;
+
+    /**
+     * Time between two checks for changes while the game isn't being
+     * played, in nanoseconds.
+     */
+    private static final long IDLE_NANOS = 100000000L;
+
+    /**
+     * Time after which a frame is rendered even if nothing changed, in
+     * nanoseconds, restoring parts of the canvas uncovered by windows
+     * on top of it, as the canvas ignores repaints.
+     */
+    private static final long REFRESH_NANOS = 1000000000L;
+
+    /**
+     * Time the last frame was rendered, in nanoseconds.
+     */
+    private long lastFrameNanos;
+
+    /**
+     * Maximum number of ticks run before rendering a frame. If the loop
+     * falls further behind, e.g. because the machine is busy, the
+     * remaining ticks are skipped rather than caught up with.
+     */
+    static final int MAX_CATCH_UP = 5;
+
+    /**
+     * The engine playing the game.
+     */
+    private final Engine engine;
+
+    /**
+     * The monster controller whose ticks are run by the loop,
+     * or null if the monsters are moved otherwise.
+     */
+    private final IMonsterController monsterTicker;
+
+    /**
+     * The viewer rendering the board.
+     */
+    private final BoardViewer viewer;
+
+    /**
+     * The canvas frames are shown on, or null to just run the ticks.
+     */
+    private final Canvas canvas;
+
+    /**
+     * The canvas's buffer strategy, created on the first frame.
+     */
+    private BufferStrategy strategy = null;
+
+    /**
+     * The thread running the loop, or null if it isn't running.
+     */
+    private Thread thread = null;
+
+    /**
+     * Whether the loop should keep running.
+     */
+    private volatile boolean running = false;
+
+    /**
+     * Whether ticks are run.
+     */
+    private volatile boolean ticking = false;
+
+    /**
+     * Time of the current tick that has elapsed, in nanoseconds.
+     */
+    private long lag = 0;
+
+    /**
+     * The monsters whose positions are kept.
+     */
+    private List<Monster> monsters = null;
+
+    /**
+     * Positions of the monsters at the previous and the last tick,
+     * as (x,y) pairs per monster.
+     */
+    private int[] previous = new int[0], current = new int[0];
+
+    /**
+     * Positions of the monsters in the model, as found when rendering.
+     */
+    private int[] located = new int[0];
+
+    /**
+     * Statistics: ticks run, ticks skipped and frames rendered.
+     */
+    private volatile long ticks = 0, skippedTicks = 0, frames = 0;
+
+    /**
+     * Statistics: total and maximum time spent rendering a frame,
+     * in nanoseconds.
+     */
+    private volatile long frameNanos = 0, maxFrameNanos = 0;
+
+    /**
+     * Statistics: time the loop started running, in nanoseconds.
+     */
+    private volatile long startNanos;
+
+    /**
+     * Create a loop for a game.
+     *
+     * @param e
+     *            The engine playing the game
+     * @param m
+     *            The monster controller whose doTick is called once
+     *            per tick, or null
+     * @param bv
+     *            The viewer rendering the board
+     * @param c
+     *            The canvas to show the frames on, or null
+     */
+    public GameLoop(Engine e, IMonsterController m, BoardViewer bv,
+            Canvas c) {
+        assert e != null;
+        assert bv != null;
+        engine = e;
+        monsterTicker = m;
+        viewer = bv;
+        canvas = c;
+        if (canvas != null) {
+            canvas.addComponentListener(new ComponentAdapter() {
+                @Override
+                public void componentResized(ComponentEvent ce) {
+                    fitViewer();
+                }
+            });
+            // the canvas may already have its size.
+            EventQueue.invokeLater(new Runnable() {
+                public void run() {
+                    fitViewer();
+                }
+            });
+        }
+    }
+
+    /**
+     * Size the viewer to the canvas, on the event dispatch thread like
+     * all other changes of Swing components, and have it redrawn in full.
+     */
+    private void fitViewer() {
+        assert EventQueue.isDispatchThread();
+        viewer.setSize(canvas.getWidth(), canvas.getHeight());
+        viewer.repaintAll();
+    }
+
+    /**
+     * Start the thread running the loop, which renders frames,
+     * but doesn't run ticks until the loop is started.
+     */
+    public synchronized void open() {
+        if (thread == null) {
+            running = true;
+            startNanos = System.nanoTime();
+            thread = new Thread(this, "game loop");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop the thread running the loop, and wait for it to end.
+     */
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+            running = false;
+        }
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Start running ticks.
+     */
+    public void start() {
+        ticking = true;
+    }
+
+    /**
+     * Stop running ticks; frames are still rendered, but less often.
+     */
+    public void stop() {
+        ticking = false;
+    }
+
+    /**
+     * Run ticks and render frames until the loop is closed.
+     */
+    public void run() {
+        viewer.setPainter(Thread.currentThread());
+        try {
+            loop();
+        } finally {
+            viewer.setPainter(null);
+        }
+    }
+
+    /**
+     * Run ticks and render frames until the loop is closed, on the thread
+     * painting the viewer.
+     */
+    private void loop() {
+        long before = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            double alpha = advance(now - before);
+            before = now;
+            boolean playing = ticking && engine.inPlayingState();
+            if (playing || needsFrame(now)) {
+                render(alpha);
+            }
+            long next = now + (playing ? FRAME_NANOS : IDLE_NANOS);
+            try {
+                long sleep = next - System.nanoTime();
+                if (sleep > 0) {
+                    Thread.sleep(sleep / 1000000L, (int) (sleep % 1000000L));
+                }
+            } catch (InterruptedException ie) {
+                // closed.
+                return;
+            }
+        }
+    }
+
+    /**
+     * Run the ticks that fit in the time elapsed, if ticking, and
+     * keep the time that is left over for the next call.
+     *
+     * @param elapsed
+     *            Time elapsed since the previous call, in nanoseconds.
+     * @return Fraction of the next tick that has elapsed.
+     */
+    double advance(long elapsed) {
+        assert elapsed >= 0;
+        if (!ticking) {
+            lag = 0;
+            return 0;
+        }
+        lag += elapsed;
+        int steps = 0;
+        while (lag >= TICK_NANOS && steps < MAX_CATCH_UP) {
+            tick();
+            lag -= TICK_NANOS;
+            steps++;
+        }
+        if (lag >= TICK_NANOS) {
+            skippedTicks += lag / TICK_NANOS;
+            lag %= TICK_NANOS;
+        }
+        return (double) lag / TICK_NANOS;
+    }
+
+    /**
+     * Advance the game by one tick.
+     */
+    void tick() {
+        trackMonsters();
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+        boolean playing = engine.inPlayingState();
+        if (monsterTicker != null && playing) {
+            monsterTicker.doTick();
+        }
+        ticks++;
+        if (playing && ticks % TICKS_PER_ANIMATION == 0) {
+            viewer.nextAnimation();
+        }
+        locateMonsters(current);
+    }
+
+    /**
+     * Start keeping the positions of the engine's monsters,
+     * if its game has been restarted with other monsters.
+     */
+    private void trackMonsters() {
+        List<Monster> now = engine.getMonsters();
+        if (now != monsters) {
+            monsters = now;
+            current = new int[2 * now.size()];
+            locateMonsters(current);
+            previous = current.clone();
+        }
+    }
+
+    /**
+     * Make the kept positions of the monsters those of the model, unless
+     * the loop is ticking and the monsters are where the last tick left
+     * them. Monsters may have been moved otherwise, e.g. by undoing
+     * moves, and shouldn't glide from cells they no longer occupy.
+     */
+    private void syncMonsters() {
+        trackMonsters();
+        if (located.length != current.length) {
+            located = new int[current.length];
+        }
+        locateMonsters(located);
+        if (!ticking || !Arrays.equals(located, current)) {
+            System.arraycopy(located, 0, current, 0, located.length);
+            System.arraycopy(located, 0, previous, 0, located.length);
+        }
+    }
+
+    /**
+     * Store the positions of the monsters.
+     * @param positions Array receiving (x,y) pairs per monster.
+     */
+    private void locateMonsters(int[] positions) {
+        for (int i = 0; 2 * i < positions.length; i++) {
+            Cell at = monsters.get(i).getLocation();
+            if (at != null) {
+                positions[2 * i] = at.getX();
+                positions[2 * i + 1] = at.getY();
+            }
+        }
+    }
+
+    /**
+     * Decide whether a frame must be rendered while the game isn't being
+     * played, and nothing moves by itself.
+     * @param now The current time, in nanoseconds.
+     * @return True iff no frame was rendered yet, the board changed or
+     *         the canvas was resized, or the last frame is getting old.
+     */
+    private boolean needsFrame(long now) {
+        return strategy == null
+            || viewer.hasPendingChanges()
+            || now - lastFrameNanos >= REFRESH_NANOS;
+    }
+
+    /**
+     * Render a frame on the canvas, if it is displayed.
+     * @param alpha Fraction of the next tick that has elapsed.
+     */
+    private void render(double alpha) {
+        if (canvas == null || !canvas.isDisplayable()) {
+            return;
+        }
+        if (strategy == null) {
+            canvas.createBufferStrategy(2);
+            strategy = canvas.getBufferStrategy();
+        }
+        long start = System.nanoTime();
+        do {
+            do {
+                Graphics2D g2 = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    renderFrame(g2, alpha);
+                } finally {
+                    g2.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+        long time = System.nanoTime() - start;
+        lastFrameNanos = start;
+        frames++;
+        frameNanos += time;
+        maxFrameNanos = Math.max(maxFrameNanos, time);
+    }
+
+    /**
+     * Render a frame: the board, the player where it is, and the
+     * monsters between their positions at the last two ticks; or
+     * the overview of the board, if the viewer shows it. The frame has
+     * the size of the viewer.
+     *
+     * @param g2
+     *            Graphics to render on
+     * @param alpha
+     *            Fraction of the next tick that has elapsed.
+     */
+    void renderFrame(Graphics2D g2, double alpha) {
+        assert alpha >= 0 && alpha < 1;
+        if (viewer.isOverview()) {
+            viewer.paintOverview(g2);
+            return;
+        }
+        viewer.paintBoard(g2);
+        syncMonsters();
+        for (int i = 0; 2 * i < current.length; i++) {
+            int x = current[2 * i];
+            int y = current[2 * i + 1];
+            int px = viewer.cellX(x);
+            int py = viewer.cellY(y);
+            int dx = x - previous[2 * i];
+            int dy = y - previous[2 * i + 1];
+            // jumps, e.g. after undoing moves, aren't interpolated.
+            if (Math.abs(dx) + Math.abs(dy) == 1) {
+                px -= (int) Math.round((1 - alpha)
+                        * (viewer.cellX(x) - viewer.cellX(x - dx)));
+                py -= (int) Math.round((1 - alpha)
+                        * (viewer.cellY(y) - viewer.cellY(y - dy)));
+            }
+            viewer.drawSprite(px, py, Guest.MONSTER_TYPE, g2);
+        }
+        Cell at = engine.getPlayer().getLocation();
+        if (at != null) {
+            viewer.drawSprite(viewer.cellX(at.getX()), viewer.cellY(at.getY()),
+                    Guest.PLAYER_TYPE, g2);
+        }
+    }
+
+    /**
+     * @return The number of ticks run.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return The number of ticks skipped because the loop fell behind.
+     */
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    /**
+     * @return The number of frames rendered.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return The average number of frames rendered per second
+     *         since the loop was opened.
+     */
+    public double getFrameRate() {
+        long elapsed = System.nanoTime() - startNanos;
+        if (!running || elapsed <= 0) {
+            return 0;
+        }
+        return frames * 1e9 / elapsed;
+    }
+
+    /**
+     * @return The average time spent rendering a frame, in nanoseconds.
+     */
+    public long getAverageFrameNanos() {
+        long n = frames;
+        if (n == 0) {
+            return 0;
+        }
+        return frameNanos / n;
+    }
+
+    /**
+     * @return The longest time spent rendering a frame, in nanoseconds.
+     */
+    public long getMaxFrameNanos() {
+        return maxFrameNanos;
+    }
+}
@@ -1,14 +1,26 @@
 package jpacman.controller;
 
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URL;
 
-import javax.swing.ImageIcon;
+import javax.imageio.ImageIO;
 
 /**
  * The responsibilities of this class include obtaining images from file,
  * that can be used for animations of the player and the monsters in Pacman.
+ * <p>
+ * Each image file is decoded once, into a tile of a single sprite atlas,
+ * which is compatible with the screen (if any) so that drawing a sprite
+ * needs no conversion. The tiles can be scaled to the size of the cells
+ * when they are loaded, after which sprites are drawn by copying a
+ * region of the atlas.
  *
  * @author Arie van Deursen, Delft University of Technology, May 2007
  * @version $Id: ImageFactory.java,v 1.11 2009/01/28 20:01:21 arie Exp $
@@ -18,12 +30,32 @@ import javax.swing.ImageIcon;
 public class ImageFactory {
 
     /**
-     * Animation sequence of images for monsters.
+     * The image holding all sprites, as tiles in a single row.
+     */
+    private BufferedImage atlas;
+
+    /**
+     * Width and height of a tile of the atlas.
+     */
+    private int tileWidth, tileHeight;
+
+    /**
+     * Animation sequence of the monster tiles.
+     */
+    private int[] monsterTile;
+
+    /**
+     * Animation sequence of the player tiles, per direction.
+     */
+    private int[][] playerTile;
+
+    /**
+     * Animation sequence of images for monsters, as regions of the atlas.
      */
     private Image[] monsterImage;
 
     /**
-     * Animation sequence of images for the player.
+     * Animation sequence of images for the player, as regions of the atlas.
      */
     private Image[][] playerImage;
     
@@ -33,30 +65,121 @@ public class ImageFactory {
     public ImageFactory() { }
     
     /**
-     * Read images for player and monsters from file.
+     * Read images for player and monsters from file, at their own size.
      * Different images exist for different phases of the animation.
      * @throws IOException if the images can't be found.
      */
     public void loadImages() throws IOException {
-        monsterImage = new Image[]{
-                getImage("Ghost1.gif"),
-                getImage("Ghost2.gif") };
+        loadImages(0, 0);
+    }
 
-        String[] sequence = new String[]{"2", "3", "4", "3", "2"};
+    /**
+     * Read images for player and monsters from file, scaled to a given
+     * size, e.g. that of the cells they are drawn in.
+     * Different images exist for different phases of the animation.
+     * @param width Width of the images, or 0 for their own width
+     * @param height Height of the images, or 0 for their own height
+     * @throws IOException if the images can't be found.
+     */
+    public void loadImages(int width, int height) throws IOException {
+        assert width >= 0 && height >= 0;
+        // tiles: two monsters, the closed player, and the player's
+        // frames PacMan2 .. PacMan4 per direction, played back and forth.
         String[] direction = new String[]{
                 "right", "left", "down", "up" };
-        playerImage = new Image[direction.length][sequence.length + 1];
+        int[] sequence = new int[]{2, 3, 4, 3, 2};
+        final int firstFrame = 2;
+        final int frames = 3;
+        final int closedTile = 2;
+        final int frameTiles = closedTile + 1;
+        String[] files = new String[frameTiles + frames * direction.length];
+        files[0] = "Ghost1.gif";
+        files[1] = "Ghost2.gif";
+        files[closedTile] = "PacMan1.gif";
         for (int dir = 0; dir < direction.length; dir++) {
-            playerImage[dir][0] = getImage("PacMan1.gif");
+            for (int frame = 0; frame < frames; frame++) {
+                files[frameTiles + dir * frames + frame] = "PacMan"
+                    + (firstFrame + frame) + direction[dir] + ".gif";
+            }
+        }
+        buildAtlas(files, width, height);
+
+        monsterTile = new int[]{0, 1};
+        playerTile = new int[direction.length][sequence.length + 1];
+        for (int dir = 0; dir < direction.length; dir++) {
+            playerTile[dir][0] = closedTile;
             for (int seq = 0; seq < sequence.length; seq++) {
-                String name = "PacMan" + sequence[seq]
-                                 + direction[dir] + ".gif";
-                playerImage[dir][seq + 1] = getImage(name);
+                playerTile[dir][seq + 1] = frameTiles + dir * frames
+                    + sequence[seq] - firstFrame;
+            }
+        }
+        monsterImage = new Image[monsterTile.length];
+        for (int i = 0; i < monsterTile.length; i++) {
+            monsterImage[i] = tile(monsterTile[i]);
+        }
+        playerImage = new Image[direction.length][sequence.length + 1];
+        for (int dir = 0; dir < direction.length; dir++) {
+            for (int seq = 0; seq < playerTile[dir].length; seq++) {
+                playerImage[dir][seq] = tile(playerTile[dir][seq]);
             }
         }
         assert intialized();
     }
 
+    /**
+     * Decode image files into the tiles of a new atlas, in the order given.
+     * @param files Names of the image files
+     * @param width Width of the tiles, or 0 for that of the first image
+     * @param height Height of the tiles, or 0 for that of the first image
+     * @throws IOException if an image can't be read.
+     */
+    private void buildAtlas(String[] files, int width, int height)
+        throws IOException {
+        BufferedImage[] decoded = new BufferedImage[files.length];
+        for (int i = 0; i < files.length; i++) {
+            decoded[i] = getImage(files[i]);
+        }
+        tileWidth = width > 0 ? width : decoded[0].getWidth();
+        tileHeight = height > 0 ? height : decoded[0].getHeight();
+        atlas = compatibleImage(tileWidth * files.length, tileHeight);
+        Graphics2D g2 = atlas.createGraphics();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            for (int i = 0; i < files.length; i++) {
+                g2.drawImage(decoded[i], i * tileWidth, 0,
+                        tileWidth, tileHeight, null);
+            }
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Create a translucent image in the format of the screen, or, without
+     * a screen, an ordinary ARGB image.
+     * @param width Width in pixels
+     * @param height Height in pixels
+     * @return The image.
+     */
+    private static BufferedImage compatibleImage(int width, int height) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height,
+                    BufferedImage.TYPE_INT_ARGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice().getDefaultConfiguration()
+            .createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+
+    /**
+     * @param i Index of a tile
+     * @return The region of the atlas holding the tile.
+     */
+    private Image tile(int i) {
+        return atlas.getSubimage(i * tileWidth, 0, tileWidth, tileHeight);
+    }
+
     /**
      * @return Number of different monster animation steps
      */
@@ -100,8 +223,6 @@ public class ImageFactory {
     /**
      * Get a player in (pizza slice) in the appropriate direction at the
      * given animation sequence.
-     * TODO: refactor this so that enums are used -- will be cleaner,
-     * and will resolve the checkstyle warning.
      * @param dx x direction
      * @param dy y direction
      * @param anim Animation step
@@ -110,7 +231,37 @@ public class ImageFactory {
     public Image player(int dx, int dy, int anim) {
         assert anim >= 0;
         anim = anim % playerAnimationCount();
-        Image img = null;
+        Image img = playerImage[direction(dx, dy)][anim];
+        assert img != null;
+        return img;
+    }
+
+    /**
+     * Draw the player in the appropriate direction at the given
+     * animation sequence, by copying its tile from the atlas.
+     * @param g Graphics to draw on
+     * @param x Horizontal position in pixels
+     * @param y Vertical position in pixels
+     * @param dx x direction
+     * @param dy y direction
+     * @param anim Animation step
+     */
+    public void drawPlayer(Graphics g, int x, int y,
+            int dx, int dy, int anim) {
+        assert anim >= 0;
+        drawTile(g, x, y,
+                playerTile[direction(dx, dy)][anim % playerAnimationCount()]);
+    }
+
+    /**
+     * Index of the player's images facing a given direction.
+     * TODO: refactor this so that enums are used -- will be cleaner,
+     * and will resolve the checkstyle warning.
+     * @param dx x direction
+     * @param dy y direction
+     * @return Direction index: right, left, down, up.
+     */
+    private static int direction(int dx, int dy) {
         int dirIndex = 0;
         final int dirIndex1 = 1;
         final int dirIndex2 = 2;
@@ -128,9 +279,20 @@ public class ImageFactory {
             assert dy == 0;
             // stick to default name.
         }
-        img = playerImage[dirIndex][anim];
-        assert img != null;
-        return img;
+        return dirIndex;
+    }
+
+    /**
+     * Copy a tile of the atlas.
+     * @param g Graphics to draw on
+     * @param x Horizontal position in pixels
+     * @param y Vertical position in pixels
+     * @param i Index of the tile
+     */
+    private void drawTile(Graphics g, int x, int y, int i) {
+        int sx = i * tileWidth;
+        g.drawImage(atlas, x, y, x + tileWidth, y + tileHeight,
+                sx, 0, sx + tileWidth, tileHeight, null);
     }
 
     /**
@@ -145,21 +307,36 @@ public class ImageFactory {
     }
 
     /**
-     * Obtain an image from a file / resource that can
+     * Draw a monster, by copying its tile from the atlas.
+     * @param g Graphics to draw on
+     * @param x Horizontal position in pixels
+     * @param y Vertical position in pixels
+     * @param animationIndex counter indicating which animation to use.
+     */
+    public void drawMonster(Graphics g, int x, int y, int animationIndex) {
+        assert animationIndex >= 0;
+        drawTile(g, x, y,
+                monsterTile[animationIndex % monsterAnimationCount()]);
+    }
+
+    /**
+     * Decode an image from a file / resource that can
      * be found on the classpath.
      * @param name The file containg, e.g., a .gif picture.
      * @return The corresponding Image.
-     * @throws IOException If file can't be found.
+     * @throws IOException If file can't be found or decoded.
      */
-    private Image getImage(String name) throws IOException {
+    private BufferedImage getImage(String name) throws IOException {
         assert name != null;
         URL picfile = getClass().getClassLoader().getResource(name);
         if (picfile == null) {
             throw new IOException("Can't load image: "  + name);
         }
-        Image result = (new ImageIcon(picfile)).getImage();
-        assert result != null;
+        BufferedImage result = ImageIO.read(picfile);
+        if (result == null) {
+            throw new IOException("Can't decode image: "  + name);
+        }
         return result;
     }
-       
+
 }
@@ -0,0 +1,315 @@
+package jpacman.controller;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JPanel;
+
+import jpacman.model.BoardChanges;
+import jpacman.model.Engine;
+import jpacman.model.Guest;
+
+/**
+ * A small map of the whole board, with one pixel per block of
+ * cellsPerPixel x cellsPerPixel cells, for boards that don't fit in
+ * the board viewer.
+ * <p>
+ * The map is kept in an image, which is drawn in full once, and after
+ * that only has the pixels of the cells reported as changed by the
+ * engine brought up to date, so that the cost of a move doesn't depend
+ * on the size of the board. If any cell may have changed, e.g. on a
+ * new board, the map is merely marked stale, and drawn anew when it is
+ * painted next; the cells are read a band of rows at a time, rather
+ * than cell by cell. A pixel shows the player or a monster if
+ * one is in its block; otherwise walls, if most of the block is wall;
+ * otherwise food, if any is left in the block.
+ *
+ * @version $Id$
+ */
+public class Minimap extends JPanel {
+
+    /**
+     * A JPanel is serializable, and so is the minimap.
+     */
+    static final long serialVersionUID = 1L;
+
+    /**
+     * Maximum width and height of the map in pixels, when the number of
+     * cells per pixel is chosen by the map.
+     */
+    public static final int MAX_SIZE = 192;
+
+    /**
+     * The interface to the model of the game.
+     */
+    private final Engine engine;
+
+    /**
+     * The number of cells along each side of the block of cells
+     * shown by a pixel.
+     */
+    private final int cellsPerPixel;
+
+    /**
+     * The map, one pixel per block of cells.
+     */
+    private BufferedImage image = null;
+
+    /**
+     * Size of the board, and layout version of the walls, drawn in
+     * the map.
+     */
+    private int boardWidth, boardHeight, version;
+
+    /**
+     * Statistics: the number of pixels updated by the last changes.
+     */
+    private int pixelsUpdated = 0;
+
+    /**
+     * Whether the map must be drawn anew before it is painted.
+     */
+    private volatile boolean stale = false;
+
+    /**
+     * The codes of the cells of a block, or of a band of rows of blocks,
+     * read at once.
+     */
+    private char[] codes = new char[0];
+
+    /**
+     * Create a map with as few cells per pixel as keep it within
+     * MAX_SIZE pixels.
+     * @param e The engine whose board is shown.
+     */
+    public Minimap(Engine e) {
+        this(e, Math.max(1, (Math.max(e.boardWidth(), e.boardHeight())
+                + MAX_SIZE - 1) / MAX_SIZE));
+    }
+
+    /**
+     * Create a map.
+     * @param e The engine whose board is shown
+     * @param n The number of cells along each side of a pixel.
+     */
+    public Minimap(Engine e, int n) {
+        assert e != null;
+        assert n > 0;
+        engine = e;
+        cellsPerPixel = n;
+        setBackground(Color.BLACK);
+        redraw();
+        setPreferredSize(new Dimension(image.getWidth(), image.getHeight()));
+    }
+
+    /**
+     * Draw the whole map anew, in a new image if the board's size
+     * has changed. The engine is locked while the map is drawn, so that
+     * changes are reported either before the map is drawn or after it.
+     */
+    private void redraw() {
+        synchronized (engine) {
+            synchronized (this) {
+                stale = false;
+                boardWidth = engine.boardWidth();
+                boardHeight = engine.boardHeight();
+                version = engine.getLayoutVersion();
+                int w = Math.max(1,
+                        (boardWidth + cellsPerPixel - 1) / cellsPerPixel);
+                int h = Math.max(1,
+                        (boardHeight + cellsPerPixel - 1) / cellsPerPixel);
+                if (image == null || image.getWidth() != w
+                        || image.getHeight() != h) {
+                    image = new BufferedImage(w, h,
+                            BufferedImage.TYPE_INT_RGB);
+                }
+                for (int py = 0; py < h && boardWidth > 0; py++) {
+                    int y0 = py * cellsPerPixel;
+                    int rows = Math.min(cellsPerPixel, boardHeight - y0);
+                    read(0, y0, boardWidth, rows);
+                    for (int px = 0; px < w; px++) {
+                        int x0 = px * cellsPerPixel;
+                        image.setRGB(px, py, colorOf(x0,
+                                Math.min(x0 + cellsPerPixel, boardWidth),
+                                boardWidth, rows).getRGB());
+                    }
+                }
+                pixelsUpdated = w * h;
+            }
+        }
+    }
+
+    /**
+     * Draw the map anew if it is stale.
+     */
+    private void redrawIfStale() {
+        if (stale) {
+            redraw();
+        }
+    }
+
+    /**
+     * Read the codes of a rectangle of cells at once.
+     * @param x0 Left border
+     * @param y0 Top border
+     * @param w Number of columns
+     * @param h Number of rows
+     */
+    private void read(int x0, int y0, int w, int h) {
+        if (codes.length < w * h) {
+            codes = new char[w * h];
+        }
+        engine.getGuestCodes(x0, y0, w, h, codes);
+    }
+
+    /**
+     * Bring the pixel showing a block of cells up to date.
+     * @param px Horizontal position of the pixel
+     * @param py Vertical position of the pixel
+     */
+    private void updatePixel(int px, int py) {
+        int x0 = px * cellsPerPixel;
+        int y0 = py * cellsPerPixel;
+        int columns = Math.min(cellsPerPixel, boardWidth - x0);
+        int rows = Math.min(cellsPerPixel, boardHeight - y0);
+        read(x0, y0, columns, rows);
+        image.setRGB(px, py, colorOf(0, columns, columns, rows).getRGB());
+    }
+
+    /**
+     * Determine the color of a block of cells, whose codes have been read.
+     * @param x0 Index of the first column of the block within the codes
+     * @param x1 Index just after its last column
+     * @param stride Number of codes per row
+     * @param rows Number of rows of the block
+     * @return The color of the block's pixel.
+     */
+    private Color colorOf(int x0, int x1, int stride, int rows) {
+        int walls = 0;
+        boolean food = false;
+        boolean monster = false;
+        boolean player = false;
+        for (int y = 0; y < rows; y++) {
+            for (int x = x0; x < x1; x++) {
+                switch (codes[y * stride + x]) {
+                case Guest.WALL_TYPE:
+                    walls++;
+                    break;
+                case Guest.FOOD_TYPE:
+                    food = true;
+                    break;
+                case Guest.MONSTER_TYPE:
+                    monster = true;
+                    break;
+                case Guest.PLAYER_TYPE:
+                    player = true;
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+        Color color;
+        if (player) {
+            color = Color.YELLOW;
+        } else if (monster) {
+            color = Color.BLUE;
+        } else if (2 * walls > (x1 - x0) * rows) {
+            color = Color.ORANGE;
+        } else if (food) {
+            color = Color.GREEN;
+        } else {
+            color = Color.BLACK;
+        }
+        return color;
+    }
+
+    /**
+     * Update the pixels showing the cells that have changed, and repaint
+     * them. If any cell may have changed, the map is marked stale and
+     * repainted, rather than drawn anew while the engine waits.
+     * @param changes The changed cells, as reported by the engine.
+     */
+    public void repaintChanges(BoardChanges changes) {
+        synchronized (this) {
+            if (!changes.isComplete()
+                    || engine.boardWidth() != boardWidth
+                    || engine.boardHeight() != boardHeight
+                    || engine.getLayoutVersion() != version) {
+                stale = true;
+            } else if (!stale) {
+                int updated = 0;
+                int lastX = -1;
+                int lastY = -1;
+                for (int i = 0; i < changes.size(); i++) {
+                    int px = changes.getX(i) / cellsPerPixel;
+                    int py = changes.getY(i) / cellsPerPixel;
+                    // moves often change two cells of the same block.
+                    if (px != lastX || py != lastY) {
+                        updatePixel(px, py);
+                        repaintPixel(px, py);
+                        updated++;
+                        lastX = px;
+                        lastY = py;
+                    }
+                }
+                pixelsUpdated = updated;
+                return;
+            }
+        }
+        repaint();
+    }
+
+    /**
+     * Schedule a pixel of the map to be repainted.
+     * @param px Horizontal position of the pixel
+     * @param py Vertical position of the pixel
+     */
+    private void repaintPixel(int px, int py) {
+        int w = Math.max(1, getWidth());
+        int h = Math.max(1, getHeight());
+        int iw = image.getWidth();
+        int ih = image.getHeight();
+        int x0 = px * w / iw;
+        int y0 = py * h / ih;
+        repaint(x0, y0, (px + 1) * w / iw - x0 + 1, (py + 1) * h / ih - y0 + 1);
+    }
+
+    /**
+     * Draw the map, scaled to the panel.
+     * @param g The graphics to draw the map on.
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        redrawIfStale();
+        synchronized (this) {
+            g.drawImage(image, 0, 0, getWidth(), getHeight(), null);
+        }
+    }
+
+    /**
+     * @return The number of cells along each side of a pixel.
+     */
+    public int getCellsPerPixel() {
+        return cellsPerPixel;
+    }
+
+    /**
+     * @return The map, which should not be changed.
+     */
+    BufferedImage getImage() {
+        redrawIfStale();
+        synchronized (this) {
+            return image;
+        }
+    }
+
+    /**
+     * @return The number of pixels updated by the last changes.
+     */
+    public synchronized int getPixelsUpdated() {
+        return pixelsUpdated;
+    }
+}
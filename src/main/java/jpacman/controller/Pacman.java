@@ -2,6 +2,7 @@ package jpacman.controller;
 
 import jpacman.model.Engine;
 import jpacman.model.GameLoadException;
+import jpacman.model.MapWatcher;
 
 /**
  * Top level Pacman class. The main method creates the engine, the GUI, and the
@@ -33,6 +34,17 @@ public class Pacman {
      */
     private Animator theAnimator;
 
+    /**
+     * The game loop moving the monsters, animating, and rendering the
+     * board, if enabled by GameLoop.LOOP_PROPERTY; null otherwise.
+     */
+    private GameLoop theLoop = null;
+
+    /**
+     * Watcher patching edits of the map file into the game, if enabled.
+     */
+    private MapWatcher mapWatcher;
+
     /**
      * Create a default new game, containing an egnine, a gui, and a monster
      * driver.
@@ -68,9 +80,22 @@ public class Pacman {
         theEngine = e;
         initEngine();
         monsterTicker = m;
-        theViewer = new PacmanUI(theEngine, this);
-        theAnimator = new Animator(theViewer.getBoardViewer());
+        boolean loop = Boolean.getBoolean(GameLoop.LOOP_PROPERTY);
+        theViewer = new PacmanUI(theEngine, this, loop);
+        theAnimator = new Animator(theViewer.getBoardViewer(), theEngine);
         theViewer.display();
+        if (loop) {
+            // the loop can only run the ticks of controllers it can
+            // take over from their timer.
+            IMonsterController ticked = null;
+            if (m instanceof AbstractMonsterController) {
+                ((AbstractMonsterController) m).setExternalTicks(true);
+                ticked = m;
+            }
+            theLoop = new GameLoop(theEngine, ticked,
+                    theViewer.getBoardViewer(), theViewer.getCanvas());
+            theLoop.open();
+        }
         assert invariant();
     }
     
@@ -83,6 +108,14 @@ public class Pacman {
                 "Could not load specified game: proceeding with default values." 
                 + gle);
         }
+        try {
+            mapWatcher = MapWatcher.forConfiguredMap(theEngine);
+            if (mapWatcher != null) {
+                mapWatcher.start();
+            }
+        } catch (GameLoadException gle) {
+            System.err.println("Not watching the map: " + gle);
+        }
     }
 
     /**
@@ -100,7 +133,11 @@ public class Pacman {
         assert invariant();
         theEngine.start();
         monsterTicker.start();
-        theAnimator.start();
+        if (theLoop == null) {
+            theAnimator.start();
+        } else {
+            theLoop.start();
+        }
         assert invariant();
     }
 
@@ -112,6 +149,9 @@ public class Pacman {
     	monsterTicker.stop();
     	theEngine.undo();
     	theAnimator.stop();
+    	if (theLoop != null) {
+    	    theLoop.stop();
+    	}
     	assert invariant();
     }
     
@@ -123,6 +163,9 @@ public class Pacman {
         monsterTicker.stop();
         theEngine.quit();
         theAnimator.stop();
+        if (theLoop != null) {
+            theLoop.stop();
+        }
         assert invariant();
     }
 
@@ -133,6 +176,12 @@ public class Pacman {
     public void exit() {
         assert invariant();
         quit();
+        if (mapWatcher != null) {
+            mapWatcher.stop();
+        }
+        if (theLoop != null) {
+            theLoop.close();
+        }
         theViewer.dispose();
         // No need for a hard exit using, e.g., System.exit(0):
         // we'd like to be able to run a series of pacman's in a single
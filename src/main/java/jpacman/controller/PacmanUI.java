@@ -1,7 +1,9 @@
 package jpacman.controller;
 
 import java.awt.BorderLayout;
+import java.awt.Canvas;
 import java.awt.Container;
+import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
@@ -18,7 +20,9 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 
+import jpacman.model.BoardChanges;
 import jpacman.model.Engine;
 
 /**
@@ -49,6 +53,18 @@ public class PacmanUI extends JFrame implements KeyListener, Observer {
      */
     private BoardViewer boardViewer;
 
+    /**
+     * The canvas the game loop renders the board on, or null if the
+     * board viewer is shown itself.
+     */
+    private Canvas canvas = null;
+
+    /**
+     * The map of the whole board, or null if the board fits
+     * in the viewer.
+     */
+    private Minimap minimap = null;
+
     /**
      * The status field for the amount of food eaten so far.
      */
@@ -59,6 +75,23 @@ public class PacmanUI extends JFrame implements KeyListener, Observer {
      */
     private JTextField statusField;
 
+    /**
+     * Whether refreshing the status fields has been scheduled on the
+     * event dispatch thread, but not yet done.
+     */
+    private volatile boolean statusPending = false;
+
+    /**
+     * Refreshes the status fields, on the event dispatch thread.
+     */
+    private final Runnable refreshStatus = new Runnable() {
+        public void run() {
+            statusPending = false;
+            updateStatus();
+            updateFood();
+        }
+    };
+
     /**
      * Create a new Pacman top level user interface.
      *
@@ -66,6 +99,19 @@ public class PacmanUI extends JFrame implements KeyListener, Observer {
      * @param p Top level machine responding to gui requests.
      */
     public PacmanUI(Engine theEngine, Pacman p) {
+        this(theEngine, p, false);
+    }
+
+    /**
+     * Create a new Pacman top level user interface, which shows the
+     * board either through the board viewer, or on a canvas for a
+     * game loop to render on.
+     *
+     * @param theEngine Underlying pacman model
+     * @param p Top level machine responding to gui requests.
+     * @param activeRendering Whether a game loop renders the board.
+     */
+    public PacmanUI(Engine theEngine, Pacman p, boolean activeRendering) {
         engine = theEngine;
         this.controller = p;
         boardViewer = new BoardViewer(engine);
@@ -126,8 +172,21 @@ public class PacmanUI extends JFrame implements KeyListener, Observer {
         JPanel topDown;
         topDown = new JPanel(new BorderLayout());
         topDown.add(statusPanel, BorderLayout.NORTH);
-        topDown.add(boardViewer, BorderLayout.CENTER);
+        if (activeRendering) {
+            canvas = new Canvas();
+            canvas.setIgnoreRepaint(true);
+            canvas.setPreferredSize(new Dimension(
+                    boardViewer.windowWidth(), boardViewer.windowHeight()));
+            topDown.add(canvas, BorderLayout.CENTER);
+        } else {
+            topDown.add(boardViewer, BorderLayout.CENTER);
+        }
         topDown.add(buttonPanel, BorderLayout.SOUTH);
+        if (engine.boardWidth() > BoardViewer.MAX_VIEW_COLUMNS
+                || engine.boardHeight() > BoardViewer.MAX_VIEW_ROWS) {
+            minimap = new Minimap(engine);
+            topDown.add(minimap, BorderLayout.EAST);
+        }
 
         Container contentPane = getContentPane();
         contentPane.add(topDown);
@@ -206,6 +265,8 @@ public class PacmanUI extends JFrame implements KeyListener, Observer {
             getController().exit();
         } else if (code == KeyEvent.VK_S) {
             getController().start();
+        } else if (code == KeyEvent.VK_O) {
+            boardViewer.setOverview(!boardViewer.isOverview());
         }
         // else {
         // System.err.println("ignored key press " + code);
@@ -219,9 +280,25 @@ public class PacmanUI extends JFrame implements KeyListener, Observer {
      * @param rest remaining info
      */
     public void update(Observable observable, Object rest) {
-        boardViewer.repaint();
-        updateStatus();
-        updateFood();
+        if (rest instanceof BoardChanges) {
+            boardViewer.repaintChanges((BoardChanges) rest);
+            if (minimap != null) {
+                minimap.repaintChanges((BoardChanges) rest);
+            }
+        } else {
+            boardViewer.repaint();
+            if (minimap != null) {
+                minimap.repaint();
+            }
+        }
+        if (SwingUtilities.isEventDispatchThread()) {
+            refreshStatus.run();
+        } else if (!statusPending) {
+            // e.g. ticks of the game loop, or a reloaded map: Swing
+            // components may only be changed on the event dispatch thread.
+            statusPending = true;
+            SwingUtilities.invokeLater(refreshStatus);
+        }
     }
 
     /**
@@ -261,7 +338,11 @@ public class PacmanUI extends JFrame implements KeyListener, Observer {
      */
     public void display() {
         final int buttonRowHeight = 40;
-        setSize(boardViewer.windowWidth(),
+        int mapWidth = 0;
+        if (minimap != null) {
+            mapWidth = minimap.getPreferredSize().width;
+        }
+        setSize(boardViewer.windowWidth() + mapWidth,
                 boardViewer.windowHeight()
                 + 2 * buttonRowHeight);
         setVisible(true);
@@ -274,6 +355,14 @@ public class PacmanUI extends JFrame implements KeyListener, Observer {
         return controller;
     }
 
+    /**
+     * @return The canvas for a game loop to render the board on,
+     *         or null if the board viewer is shown itself.
+     */
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
     /**
      * @return the viewer for the board.
      */
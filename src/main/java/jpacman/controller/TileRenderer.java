@@ -0,0 +1,299 @@
+package jpacman.controller;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders whole boards, e.g. for screenshots or exports, by splitting
+ * the image into tiles of about TILE_PIXELS pixels square that are
+ * rendered concurrently on a fork/join pool. Each tile is a region of
+ * the image's raster, drawn through a Graphics2D of its own that is
+ * used by a single thread, so the tiles are composited in place as
+ * they are rendered.
+ * <p>
+ * Boards can be rendered in detail, as the viewer shows them, or as a
+ * map with a square of a single color per cell, which keeps the image
+ * of very large boards within bounds.
+ * <p>
+ * The parallelism of the pool is given by the system property
+ * jpacman.render.threads, defaulting to the number of processors if it
+ * isn't set to a positive number.
+ *
+ * @version $Id$
+ */
+public class TileRenderer {
+
+    /**
+     * Approximate width and height of a tile, in pixels.
+     */
+    public static final int TILE_PIXELS = 512;
+
+    /**
+     * System property giving the parallelism of the pool.
+     */
+    static final String THREADS_PROPERTY = "jpacman.render.threads";
+
+    /**
+     * The pool rendering the tiles.
+     */
+    private static volatile ForkJoinPool pool =
+        new ForkJoinPool(configuredParallelism());
+
+    /**
+     * The viewer whose rendering of cells is used.
+     */
+    private final BoardViewer viewer;
+
+    /**
+     * Create a renderer of the board shown by a viewer.
+     * @param bv The viewer, which needn't be displayed.
+     */
+    public TileRenderer(BoardViewer bv) {
+        assert bv != null;
+        viewer = bv;
+    }
+
+    /**
+     * @return The parallelism given by THREADS_PROPERTY, or the number
+     *         of processors if it isn't set to a positive number.
+     */
+    static int configuredParallelism() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int threads = Integer.getInteger(THREADS_PROPERTY, processors);
+        if (threads <= 0) {
+            return processors;
+        }
+        return threads;
+    }
+
+    /**
+     * Use a pool of the given parallelism from now on. The previous pool
+     * is left to finish the renderings it is running, rather than shut
+     * down under them; its threads end once they are idle.
+     * @param threads Number of worker threads, positive.
+     */
+    public static void setParallelism(int threads) {
+        assert threads > 0;
+        pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Render the whole board in detail, as the viewer shows it.
+     * @return The image of the board.
+     * @throws IllegalArgumentException if the board has too many cells
+     *             for a single image in detail; renderMap can render it.
+     */
+    public BufferedImage renderBoard() {
+        int pitchX = viewer.cellWidth() + BoardViewer.CELL_HGAP;
+        int pitchY = viewer.cellHeight() + BoardViewer.CELL_VGAP;
+        if (!fits(pitchX, pitchY)) {
+            throw new IllegalArgumentException("Board of "
+                    + viewer.worldWidth() + " * " + viewer.worldHeight()
+                    + " cells too large to render in detail,"
+                    + " use renderMap instead.");
+        }
+        BufferedImage result = new BufferedImage(
+                Math.max(1, viewer.worldWidth() * pitchX),
+                Math.max(1, viewer.worldHeight() * pitchY),
+                BufferedImage.TYPE_INT_RGB);
+        render(result, false, pitchX, pitchY);
+        return result;
+    }
+
+    /**
+     * Render a map of the whole board, each cell a square of a single
+     * color.
+     * @param pixelsPerCell Width and height of a cell, in pixels.
+     * @return The image of the map.
+     * @throws IllegalArgumentException if the map would have too many
+     *             pixels for a single image.
+     */
+    public BufferedImage renderMap(int pixelsPerCell) {
+        assert pixelsPerCell > 0;
+        if (!fits(pixelsPerCell, pixelsPerCell)) {
+            throw new IllegalArgumentException("Board of "
+                    + viewer.worldWidth() + " * " + viewer.worldHeight()
+                    + " cells too large for a map of " + pixelsPerCell
+                    + " pixels per cell.");
+        }
+        BufferedImage result = new BufferedImage(
+                Math.max(1, viewer.worldWidth() * pixelsPerCell),
+                Math.max(1, viewer.worldHeight() * pixelsPerCell),
+                BufferedImage.TYPE_INT_RGB);
+        render(result, true, pixelsPerCell, pixelsPerCell);
+        return result;
+    }
+
+    /**
+     * Tell whether an image of the whole board, with cells of a given
+     * size, has few enough pixels to be held in a single array.
+     * @param pitchX Width of a cell, including any gap, in pixels
+     * @param pitchY Height of a cell, including any gap, in pixels
+     * @return True iff the image can be created.
+     */
+    private boolean fits(int pitchX, int pitchY) {
+        long width = (long) viewer.worldWidth() * pitchX;
+        long height = (long) viewer.worldHeight() * pitchY;
+        return width * height <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Render the board on an image in tiles, on the pool unless the
+     * image is a single tile.
+     * @param target Image holding all cells of the board
+     * @param map Whether to render a map rather than in detail
+     * @param pitchX Width of a cell, including any gap, in pixels
+     * @param pitchY Height of a cell, including any gap, in pixels
+     */
+    private void render(BufferedImage target, boolean map,
+            int pitchX, int pitchY) {
+        int tileColumns = Math.max(1, TILE_PIXELS / pitchX);
+        int tileRows = Math.max(1, TILE_PIXELS / pitchY);
+        Tiles tiles = new Tiles(target, map, pitchX, pitchY,
+                tileColumns, tileRows);
+        if (tiles.count() <= 1) {
+            tiles.invoke();
+        } else {
+            pool.invoke(tiles);
+        }
+    }
+
+    /**
+     * Task rendering a range of tiles, split into halves until
+     * a single tile is left.
+     */
+    private final class Tiles extends RecursiveAction {
+
+        /**
+         * Serialization version, unused.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The image holding all tiles.
+         */
+        private final BufferedImage target;
+
+        /**
+         * Whether to render a map rather than in detail.
+         */
+        private final boolean map;
+
+        /**
+         * Size of a cell, including any gap, in pixels.
+         */
+        private final int pitchX, pitchY;
+
+        /**
+         * Number of columns and rows of cells per tile.
+         */
+        private final int tileColumns, tileRows;
+
+        /**
+         * Number of columns and rows of cells of the image.
+         */
+        private final int width, height;
+
+        /**
+         * Number of tiles along a row.
+         */
+        private final int across;
+
+        /**
+         * The first tile, and the tile following the range, numbered
+         * row by row.
+         */
+        private final int first, last;
+
+        /**
+         * Create the task rendering all tiles.
+         * @param image The image holding all tiles
+         * @param renderMap Whether to render a map
+         * @param px Width of a cell in pixels
+         * @param py Height of a cell in pixels
+         * @param columns Number of columns of cells per tile
+         * @param rows Number of rows of cells per tile
+         */
+        Tiles(BufferedImage image, boolean renderMap, int px, int py,
+                int columns, int rows) {
+            target = image;
+            map = renderMap;
+            pitchX = px;
+            pitchY = py;
+            tileColumns = columns;
+            tileRows = rows;
+            width = image.getWidth() / px;
+            height = image.getHeight() / py;
+            across = (width + columns - 1) / columns;
+            first = 0;
+            last = across * ((height + rows - 1) / rows);
+        }
+
+        /**
+         * Create a task rendering part of the tiles of another.
+         * @param all The task rendering all tiles
+         * @param from First tile
+         * @param to Tile following the range
+         */
+        private Tiles(Tiles all, int from, int to) {
+            target = all.target;
+            map = all.map;
+            pitchX = all.pitchX;
+            pitchY = all.pitchY;
+            tileColumns = all.tileColumns;
+            tileRows = all.tileRows;
+            width = all.width;
+            height = all.height;
+            across = all.across;
+            first = from;
+            last = to;
+        }
+
+        /**
+         * @return The number of tiles rendered.
+         */
+        int count() {
+            return last - first;
+        }
+
+        /**
+         * Render the tiles, splitting ranges of several tiles.
+         */
+        @Override
+        protected void compute() {
+            if (last - first > 1) {
+                int mid = (first + last) >>> 1;
+                invokeAll(new Tiles(this, first, mid),
+                        new Tiles(this, mid, last));
+            } else if (last > first) {
+                renderTile(first);
+            }
+        }
+
+        /**
+         * Render a tile on its region of the image.
+         * @param tile Number of the tile.
+         */
+        private void renderTile(int tile) {
+            int x0 = (tile % across) * tileColumns;
+            int y0 = (tile / across) * tileRows;
+            int columns = Math.min(tileColumns, width - x0);
+            int rows = Math.min(tileRows, height - y0);
+            BufferedImage region = target.getSubimage(x0 * pitchX,
+                    y0 * pitchY, columns * pitchX, rows * pitchY);
+            Graphics2D g2 = region.createGraphics();
+            try {
+                if (map) {
+                    viewer.renderMap(g2, x0, y0, columns, rows, pitchX);
+                } else {
+                    viewer.render(g2, region.getWidth(), region.getHeight(),
+                            x0, y0);
+                }
+            } finally {
+                g2.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package jpacman.model;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A level stored in the compact binary level format. Such levels can be
+ * memory mapped and handed to the Game as they are, without parsing the
+ * map character by character.
+ * <p>
+ * The format consists of a header of six big-endian fields: the magic
+ * number "JPLV" (int), the format version (short), flags (short), the
+ * width and the height (ints), and the numbers of food elements and
+ * monsters (ints). The header is followed by the cells, in row-major order,
+ * each represented by its guest code as a single byte. If the RLE flag is
+ * set, the cells are run-length encoded instead: an int giving the number
+ * of runs, followed by that many runs of an int length and a byte code.
+ * Run-length encoded levels are kept as runs in memory as well, so that
+ * they may hold more than Integer.MAX_VALUE cells.
+ *
+ * @version $Id$
+ */
+public class BinaryLevel implements WorldMap {
+
+    /**
+     * File name extension used for binary levels.
+     */
+    public static final String EXTENSION = ".jpl";
+
+    /**
+     * Magic number identifying binary levels ("JPLV").
+     */
+    static final int MAGIC = 0x4A504C56;
+
+    /**
+     * Version of the format.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * Flag indicating that the cells are run-length encoded.
+     */
+    static final short FLAG_RLE = 1;
+
+    /**
+     * Size of the header, in bytes.
+     */
+    static final int HEADER_SIZE = 24;
+
+    /**
+     * Size of a single encoded run, in bytes.
+     */
+    private static final int RUN_SIZE = 5;
+
+    /**
+     * Dimensions of the level.
+     */
+    private int width, height;
+
+    /**
+     * Numbers of food elements and monsters, as recorded in the header.
+     */
+    private int foodCount, monsterCount;
+
+    /**
+     * The guest codes of all cells, one byte each, in row-major order,
+     * starting at index 0.
+     */
+    private ByteBuffer cells;
+
+    /**
+     * The runs of a run-length encoded level, split at the ends of rows;
+     * null if the cells are raw.
+     */
+    private RleWorldMap runs;
+
+    /**
+     * Create a level from its decoded components.
+     * @param w Width
+     * @param h Height
+     * @param food Number of food elements
+     * @param monsters Number of monsters
+     * @param data The cells' codes, starting at index 0.
+     */
+    private BinaryLevel(int w, int h, int food, int monsters,
+            ByteBuffer data) {
+        width = w;
+        height = h;
+        foodCount = food;
+        monsterCount = monsters;
+        cells = data;
+    }
+
+    /**
+     * Create a run-length encoded level from its decoded components.
+     * @param food Number of food elements
+     * @param monsters Number of monsters
+     * @param map The runs of the cells.
+     */
+    private BinaryLevel(int food, int monsters, RleWorldMap map) {
+        width = map.getWidth();
+        height = map.getHeight();
+        foodCount = food;
+        monsterCount = monsters;
+        runs = map;
+    }
+
+    /**
+     * Open a binary level file by mapping it into memory.
+     *
+     * @param file
+     *            The level file.
+     * @return The level contained in the file.
+     * @throws GameLoadException
+     *             If the file can't be read, or isn't a correct level.
+     */
+    public static BinaryLevel open(File file) throws GameLoadException {
+        ByteBuffer mapped;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                mapped = channel.map(
+                        FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                // the mapping remains valid after closing the channel.
+                raf.close();
+            }
+        } catch (IOException ioe) {
+            throw new GameLoadException("Can't map level " + file, ioe);
+        }
+        return read(mapped);
+    }
+
+    /**
+     * Read a binary level from a stream, e.g. a resource on the classpath
+     * which can't be memory mapped.
+     *
+     * @param in
+     *            The stream, which is left open.
+     * @return The level read.
+     * @throws GameLoadException
+     *             If the stream can't be read, or isn't a correct level.
+     */
+    public static BinaryLevel read(InputStream in) throws GameLoadException {
+        final int bufferSize = 65536;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        try {
+            int n = in.read(buffer);
+            while (n >= 0) {
+                bytes.write(buffer, 0, n);
+                n = in.read(buffer);
+            }
+        } catch (IOException ioe) {
+            throw new GameLoadException("Can't read level", ioe);
+        }
+        return read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Interpret the contents of a buffer as a binary level.
+     * Raw cells are used in place; run-length encoded cells are kept
+     * as runs.
+     *
+     * @param buf
+     *            Buffer containing the level, from position 0.
+     * @return The level.
+     * @throws GameLoadException
+     *             If the buffer doesn't contain a correct level.
+     */
+    static BinaryLevel read(ByteBuffer buf) throws GameLoadException {
+        if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            throw new GameLoadException("Not a binary level.");
+        }
+        final int versionAt = 4;
+        final int flagsAt = 6;
+        final int widthAt = 8;
+        final int heightAt = 12;
+        final int foodAt = 16;
+        final int monstersAt = 20;
+        if (buf.getShort(versionAt) != VERSION) {
+            throw new GameLoadException("Unsupported level version "
+                    + buf.getShort(versionAt));
+        }
+        boolean rle = (buf.getShort(flagsAt) & FLAG_RLE) != 0;
+        int w = buf.getInt(widthAt);
+        int h = buf.getInt(heightAt);
+        if (w <= 0 || h <= 0
+                || (!rle && (long) w * h > Integer.MAX_VALUE)) {
+            throw new GameLoadException("Illegal level dimensions "
+                    + w + " * " + h);
+        }
+        BinaryLevel result;
+        if (rle) {
+            result = new BinaryLevel(buf.getInt(foodAt),
+                    buf.getInt(monstersAt), decodeRuns(buf, w, h));
+        } else {
+            if (buf.limit() - HEADER_SIZE != w * h) {
+                throw new GameLoadException("Level size doesn't match "
+                        + w + " * " + h);
+            }
+            buf.position(HEADER_SIZE);
+            result = new BinaryLevel(w, h, buf.getInt(foodAt),
+                    buf.getInt(monstersAt), buf.slice());
+        }
+        result.verify();
+        return result;
+    }
+
+    /**
+     * Decode the run-length encoded cells following the header, splitting
+     * runs that continue on the next row.
+     * @param buf The level's buffer
+     * @param w Width of the level
+     * @param h Height of the level
+     * @return The runs of the cells.
+     * @throws GameLoadException if the runs are inconsistent.
+     */
+    private static RleWorldMap decodeRuns(ByteBuffer buf, int w, int h)
+        throws GameLoadException {
+        RleWorldMap result = new RleWorldMap();
+        long size = (long) w * h;
+        try {
+            int count = buf.getInt(HEADER_SIZE);
+            int at = HEADER_SIZE + Integer.SIZE / Byte.SIZE;
+            long filled = 0;
+            int x = 0;
+            for (int r = 0; r < count; r++) {
+                int length = buf.getInt(at);
+                char code = (char) buf.get(at + RUN_SIZE - 1);
+                if (length <= 0 || length > size - filled) {
+                    throw new GameLoadException("Illegal run length "
+                            + length);
+                }
+                filled += length;
+                while (length > 0) {
+                    int part = Math.min(length, w - x);
+                    result.addRun(code, part);
+                    length -= part;
+                    x += part;
+                    if (x == w) {
+                        result.endRow();
+                        x = 0;
+                    }
+                }
+                at += RUN_SIZE;
+            }
+            if (filled != size) {
+                throw new GameLoadException("Runs don't cover the level.");
+            }
+        } catch (IndexOutOfBoundsException ioobe) {
+            throw new GameLoadException("Truncated level.", ioobe);
+        }
+        return result;
+    }
+
+    /**
+     * Check that the cells contain valid guest codes only, that there
+     * is a player, and that the counts in the header are right.
+     * The cells are scanned as bytes, or as runs, building a histogram of
+     * codes, rather than character by character through a MapChecker.
+     * @throws GameLoadException if this is not the case.
+     */
+    private void verify() throws GameLoadException {
+        final int codes = 256;
+        long[] histogram = new long[codes];
+        long size = (long) width * height;
+        if (runs == null) {
+            for (int i = 0; i < size; i++) {
+                histogram[cells.get(i) & (codes - 1)]++;
+            }
+        } else {
+            for (int r = 0; r < runs.getRunCount(); r++) {
+                histogram[runs.runCode(r) & (codes - 1)]
+                    += runs.runLength(r);
+            }
+        }
+        final char[] legal = {Guest.EMPTY_TYPE, Guest.FOOD_TYPE,
+            Guest.MONSTER_TYPE, Guest.PLAYER_TYPE, Guest.WALL_TYPE};
+        long counted = 0;
+        for (char code : legal) {
+            counted += histogram[code];
+        }
+        if (counted != size) {
+            throw new GameLoadException("Incorrect game character in level.");
+        }
+        if (histogram[Guest.PLAYER_TYPE] == 0) {
+            throw new GameLoadException("No player defined.");
+        }
+        if (histogram[Guest.FOOD_TYPE] != foodCount
+                || histogram[Guest.MONSTER_TYPE] != monsterCount) {
+            throw new GameLoadException("Level counts are inconsistent.");
+        }
+    }
+
+    /**
+     * Write a world map in the binary level format.
+     *
+     * @param map
+     *            The map to be written, which must be sane.
+     * @param out
+     *            The stream to write to, which is left open.
+     * @param rle
+     *            Whether to run-length encode the cells.
+     * @throws IOException
+     *             If writing fails.
+     */
+    public static void write(WorldMap map, OutputStream out, boolean rle)
+        throws IOException {
+        assert InvariantChecks.skipExpensive()
+            || GameLoader.checkSanity(map) == null;
+        MapChecker checker = new MapChecker();
+        for (int y = 0; y < map.getHeight(); y++) {
+            checker.checkRow(map, y);
+        }
+        DataOutputStream data = new DataOutputStream(
+                new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        if (rle) {
+            data.writeShort(FLAG_RLE);
+        } else {
+            data.writeShort(0);
+        }
+        data.writeInt(map.getWidth());
+        data.writeInt(map.getHeight());
+        data.writeInt(checker.getFoodCount());
+        data.writeInt(checker.getMonsterCount());
+        if (rle) {
+            writeRuns(map, data);
+        } else {
+            for (int y = 0; y < map.getHeight(); y++) {
+                for (int x = 0; x < map.getWidth(); x++) {
+                    data.writeByte(map.guestCode(x, y));
+                }
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Write a world map to a binary level file.
+     *
+     * @param map
+     *            The map to be written
+     * @param file
+     *            The file to be (over)written
+     * @param rle
+     *            Whether to run-length encode the cells.
+     * @throws IOException
+     *             If writing fails.
+     */
+    public static void write(WorldMap map, File file, boolean rle)
+        throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            write(map, out, rle);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Decide whether a map is best written run-length encoded: maps
+     * that are run-length encoded already, or too large for raw cells,
+     * always are; others only if their runs take less space than the
+     * raw cells.
+     * @param map The map to be written
+     * @return True iff the cells should be run-length encoded.
+     */
+    static boolean preferRuns(WorldMap map) {
+        long size = (long) map.getWidth() * map.getHeight();
+        if (map instanceof RleWorldMap || size > Integer.MAX_VALUE) {
+            return true;
+        }
+        long encoded = Integer.SIZE / Byte.SIZE;
+        for (long i = 0; i < size && encoded < size; i = runEnd(map, i)) {
+            encoded += RUN_SIZE;
+        }
+        return encoded < size;
+    }
+
+    /**
+     * Write the cells of a map as runs, preceded by the number of runs.
+     * The map is scanned once, the runs being buffered until they have
+     * been counted.
+     * @param map The map
+     * @param data Stream to write to
+     * @throws IOException if writing fails.
+     */
+    private static void writeRuns(WorldMap map, DataOutputStream data)
+        throws IOException {
+        int w = map.getWidth();
+        long size = (long) w * map.getHeight();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream runs = new DataOutputStream(buffer);
+        int count = 0;
+        for (long i = 0; i < size;) {
+            long end = runEnd(map, i);
+            runs.writeInt((int) (end - i));
+            runs.writeByte(map.guestCode((int) (i % w), (int) (i / w)));
+            count++;
+            i = end;
+        }
+        runs.flush();
+        data.writeInt(count);
+        buffer.writeTo(data);
+    }
+
+    /**
+     * Find the end of the run of equal codes starting at a given cell.
+     * Runs are cut off at Integer.MAX_VALUE cells, the longest length
+     * that can be encoded.
+     * @param map The map
+     * @param start Row-major index of the first cell of the run
+     * @return Index of the first cell after the run.
+     */
+    private static long runEnd(WorldMap map, long start) {
+        int w = map.getWidth();
+        long limit = Math.min((long) w * map.getHeight(),
+                start + Integer.MAX_VALUE);
+        char code = map.guestCode((int) (start % w), (int) (start / w));
+        long end = start + 1;
+        while (end < limit
+                && map.guestCode((int) (end % w), (int) (end / w)) == code) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * @see jpacman.model.WorldMap#getWidth()
+     * @return The width of the level.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @see jpacman.model.WorldMap#getHeight()
+     * @return The height of the level.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @see jpacman.model.WorldMap#guestCode(int, int)
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @return The guest code at (x,y).
+     */
+    public char guestCode(int x, int y) {
+        assert x >= 0 && x < width && y >= 0 && y < height;
+        if (runs != null) {
+            return runs.guestCode(x, y);
+        }
+        return (char) cells.get(y * width + x);
+    }
+
+    /**
+     * @return The number of food elements in the level.
+     */
+    public int getFoodCount() {
+        return foodCount;
+    }
+
+    /**
+     * @return The number of monsters in the level.
+     */
+    public int getMonsterCount() {
+        return monsterCount;
+    }
+}
@@ -1,14 +1,18 @@
 package jpacman.model;
 
+import java.util.Arrays;
+
 /**
  * Maintain a rectangular board of cells, potentially occupied by guests. After
  * the board has been created, the dimensions cannot be modified anymore. Guests
  * can move around on the board, and keep track of their position on the board.
+ * As a world map, a board shows its current state, e.g. to analyse which
+ * cells can be reached after walls have been changed.
  *
  * @author Arie van Deursen; Jul 27, 2003
  * @version $Id: Board.java,v 1.6 2009/01/30 09:48:33 arie Exp $
  */
-public class Board {
+public class Board implements WorldMap {
 
     /**
      * Width and height of the board.
@@ -16,10 +20,65 @@ public class Board {
     private int width, height;
 
     /**
-     * The array of cells constituting the board.
+     * The array of cells constituting the board;
+     * null for boards supplying their cells otherwise.
      */
     private Cell[][] cellAt;
 
+    /**
+     * Index of the moving guests on this board, by region.
+     */
+    private SpatialIndex guestIndex;
+
+    /**
+     * Positions of the monsters on this board, stored as parallel arrays.
+     */
+    private MonsterStore monsterStore;
+
+    /**
+     * Maximum number of changed cells recorded between two calls of
+     * takeChanges; beyond it, the changes are reported as incomplete.
+     */
+    static final int MAX_CHANGES = 1 << 12;
+
+    /**
+     * Whether cells whose guests change are recorded.
+     */
+    private boolean tracking = false;
+
+    /**
+     * Whether cells may have changed that weren't recorded.
+     */
+    private boolean allChanged = true;
+
+    /**
+     * Number of bits of the size of the hash table of recorded cells,
+     * which holds twice as many entries as can be recorded.
+     */
+    private static final int TABLE_BITS = 13;
+
+    /**
+     * Hash table of the recorded cells, so that each is recorded once:
+     * their row-major indices plus one, as longs so that boards of any
+     * size can be indexed, with 0 marking free slots.
+     */
+    private final long[] changed = new long[1 << TABLE_BITS];
+
+    /**
+     * The slots of the hash table taken by the recorded cells.
+     */
+    private final int[] changedSlots = new int[MAX_CHANGES];
+
+    /**
+     * The recorded cells, as (x,y) pairs.
+     */
+    private int[] changes = new int[2 * 2 * 2];
+
+    /**
+     * The number of recorded cells.
+     */
+    private int changeCount = 0;
+
     /**
      * Create a new board given a width and a height.
      *
@@ -29,18 +88,39 @@ public class Board {
      *            Height of the board
      */
     public Board(int w, int h) {
+        this(w, h, true);
+        assert InvariantChecks.skipExpensive()
+            || consistentBoardCellAssociation();
+    }
+
+    /**
+     * Create a new board, possibly without allocating its cells.
+     * Subclasses that don't allocate the cells must override lookupCell
+     * and consistentBoardCellAssociation.
+     *
+     * @param w
+     *            Width of the board
+     * @param h
+     *            Height of the board
+     * @param allocate
+     *            Whether to create all cells right away.
+     */
+    protected Board(int w, int h, boolean allocate) {
         assert w >= 0;
         assert h >= 0;
         width = w;
         height = h;
-        cellAt = new Cell[w][h];
-        for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
-                cellAt[x][y] = new Cell(x, y, this);
+        if (allocate) {
+            cellAt = new Cell[w][h];
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) {
+                    cellAt[x][y] = new Cell(x, y, this);
+                }
             }
         }
+        guestIndex = new SpatialIndex(w, h);
+        monsterStore = new MonsterStore(this);
         assert invariant();
-        assert consistentBoardCellAssociation();
     }
 
     /**
@@ -56,7 +136,8 @@ public class Board {
     /**
      * Check that each cell has a correct link to this board. This function
      * could be part of the invariant, but checking it each time is considered
-     * too expensive, which is why it is offered as a separate function.
+     * too expensive, which is why it is offered as a separate function,
+     * guarded by InvariantChecks.
      *
      * @return True iff the cell/board association is consistent
      */
@@ -86,12 +167,25 @@ public class Board {
         assert withinBorders(x, y)
         : "Cell requested (" + x + "," + y + ") out of borders "
         + width + " * " + height;
-        Cell result = cellAt[x][y];
+        Cell result = lookupCell(x, y);
         assert result != null;
         assert invariant();
         return result;
     }
 
+    /**
+     * Find the cell at position (x,y), which falls within the board.
+     *
+     * @param x
+     *            Horizontal coordinate of the requested cell
+     * @param y
+     *            Vertical coordinate of the requested cell
+     * @return The cell at (x,y).
+     */
+    protected Cell lookupCell(int x, int y) {
+        return cellAt[x][y];
+    }
+
     /**
      * Return the guest occupying position (x,y), or null if the cell is empty.
      * Precondition: (x,y) falls within the borders of the board.
@@ -105,7 +199,7 @@ public class Board {
     public Guest getGuest(int x, int y) {
         assert invariant();
         assert withinBorders(x, y);
-        return cellAt[x][y].getInhabitant();
+        return lookupCell(x, y).getInhabitant();
     }
 
     /**
@@ -146,6 +240,123 @@ public class Board {
          return withinBorders;
     }
 
+    /**
+     * Return the spatial index of the moving guests on this board.
+     *
+     * @return The board's guest index.
+     */
+    public SpatialIndex getGuestIndex() {
+        return guestIndex;
+    }
+
+    /**
+     * Return the struct-of-arrays store of the monsters on this board.
+     *
+     * @return The board's monster store.
+     */
+    public MonsterStore getMonsterStore() {
+        return monsterStore;
+    }
+
+    /**
+     * Register a moving guest that has just been placed on this board,
+     * so that the board's auxiliary structures include it.
+     *
+     * @param guest
+     *            The guest, occupying a cell of this board.
+     */
+    void guestPlaced(MovingGuest guest) {
+        assert guest.getLocation().getBoard() == this;
+        guestIndex.add(guest);
+        if (guest.guestType() == Guest.MONSTER_TYPE) {
+            monsterStore.add((Monster) guest);
+        }
+    }
+
+    /**
+     * Bring the board's auxiliary structures up to date after a
+     * moving guest has changed location.
+     *
+     * @param guest
+     *            The guest, occupying its new cell on this board.
+     */
+    void guestMoved(MovingGuest guest) {
+        assert guest.getLocation().getBoard() == this;
+        guestIndex.moved(guest);
+    }
+
+    /**
+     * Switch the recording of changed cells on or off. Recording is off
+     * while a board is being filled, or while cells are created that
+     * merely stand for what was there already.
+     *
+     * @param on
+     *            Whether changed cells should be recorded.
+     * @return Whether they were recorded before.
+     */
+    boolean trackChanges(boolean on) {
+        boolean result = tracking;
+        tracking = on;
+        return result;
+    }
+
+    /**
+     * Record that the guest of a cell of this board has changed,
+     * if changes are being tracked.
+     *
+     * @param cell
+     *            The cell.
+     */
+    void cellChanged(Cell cell) {
+        assert cell.getBoard() == this;
+        if (!tracking || allChanged) {
+            return;
+        }
+        long key = (long) cell.getY() * width + cell.getX() + 1;
+        // multiplicative hashing, probing linearly.
+        final long golden = 0x9E3779B97F4A7C15L;
+        int slot = (int) ((key * golden) >>> (Long.SIZE - TABLE_BITS));
+        while (changed[slot] != 0) {
+            if (changed[slot] == key) {
+                return;
+            }
+            slot = (slot + 1) & (changed.length - 1);
+        }
+        if (changeCount == MAX_CHANGES) {
+            allChanged = true;
+            return;
+        }
+        changed[slot] = key;
+        changedSlots[changeCount] = slot;
+        if (2 * changeCount + 2 > changes.length) {
+            changes = Arrays.copyOf(changes, 2 * changes.length);
+        }
+        changes[2 * changeCount] = cell.getX();
+        changes[2 * changeCount + 1] = cell.getY();
+        changeCount++;
+    }
+
+    /**
+     * Return the cells changed since the previous call, and start
+     * recording anew. The first call on a new board reports that
+     * all cells have changed.
+     *
+     * @return The changed cells.
+     */
+    public BoardChanges takeChanges() {
+        BoardChanges result = BoardChanges.INCOMPLETE;
+        if (!allChanged) {
+            result = new BoardChanges(
+                    Arrays.copyOf(changes, 2 * changeCount), changeCount);
+        }
+        for (int i = 0; i < changeCount; i++) {
+            changed[changedSlots[i]] = 0;
+        }
+        changeCount = 0;
+        allChanged = false;
+        return result;
+    }
+
     /**
      * Return the width of the board.
      *
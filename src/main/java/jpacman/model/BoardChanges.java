@@ -0,0 +1,71 @@
+package jpacman.model;
+
+/**
+ * The cells of a board whose guests changed between two notifications of
+ * the engine's observers, so that viewers can redraw just these cells.
+ * If too many cells changed to list them, or the board itself was
+ * replaced, the changes are incomplete, and viewers should assume
+ * that any cell may have changed.
+ *
+ * @version $Id$
+ */
+public final class BoardChanges {
+
+    /**
+     * Changes of which the cells are not known.
+     */
+    static final BoardChanges INCOMPLETE = new BoardChanges(null, 0);
+
+    /**
+     * The changed cells, as (x,y) pairs; null if incomplete.
+     */
+    private final int[] cells;
+
+    /**
+     * The number of changed cells.
+     */
+    private final int count;
+
+    /**
+     * @param changed The changed cells as (x,y) pairs, or null
+     * @param n The number of pairs
+     */
+    BoardChanges(int[] changed, int n) {
+        assert changed != null || n == 0;
+        assert changed == null || changed.length >= 2 * n;
+        cells = changed;
+        count = n;
+    }
+
+    /**
+     * @return False iff any cell may have changed.
+     */
+    public boolean isComplete() {
+        return cells != null;
+    }
+
+    /**
+     * @return The number of changed cells, if complete.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param i Index of a changed cell, below size()
+     * @return Its horizontal position.
+     */
+    public int getX(int i) {
+        assert i >= 0 && i < count;
+        return cells[2 * i];
+    }
+
+    /**
+     * @param i Index of a changed cell, below size()
+     * @return Its vertical position.
+     */
+    public int getY(int i) {
+        assert i >= 0 && i < count;
+        return cells[2 * i + 1];
+    }
+}
@@ -0,0 +1,302 @@
+package jpacman.model;
+
+/**
+ * A board for very large maps, divided into square chunks of cells that are
+ * only created when one of their cells is first requested. Until then, the
+ * content of a chunk is taken from a compact store: the world map the board
+ * was created from, or the codes recorded when the chunk was last evicted.
+ * <p>
+ * Walls and food are created along with their chunk. Moving guests are not
+ * part of the compact store: they are placed by the Game, which causes
+ * their chunks to be expanded. Chunks without moving guests can be evicted
+ * again, returning them to their compact form. Guest objects of an evicted
+ * chunk are dropped, so references to them (e.g., in moves kept for undo)
+ * must be discarded as well.
+ *
+ * @version $Id$
+ */
+public class ChunkedBoard extends Board {
+
+    /**
+     * Log2 of the chunk size.
+     */
+    static final int CHUNK_SHIFT = 6;
+
+    /**
+     * Width and height of a chunk.
+     */
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /**
+     * Mask giving the position of a coordinate within its chunk.
+     */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * The map holding the initial content of the board.
+     */
+    private WorldMap source;
+
+    /**
+     * Number of chunks in horizontal and vertical direction.
+     */
+    private int chunksX, chunksY;
+
+    /**
+     * The cells of every expanded chunk, in row-major order within
+     * the chunk; null for chunks in compact form.
+     */
+    private Cell[][] chunks;
+
+    /**
+     * Codes of the cells of chunks that were evicted with content
+     * differing from the source; null where the source applies.
+     */
+    private byte[][] evicted;
+
+    /**
+     * Number of chunks currently expanded.
+     */
+    private int expandedCount = 0;
+
+    /**
+     * Number of times a chunk was expanded.
+     */
+    private long expansions = 0;
+
+    /**
+     * Create a board on the basis of a world map, without
+     * creating any cells yet.
+     *
+     * @param map
+     *            The map providing the content of the cells.
+     */
+    public ChunkedBoard(WorldMap map) {
+        super(map.getWidth(), map.getHeight(), false);
+        source = map;
+        chunksX = (map.getWidth() + CHUNK_MASK) >> CHUNK_SHIFT;
+        chunksY = (map.getHeight() + CHUNK_MASK) >> CHUNK_SHIFT;
+        chunks = new Cell[chunksX * chunksY][];
+        evicted = new byte[chunks.length][];
+        assert invariant();
+    }
+
+    /**
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @return Index of the chunk containing (x,y).
+     */
+    private int chunkIndex(int x, int y) {
+        return (y >> CHUNK_SHIFT) * chunksX + (x >> CHUNK_SHIFT);
+    }
+
+    /**
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @return Index of (x,y) within its chunk.
+     */
+    private static int offset(int x, int y) {
+        return ((y & CHUNK_MASK) << CHUNK_SHIFT) + (x & CHUNK_MASK);
+    }
+
+    /**
+     * Find the cell at (x,y), expanding its chunk if needed.
+     * @see jpacman.model.Board#lookupCell(int, int)
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @return The cell at (x,y).
+     */
+    @Override
+    protected Cell lookupCell(int x, int y) {
+        int i = chunkIndex(x, y);
+        Cell[] chunk = chunks[i];
+        if (chunk == null) {
+            chunk = expand(i);
+        }
+        return chunk[offset(x, y)];
+    }
+
+    /**
+     * Return the code of the static guest at (x,y) according to the
+     * compact store. Moving guests don't count.
+     * @param i Index of the chunk containing (x,y)
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @return The code.
+     */
+    private char compactCode(int i, int x, int y) {
+        byte[] codes = evicted[i];
+        if (codes != null) {
+            return (char) codes[offset(x, y)];
+        }
+        char code = source.guestCode(x, y);
+        if (code == Guest.PLAYER_TYPE || code == Guest.MONSTER_TYPE) {
+            code = Guest.EMPTY_TYPE;
+        }
+        return code;
+    }
+
+    /**
+     * Create the cells of a chunk, with their walls and food.
+     * @param i Index of the chunk
+     * @return The cells of the chunk.
+     */
+    private Cell[] expand(int i) {
+        assert chunks[i] == null;
+        Cell[] chunk = new Cell[CHUNK_SIZE * CHUNK_SIZE];
+        int x0 = (i % chunksX) << CHUNK_SHIFT;
+        int y0 = (i / chunksX) << CHUNK_SHIFT;
+        int x1 = Math.min(x0 + CHUNK_SIZE, getWidth());
+        int y1 = Math.min(y0 + CHUNK_SIZE, getHeight());
+        // the new cells show what the compact chunk showed already.
+        boolean tracking = trackChanges(false);
+        try {
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    Cell c = new Cell(x, y, this);
+                    chunk[offset(x, y)] = c;
+                    char code = compactCode(i, x, y);
+                    if (code == Guest.WALL_TYPE) {
+                        (new Wall()).occupy(c);
+                    } else if (code == Guest.FOOD_TYPE) {
+                        (new Food()).occupy(c);
+                    }
+                }
+            }
+        } finally {
+            trackChanges(tracking);
+        }
+        chunks[i] = chunk;
+        evicted[i] = null;
+        expandedCount++;
+        expansions++;
+        return chunk;
+    }
+
+    /**
+     * Return the guest code of the cell at (x,y), without
+     * expanding its chunk.
+     * @see jpacman.model.Board#guestCode(int, int)
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @return Code representing guest type
+     */
+    @Override
+    public char guestCode(int x, int y) {
+        assert withinBorders(x, y);
+        int i = chunkIndex(x, y);
+        if (chunks[i] != null) {
+            return super.guestCode(x, y);
+        }
+        return compactCode(i, x, y);
+    }
+
+    /**
+     * Return all expanded chunks without moving guests to their compact
+     * form. The content of such a chunk is recorded only if it differs
+     * from the source map, e.g. because food has been eaten.
+     *
+     * @return The number of chunks evicted.
+     */
+    public int evictIdleChunks() {
+        int result = 0;
+        byte[] codes = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        for (int i = 0; i < chunks.length; i++) {
+            Cell[] chunk = chunks[i];
+            if (chunk != null && encode(i, codes)) {
+                chunks[i] = null;
+                expandedCount--;
+                result++;
+                if (differsFromSource(i, codes)) {
+                    evicted[i] = codes;
+                    codes = new byte[CHUNK_SIZE * CHUNK_SIZE];
+                }
+            }
+        }
+        assert InvariantChecks.skipExpensive()
+            || consistentBoardCellAssociation();
+        return result;
+    }
+
+    /**
+     * Record the guest codes of an expanded chunk.
+     * @param i Index of the chunk
+     * @param codes Array receiving the codes
+     * @return False iff the chunk contains a moving guest.
+     */
+    private boolean encode(int i, byte[] codes) {
+        for (Cell c : chunks[i]) {
+            if (c != null) {
+                Guest g = c.getInhabitant();
+                if (g instanceof MovingGuest) {
+                    return false;
+                }
+                char code = Guest.EMPTY_TYPE;
+                if (g != null) {
+                    code = g.guestType();
+                }
+                codes[offset(c.getX(), c.getY())] = (byte) code;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param i Index of the chunk
+     * @param codes Current codes of the chunk
+     * @return True iff they differ from the codes in the source map.
+     */
+    private boolean differsFromSource(int i, byte[] codes) {
+        int x0 = (i % chunksX) << CHUNK_SHIFT;
+        int y0 = (i / chunksX) << CHUNK_SHIFT;
+        int x1 = Math.min(x0 + CHUNK_SIZE, getWidth());
+        int y1 = Math.min(y0 + CHUNK_SIZE, getHeight());
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                if (codes[offset(x, y)] != compactCode(i, x, y)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check the cell/board association of the expanded chunks only.
+     * @see jpacman.model.Board#consistentBoardCellAssociation()
+     * @return True iff the association is consistent.
+     */
+    @Override
+    protected boolean consistentBoardCellAssociation() {
+        boolean result = true;
+        for (Cell[] chunk : chunks) {
+            if (chunk != null) {
+                for (Cell c : chunk) {
+                    result = result && (c == null || c.getBoard() == this);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of chunks currently expanded.
+     */
+    public int getExpandedChunks() {
+        return expandedCount;
+    }
+
+    /**
+     * @return The total number of chunks of the board.
+     */
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    /**
+     * @return The number of times a chunk has been expanded.
+     */
+    public long getExpansions() {
+        return expansions;
+    }
+}
@@ -1,7 +1,7 @@
 package jpacman.model;
 
+import java.util.List;
 import java.util.Observable;
-import java.util.Vector;
 
 /**
  * The top level state machine, which also acts as interface to the viewer
@@ -82,6 +82,9 @@ public class Engine extends Observable {
 
     /**
      * We can be in at most one of the Engine's states.
+     * Since this invokes all state inspections (each of which needs the
+     * engine's lock), it is an expensive check, subject to the tier
+     * selected in InvariantChecks.
      *
      * @return True if we in exactly one state.
      */
@@ -129,26 +132,26 @@ public class Engine extends Observable {
         }
         starting = true;
         assert inStartingState();
-        assert invariant();
+        assert InvariantChecks.skipExpensive() || invariant();
     }
 
     /**
      * Stop the game if it is in a playing state.
      */
     public synchronized void quit() {
-        assert invariant();
+        assert InvariantChecks.skipExpensive() || invariant();
         if (inPlayingState()) {
             halted = true;
             notifyViewers();
         }
-        assert invariant();
+        assert InvariantChecks.skipExpensive() || invariant();
     }
 
     /**
      * (Re)start the game, unless it is playing.
      */
     public synchronized void start() {
-        assert invariant();
+        assert InvariantChecks.skipExpensive() || invariant();
         if (inHaltedState()) {
             assert halted;
             halted = false;
@@ -165,7 +168,8 @@ public class Engine extends Observable {
             }
         }
         notifyViewers();
-        assert invariant() : "Invariant invalid after updating the viewers";
+        assert InvariantChecks.skipExpensive() || invariant()
+            : "Invariant invalid after updating the viewers";
     }
     
     /**
@@ -173,7 +177,7 @@ public class Engine extends Observable {
      * Game enters halted state
      */
     public synchronized void undo() {
-    	assert invariant();
+    	assert InvariantChecks.skipExpensive() || invariant();
     	if (inPlayingState() || inHaltedState()) { //just undo all moves until undoing a player move
     		if (theGame.hasMoves() && !inHaltedState()) {
     			halted = true;
@@ -192,8 +196,10 @@ public class Engine extends Observable {
     		theGame.revive();
     		halted = true;
     	}
+    	// undone moves may leave cells with deferred edits of the map.
+    	theGame.patchDeferred();
     	notifyViewers();
-    	assert invariant();    	
+    	assert InvariantChecks.skipExpensive() || invariant();
     }
 
     /**
@@ -205,12 +211,12 @@ public class Engine extends Observable {
      *            Vertical offset.
      */
     public synchronized void movePlayer(int dx, int dy) {
-        assert invariant();
+        assert InvariantChecks.skipExpensive() || invariant();
         if (inPlayingState()) {
             theGame.movePlayer(dx, dy);
             notifyViewers();
         }
-        assert invariant();
+        assert InvariantChecks.skipExpensive() || invariant();
     }
 
     /**
@@ -224,23 +230,24 @@ public class Engine extends Observable {
      *            Vertical offset
      */
     public synchronized void moveMonster(Monster monster, int dx, int dy) {
-    	assert invariant();
+    	assert InvariantChecks.skipExpensive() || invariant();
     	assert monster != null;
     	if (inPlayingState()) {
     		theGame.moveMonster(monster, dx, dy);
     		notifyViewers();
     	}
-    	assert invariant();
+    	assert InvariantChecks.skipExpensive() || invariant();
     }
 
 
 
     /**
-     * Warn the observers that the state has changed.
+     * Warn the observers that the state has changed, telling them
+     * which cells of the board have changed.
      */
     private void notifyViewers() {
         setChanged();
-        notifyObservers();
+        notifyObservers(theGame.getBoard().takeChanges());
     }
 
     /**
@@ -266,6 +273,21 @@ public class Engine extends Observable {
         return getGame().getGuestCode(x, y);
     }
 
+    /**
+     * The guest codes of a rectangle of cells, read at once, so that
+     * viewers drawing many cells don't lock the engine for each of them.
+     *
+     * @param x0 Left border
+     * @param y0 Top border
+     * @param w Number of columns, within the board
+     * @param h Number of rows, within the board
+     * @param codes Array receiving at least w * h codes, row by row.
+     */
+    public synchronized void getGuestCodes(int x0, int y0, int w, int h,
+            char[] codes) {
+        getGame().getGuestCodes(x0, y0, w, h, codes);
+    }
+
     /**
      * Width of the board, offered for clients wishing to draw the board.
      *
@@ -281,7 +303,7 @@ public class Engine extends Observable {
      * @return the board's height.
      */
     public synchronized int boardHeight() {
-        assert invariant();
+        assert InvariantChecks.skipExpensive() || invariant();
         return getGame().boardHeight();
     }
 
@@ -291,29 +313,130 @@ public class Engine extends Observable {
      * @return Amount of food eaten.
      */
     public synchronized int getFoodEaten() {
-        assert invariant();
+        assert InvariantChecks.skipExpensive() || invariant();
         return getPlayer().getPointsEaten();
     }
 
     /**
-     * Return a fresh vector containing all the monsters in the game.
+     * Return an immutable list containing all the monsters in the game.
+     * The list is a shared snapshot, so it can be obtained without
+     * copying and without locking the engine.
      *
      * @return All monsters.
      */
-    public synchronized Vector<Monster> getMonsters() {
-        assert invariant();
-        Vector<Monster> result = theGame.getMonsters();
+    public List<Monster> getMonsters() {
+        List<Monster> result = theGame.getMonsters();
         assert result != null;
         return result;
     }
 
+    /**
+     * @return The number of monsters in the game, obtained without locking.
+     */
+    public int monsterCount() {
+        return theGame.monsterCount();
+    }
+
+    /**
+     * Return the monster at a given index, without locking.
+     *
+     * @param i
+     *            Index between 0 and monsterCount().
+     * @return The i-th monster.
+     */
+    public Monster getMonster(int i) {
+        return theGame.getMonster(i);
+    }
+
+    /**
+     * Find the monsters within k steps of the player, without
+     * allocating any collection.
+     *
+     * @param k
+     *            Maximum (Manhattan) distance to the player
+     * @param result
+     *            Array receiving at most result.length monsters
+     * @return The number of monsters within k steps.
+     */
+    public synchronized int monstersNearPlayer(int k, Monster[] result) {
+        assert InvariantChecks.skipExpensive() || invariant();
+        return theGame.monstersNearPlayer(k, result);
+    }
+
+    /**
+     * Find the monsters in a given region of the board, without
+     * allocating any collection.
+     *
+     * @param x0 Left border
+     * @param y0 Top border
+     * @param x1 Right border (inclusive)
+     * @param y1 Bottom border (inclusive)
+     * @param result Array receiving at most result.length monsters
+     * @return The number of monsters in the region.
+     */
+    public synchronized int monstersInRectangle(int x0, int y0,
+            int x1, int y1, Monster[] result) {
+        assert InvariantChecks.skipExpensive() || invariant();
+        return theGame.monstersInRectangle(x0, y0, x1, y1, result);
+    }
+
+    /**
+     * Return the idle chunks of a chunked board to their compact form.
+     * This discards the moves that could be undone.
+     *
+     * @return The number of chunks evicted.
+     */
+    public synchronized int compactBoard() {
+        assert InvariantChecks.skipExpensive() || invariant();
+        return theGame.compactBoard();
+    }
+
+    /**
+     * Bring the game up to date with an edited version of its map. If its
+     * size is unchanged, the walls and food of the board are patched and
+     * the game goes on, unless it has been won by removing the remaining
+     * food; otherwise the game is restarted on the new map.
+     *
+     * @param map
+     *            The new map, which must be sane.
+     * @return The number of cells patched, or -1 if the game was restarted.
+     */
+    public synchronized int reloadWorld(WorldMap map) {
+        assert InvariantChecks.skipExpensive() || invariant();
+        assert map != null;
+        int result = -1;
+        if (map.getWidth() == theGame.boardWidth()
+                && map.getHeight() == theGame.boardHeight()) {
+            result = theGame.patchWorld(map);
+            if (theGame.gameOver()) {
+                starting = false;
+                halted = false;
+            }
+        } else {
+            theGame.replaceWorld(map);
+            starting = true;
+            halted = false;
+        }
+        notifyViewers();
+        assert InvariantChecks.skipExpensive() || invariant();
+        return result;
+    }
+
+    /**
+     * @return A number that changes whenever the walls of the board
+     *         may have changed, e.g. because a new map was loaded.
+     */
+    public synchronized int getLayoutVersion() {
+        return theGame.getLayoutVersion();
+    }
+
     /**
      * Return the player of the game.
      *
      * @return The game's player.
      */
     public synchronized Player getPlayer() {
-        assert invariant();
+        assert InvariantChecks.skipExpensive() || invariant();
         return theGame.getPlayer();
     }
 
@@ -8,6 +8,11 @@ package jpacman.model;
  */
 public class Food extends Guest {
 
+    /**
+     * Number of points of a simple piece of food.
+     */
+    public static final int DEFAULT_POINTS = 1;
+
     /**
      * Number of points this food element represents.
      */
@@ -28,7 +33,7 @@ public class Food extends Guest {
      * Create a simple piece of food of just one point.
      */
     public Food() {
-        this(1);
+        this(DEFAULT_POINTS);
         assert foodInvariant();
     }
 
@@ -1,7 +1,14 @@
 package jpacman.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
-import java.util.Vector;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Representation of the board and its guests. This class's responsibilities
@@ -31,19 +38,112 @@ public class Game {
     private Player thePlayer = null;
 
     /**
-     * All monsters active in this game.
+     * All monsters active in this game, only modified while
+     * the world is being loaded.
      */
-    private Vector<Monster> monsters = null;
+    private List<Monster> monsters = null;
+
+    /**
+     * Immutable snapshot of the monsters, rebuilt whenever the set of
+     * monsters changes (i.e., when a world is loaded). Volatile, so that
+     * it can be handed out without locking.
+     */
+    private volatile List<Monster> monsterView = null;
+
+    /**
+     * The same snapshot as an array, for indexed access.
+     */
+    private volatile Monster[] monsterArray = null;
 
     /**
      * The total number of points that can be earned in this game.
      */
     private int totalPoints = 0;
 
+    /**
+     * Number of food elements the player can't reach, which
+     * don't count for totalPoints.
+     */
+    private int unreachableFood = 0;
+
+    /**
+     * The cells the player can reach, from where it started or, after
+     * walls were patched, from where it was at that time.
+     */
+    private Reachability reachable = null;
+
+    /**
+     * Version of the layout of walls, which changes whenever a map is
+     * loaded or its walls are patched.
+     */
+    private int layoutVersion = 0;
+
     /**
      * The initial map / layout on the board.
      */
-    private String[] theMap = null;
+    private WorldMap theMap = null;
+
+    /**
+     * Edits of the map that could not be patched into the board because
+     * a moving guest stood on the cell: the code of the new static guest,
+     * by row-major cell index. They are patched once the cell is left.
+     */
+    private Map<Long, Character> deferred = new HashMap<Long, Character>();
+
+    /**
+     * Deferred edits patched because a move left their cell, by that
+     * move. They are reverted, and deferred again, when it is undone.
+     */
+    private Map<Move, Patch> patches = new HashMap<Move, Patch>();
+
+    /**
+     * A deferred edit of the map patched into a cell, in a list of
+     * the edits patched after the same move.
+     */
+    private static final class Patch {
+
+        /**
+         * The row-major index of the cell.
+         */
+        private final long cell;
+
+        /**
+         * The codes of the static guest before and after the edit.
+         */
+        private final char before, after;
+
+        /**
+         * The edit patched before this one after the same move, or null.
+         */
+        private final Patch next;
+
+        /**
+         * Record a patched edit.
+         * @param c The row-major index of the cell
+         * @param b The code of the static guest before the edit
+         * @param a The code of the static guest after the edit
+         * @param n The edit patched before it after the same move, or null
+         */
+        Patch(long c, char b, char a, Patch n) {
+            cell = c;
+            before = b;
+            after = a;
+            next = n;
+        }
+    }
+
+    /**
+     * Default number of cells from which maps are loaded into a
+     * ChunkedBoard, whose cells are only created when needed.
+     */
+    static final long DEFAULT_CHUNKED_THRESHOLD = 1L << 22;
+
+    /**
+     * Maps with at least this number of cells are loaded into a
+     * ChunkedBoard. Set with the system property jpacman.board.chunked.
+     */
+    private static volatile long chunkedThreshold =
+        Long.getLong("jpacman.board.chunked", DEFAULT_CHUNKED_THRESHOLD);
 
 
     /**
@@ -56,6 +156,14 @@ public class Game {
      * @param map The world to be used in the game.
      */
     public Game(String[] map) {
+        this(new TextWorldMap(map));
+    }
+
+    /**
+     * Create a new Game using a custom world map.
+     * @param map The world to be used in the game.
+     */
+    public Game(WorldMap map) {
         theMap = map;
     }
 
@@ -66,13 +174,14 @@ public class Game {
      */
     void initialize() throws GameLoadException {
     	theStack = new Stack<Move>();
+    	patches.clear();
         if (theMap == null) {
             try {
-                theMap = (new GameLoader()).obtainMap();
+                theMap = (new GameLoader()).obtainWorld();
             } catch (GameLoadException gle) {
                 // switch to default world map
                 // (which should always load correctly).
-                theMap = GameLoader.DEFAULT_WORLD_MAP;
+                theMap = new TextWorldMap(GameLoader.DEFAULT_WORLD_MAP);
                 loadWorld(theMap);
                 // inform outside world of switch to new map.
                 throw gle;
@@ -138,13 +247,25 @@ public class Game {
     
     /**
      * The most recent move applied can be requested via this method.
+     * Edits of the map patched because it left their cell are reverted,
+     * and deferred again, as it is about to be undone.
      * pre-condition: we have at least one recent move saved
      * @return the most recent move applied
      */
     protected Move getMostRecentMove() {
     	assert invariant();
     	assert !theStack.isEmpty();
-    	return theStack.pop();
+    	Move result = theStack.pop();
+    	revertPatches(result);
+    	return result;
+    }
+
+    /**
+     * Discard all moves that could be undone.
+     */
+    private void discardMoves() {
+        theStack.clear();
+        patches.clear();
     }
     
     /**
@@ -220,18 +341,86 @@ public class Game {
     }
 
     /**
-     * Return a fresh Vector containing all the monsters in the game.
+     * Return an immutable list of all the monsters in the game.
+     * The list is shared: it is only rebuilt when the game's set of
+     * monsters changes, so obtaining it costs nothing.
      *
      * @return All the monsters.
      */
-    public Vector<Monster> getMonsters() {
-        assert invariant();
-        Vector<Monster> result = new Vector<Monster>();
-        result.addAll(monsters);
+    public List<Monster> getMonsters() {
+        List<Monster> result = monsterView;
         assert result != null;
         return result;
     }
 
+    /**
+     * Return the number of monsters in the game.
+     *
+     * @return The number of monsters.
+     */
+    public int monsterCount() {
+        return monsterArray.length;
+    }
+
+    /**
+     * Return the monster at a given index, without
+     * creating any iteration objects.
+     *
+     * @param i
+     *            Index, between 0 and monsterCount().
+     * @return The i-th monster.
+     */
+    public Monster getMonster(int i) {
+        Monster[] all = monsterArray;
+        assert i >= 0 && i < all.length;
+        return all[i];
+    }
+
+    /**
+     * Rebuild the shared snapshot of the monsters from
+     * the current list of monsters.
+     */
+    private void publishMonsters() {
+        Monster[] all = monsters.toArray(new Monster[monsters.size()]);
+        monsterArray = all;
+        monsterView = Collections.unmodifiableList(Arrays.asList(all));
+    }
+
+    /**
+     * Find the monsters within k steps (Manhattan distance) of the player.
+     * At most result.length monsters are stored in the given array.
+     *
+     * @param k
+     *            Maximum number of steps
+     * @param result
+     *            Array receiving the monsters found
+     * @return The number of monsters within k steps of the player.
+     */
+    public int monstersNearPlayer(int k, Monster[] result) {
+        assert invariant();
+        Cell c = getPlayer().getLocation();
+        return getBoard().getGuestIndex().monstersWithin(
+                c.getX(), c.getY(), k, result);
+    }
+
+    /**
+     * Find the monsters in the rectangle spanned by (x0,y0) and (x1,y1),
+     * both inclusive. At most result.length monsters are stored.
+     *
+     * @param x0 Left border
+     * @param y0 Top border
+     * @param x1 Right border
+     * @param y1 Bottom border
+     * @param result Array receiving the monsters found
+     * @return The number of monsters in the rectangle.
+     */
+    public int monstersInRectangle(int x0, int y0, int x1, int y1,
+            Monster[] result) {
+        assert invariant();
+        return getBoard().getGuestIndex().monstersInRectangle(
+                x0, y0, x1, y1, result);
+    }
+
     /**
      * Add a new guest to the board.
      * @param code Representation of the sort of guest
@@ -265,6 +454,9 @@ public class Game {
         assert (code == Guest.EMPTY_TYPE && theGuest == null) || theGuest != null;
         if (theGuest != null) {
             theGuest.occupy(getBoard().getCell(x, y));
+            if (theGuest instanceof MovingGuest) {
+                getBoard().guestPlaced((MovingGuest) theGuest);
+            }
         }
         assert theGuest == null
             || getBoard().getCell(x, y).equals(theGuest.getLocation());
@@ -274,18 +466,20 @@ public class Game {
      * Load a custom map. Postcondition: the invariant holds.
      *
      * @param map
-     *            String array for a customized world map.
+     *            World map to be loaded.
      */
-    private void loadWorld(String[] map) {
+    private void loadWorld(WorldMap map) {
         assert map != null;
-        assert GameLoader.checkSanity(map) == null;
-        int height = map.length;
+        assert InvariantChecks.skipExpensive()
+            || GameLoader.checkSanity(map) == null;
+        int height = map.getHeight();
         assert height > 0 : "at least one cell with one player required.";
-        int width = map[0].length();
+        int width = map.getWidth();
         assert width > 0 : "empty rows not permitted.";
         
         // initialize Game fields.
-        monsters = new Vector<Monster>();
+        monsters = new ArrayList<Monster>();
+        deferred.clear();
         totalPoints = 0;
         thePlayer = null;
         theBoard = null;
@@ -293,19 +487,350 @@ public class Game {
 
 
         assert theBoard == null;
-        theBoard = new Board(width, height);
-
-        // read the map into the cells
-        for (int y = 0; y < height; y++) {
-            assert map[y].length() == width
-                : "all lines in map should be of equal length.";
-            for (int x = 0; x < width; x++) {
-                assert getBoard().getGuest(x, y) == null
-                    : "only empty cells can be filled.";
-                addGuestFromCode(map[y].charAt(x), x, y);
+        boolean chunked = (long) width * height >= chunkedThreshold;
+        if (chunked) {
+            theBoard = new ChunkedBoard(map);
+        } else {
+            theBoard = new Board(width, height);
+        }
+
+        // fill the board with walls and food in bands of rows, which
+        // also collect the positions of the moving guests; these are
+        // then added in row-major order, as loading serially would.
+        LoadTask task = LoadBands.invoke(
+                new LoadTask(map, theBoard, chunked, 0, height), height, width);
+        totalPoints += task.points;
+        for (int i = 0; i < task.moverCount; i += 2) {
+            int x = task.movers[i];
+            int y = task.movers[i + 1];
+            addGuestFromCode(map.guestCode(x, y), x, y);
+        }
+        publishMonsters();
+
+        // food the player can't reach would make the game unwinnable.
+        Cell start = thePlayer.getLocation();
+        reachable = Reachability.analyse(map, start.getX(), start.getY());
+        unreachableFood = task.food - reachable.getReachableFood();
+        totalPoints -= unreachableFood * Food.DEFAULT_POINTS;
+        layoutVersion++;
+        theBoard.trackChanges(true);
+        assert invariant();
+    }
+
+    /**
+     * Restart the game on a new map, e.g. one of a different size.
+     *
+     * @param map
+     *            The new map, which must be sane.
+     */
+    void replaceWorld(WorldMap map) {
+        assert map != null;
+        theMap = map;
+        discardMoves();
+        loadWorld(map);
+        assert invariant();
+    }
+
+    /**
+     * Patch the board to the walls and food of an edited version of its
+     * map, of the same size, without rebuilding it. Only cells whose wall
+     * or food differs between the old and new map are touched, so food
+     * eaten elsewhere stays eaten. Moving guests stay where they are; a
+     * wall or food element that would end up on one is deferred until
+     * the guest leaves its cell. Rows of text maps that are equal are
+     * skipped as a whole, so for text maps patching takes time in
+     * proportion to the changed cells (plus a comparison of the rows);
+     * other maps, e.g. those of binary or cached levels, are compared
+     * cell by cell, taking time in proportion to their area. If walls
+     * changed, the reachability of food is determined anew from the
+     * player's current position. As recorded moves may refer to patched
+     * cells, the moves that could be undone are discarded.
+     *
+     * @param map
+     *            The new map, which must be sane and of the same size.
+     * @return The number of cells patched.
+     */
+    int patchWorld(WorldMap map) {
+        assert invariant();
+        assert map != null;
+        assert map.getWidth() == theMap.getWidth()
+            && map.getHeight() == theMap.getHeight();
+        assert InvariantChecks.skipExpensive()
+            || GameLoader.checkSanity(map) == null;
+        String[] oldRows = null;
+        String[] newRows = null;
+        if (theMap instanceof TextWorldMap && map instanceof TextWorldMap) {
+            oldRows = ((TextWorldMap) theMap).getRows();
+            newRows = ((TextWorldMap) map).getRows();
+        }
+        int patched = 0;
+        boolean wallsChanged = false;
+        for (int y = 0; y < map.getHeight(); y++) {
+            if (oldRows != null && oldRows[y].equals(newRows[y])) {
+                continue;
+            }
+            for (int x = 0; x < map.getWidth(); x++) {
+                char before = staticCode(theMap.guestCode(x, y));
+                char after = staticCode(map.guestCode(x, y));
+                if (before == after) {
+                    continue;
+                }
+                Long cell = Long.valueOf((long) y * map.getWidth() + x);
+                if (patchCell(x, y, after)) {
+                    deferred.remove(cell);
+                    patched++;
+                    wallsChanged = wallsChanged
+                        || before == Guest.WALL_TYPE
+                        || after == Guest.WALL_TYPE;
+                } else {
+                    deferred.put(cell, Character.valueOf(after));
+                }
             }
         }
+        theMap = map;
+        if (patched > 0) {
+            discardMoves();
+        }
+        if (wallsChanged) {
+            analyseWalls();
+        }
         assert invariant();
+        return patched;
+    }
+
+    /**
+     * Patch the deferred edits of cells that are no longer occupied
+     * by a moving guest, e.g. after undoing moves. The recorded moves
+     * touching a patched cell can't be undone any more, and are discarded
+     * along with the moves made before them.
+     *
+     * @return The number of cells patched.
+     */
+    int patchDeferred() {
+        return patchDeferred(null);
+    }
+
+    /**
+     * Patch the deferred edits of cells that are no longer occupied
+     * by a moving guest. Edits patched because a move left their cell
+     * are recorded with that move, so that undoing it reverts them.
+     *
+     * @param cause The move just made, or null if moves were undone.
+     * @return The number of cells patched.
+     */
+    private int patchDeferred(Move cause) {
+        if (deferred.isEmpty()) {
+            return 0;
+        }
+        int patched = 0;
+        boolean wallsChanged = false;
+        int width = theBoard.getWidth();
+        Iterator<Map.Entry<Long, Character>> i =
+            deferred.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<Long, Character> edit = i.next();
+            long cell = edit.getKey().longValue();
+            int x = (int) (cell % width);
+            int y = (int) (cell / width);
+            char before = staticCode(getGuestCode(x, y));
+            char after = edit.getValue().charValue();
+            if (patchCell(x, y, after)) {
+                i.remove();
+                patched++;
+                wallsChanged = wallsChanged
+                    || before == Guest.WALL_TYPE
+                    || after == Guest.WALL_TYPE;
+                if (cause == null) {
+                    discardMovesTouching(x, y);
+                } else {
+                    patches.put(cause,
+                            new Patch(cell, before, after, patches.get(cause)));
+                }
+            }
+        }
+        if (wallsChanged) {
+            analyseWalls();
+        }
+        return patched;
+    }
+
+    /**
+     * Revert the edits patched because a move left their cell, so that
+     * the move can be undone, and defer them again.
+     *
+     * @param move The move about to be undone.
+     */
+    private void revertPatches(Move move) {
+        Patch patch = patches.remove(move);
+        if (patch == null) {
+            return;
+        }
+        boolean wallsChanged = false;
+        int width = theBoard.getWidth();
+        for (; patch != null; patch = patch.next) {
+            int x = (int) (patch.cell % width);
+            int y = (int) (patch.cell / width);
+            boolean reverted = patchCell(x, y, patch.before);
+            assert reverted : "the later moves onto the cell were undone";
+            deferred.put(Long.valueOf(patch.cell),
+                    Character.valueOf(patch.after));
+            wallsChanged = wallsChanged
+                || patch.before == Guest.WALL_TYPE
+                || patch.after == Guest.WALL_TYPE;
+        }
+        if (wallsChanged) {
+            analyseWalls();
+        }
+    }
+
+    /**
+     * Discard the most recent recorded move from or to a cell, and all
+     * moves made before it, which would be undone after it.
+     *
+     * @param x Horizontal position of the cell
+     * @param y Vertical position of the cell
+     */
+    private void discardMovesTouching(int x, int y) {
+        for (int i = theStack.size() - 1; i >= 0; i--) {
+            Move m = theStack.get(i);
+            if (touches(m.getFrom(), x, y) || touches(m.getTo(), x, y)) {
+                List<Move> discarded = theStack.subList(0, i + 1);
+                for (Move d : discarded) {
+                    patches.remove(d);
+                }
+                discarded.clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param cell A cell, or null
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @return True iff the cell is at (x,y).
+     */
+    private static boolean touches(Cell cell, int x, int y) {
+        return cell != null && cell.getX() == x && cell.getY() == y;
+    }
+
+    /**
+     * Determine the food the player can reach anew, after walls changed.
+     */
+    private void analyseWalls() {
+        Cell at = thePlayer.getLocation();
+        reachable = Reachability.analyse(theBoard, at.getX(), at.getY());
+        unreachableFood = reachable.getUnreachableFood();
+        totalPoints = thePlayer.getPointsEaten()
+            + reachable.getReachableFood() * Food.DEFAULT_POINTS;
+        layoutVersion++;
+    }
+
+    /**
+     * @param code A guest code of a map
+     * @return The code of the static guest, if any, at its cell.
+     */
+    private static char staticCode(char code) {
+        if (code == Guest.PLAYER_TYPE || code == Guest.MONSTER_TYPE) {
+            return Guest.EMPTY_TYPE;
+        }
+        return code;
+    }
+
+    /**
+     * Replace the static guest at (x,y), unless a moving guest is there.
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @param code Code of the new static guest, or EMPTY_TYPE
+     * @return True iff the cell was patched.
+     */
+    private boolean patchCell(int x, int y, char code) {
+        Cell cell = theBoard.getCell(x, y);
+        Guest current = cell.getInhabitant();
+        if (current instanceof MovingGuest) {
+            return false;
+        }
+        if (current != null) {
+            if (current instanceof Food) {
+                countFood(x, y, -((Food) current).getPoints());
+            }
+            current.deoccupy();
+        }
+        if (code == Guest.WALL_TYPE) {
+            new Wall().occupy(cell);
+        } else if (code == Guest.FOOD_TYPE) {
+            Food food = new Food();
+            food.occupy(cell);
+            countFood(x, y, food.getPoints());
+        }
+        return true;
+    }
+
+    /**
+     * Account for food added or removed at (x,y), which only counts
+     * for the total if the player can reach it.
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @param points Points added, or removed if negative
+     */
+    private void countFood(int x, int y, int points) {
+        if (reachable.isReachable(x, y)) {
+            totalPoints += points;
+        } else if (points > 0) {
+            unreachableFood++;
+        } else {
+            unreachableFood--;
+        }
+    }
+
+    /**
+     * Return the version of the layout of walls, so that viewers can
+     * tell when walls they have drawn before need to be drawn anew.
+     *
+     * @return A number that changes whenever walls may have changed.
+     */
+    public int getLayoutVersion() {
+        return layoutVersion;
+    }
+
+    /**
+     * Return the number of food elements the player can't reach, because
+     * they are walled off. These are not needed to win the game.
+     *
+     * @return The number of unreachable food elements.
+     */
+    public int getUnreachableFood() {
+        return unreachableFood;
+    }
+
+    /**
+     * Set the number of cells from which maps are loaded into
+     * a ChunkedBoard.
+     * @param cells The new threshold.
+     */
+    static void setChunkedThreshold(long cells) {
+        assert cells >= 0;
+        chunkedThreshold = cells;
+    }
+
+    /**
+     * Return the chunks of a chunked board that contain no moving guests
+     * to their compact form. Since this drops the guests in these chunks,
+     * the moves recorded for undo are discarded.
+     *
+     * @return The number of chunks evicted; 0 for ordinary boards.
+     */
+    public int compactBoard() {
+        assert invariant();
+        int result = 0;
+        if (theBoard instanceof ChunkedBoard) {
+            result = ((ChunkedBoard) theBoard).evictIdleChunks();
+            if (result > 0) {
+                discardMoves();
+            }
+        }
+        assert invariant();
+        return result;
     }
 
     /**
@@ -355,6 +880,33 @@ public class Game {
     	assert invariant();
     }
 
+    /**
+     * Move the monster with a given id in the board's monster store to
+     * offsets (x+dx,y+dy), as moveMonster does, but finding the target
+     * from the position in the store, so that bulk ticks over all
+     * monsters run through the store's arrays.
+     * Precondition: initialized and game is not over yet
+     * @param id
+     * 		Id of the monster to move
+     * @param dx
+     * 		Horizontal movement
+     * @param dy
+     * 		Vertical movement
+     */
+    void moveMonster(int id, int dx, int dy) {
+        assert invariant();
+        assert !gameOver();
+        MonsterStore store = theBoard.getMonsterStore();
+        int x = store.x(id) + dx;
+        int y = store.y(id) + dy;
+        Cell targetCell = null;
+        if (theBoard.withinBorders(x, y)) {
+            targetCell = theBoard.getCell(x, y);
+        }
+        applyMove(new MonsterMove(store.monster(id), targetCell));
+        assert invariant();
+    }
+
     /**
      * Actually apply the given move, if it is possible.
      * @param move The move to be made.
@@ -366,6 +918,7 @@ public class Game {
         if (move.movePossible()) {
             move.apply();
             persistMove(move);
+            patchDeferred(move);
             assert move.moveDone();
             assert !playerDied() : "move possible => not killed";
         } else {
@@ -455,4 +1008,175 @@ public class Game {
     public char getGuestCode(int x, int y) {
         return getBoard().guestCode(x, y);
     }
+
+    /**
+     * Return the guest codes of a rectangle of cells, row by row.
+     * @param x0 Left border
+     * @param y0 Top border
+     * @param w Number of columns, within the board
+     * @param h Number of rows, within the board
+     * @param codes Array receiving at least w * h codes
+     */
+    public void getGuestCodes(int x0, int y0, int w, int h, char[] codes) {
+        assert getBoard().withinBorders(x0, y0);
+        assert w >= 0 && h >= 0 && codes.length >= w * h;
+        Board board = getBoard();
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                codes[y * w + x] = board.guestCode(x0 + x, y0 + y);
+            }
+        }
+    }
+    /**
+     * Fork/join task filling a band of rows of the board with walls and
+     * food, splitting it into halves as long as it is large. Moving guests
+     * are not created, but their positions are collected, in row-major
+     * order. On a chunked board, food is only counted, as the board creates
+     * its walls and food itself.
+     */
+    private static final class LoadTask extends RecursiveTask<LoadTask> {
+
+        /**
+         * Serialization version, unused.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The map being loaded.
+         */
+        private final WorldMap map;
+
+        /**
+         * The board being filled.
+         */
+        private final Board board;
+
+        /**
+         * Whether the board is a chunked board.
+         */
+        private final boolean chunked;
+
+        /**
+         * The first row of the band, and the row following it.
+         */
+        private final int y0, y1;
+
+        /**
+         * Number of food elements in the band, and their points.
+         */
+        private int food = 0, points = 0;
+
+        /**
+         * Positions of the moving guests in the band, as (x,y) pairs.
+         */
+        private int[] movers = new int[2];
+
+        /**
+         * Number of entries of movers used.
+         */
+        private int moverCount = 0;
+
+        /**
+         * Create a task loading a band of rows.
+         * @param m The map
+         * @param b The board
+         * @param lazy Whether the board is a chunked board
+         * @param from First row of the band
+         * @param to Row following the band
+         */
+        LoadTask(WorldMap m, Board b, boolean lazy, int from, int to) {
+            map = m;
+            board = b;
+            chunked = lazy;
+            y0 = from;
+            y1 = to;
+        }
+
+        /**
+         * @return This task, or the task of the first half
+         *         with the results of both halves.
+         */
+        @Override
+        protected LoadTask compute() {
+            if (y1 - y0 <= LoadBands.rowsPerBand(map.getWidth())) {
+                fill();
+                return this;
+            }
+            int mid = (y0 + y1) >>> 1;
+            LoadTask first = new LoadTask(map, board, chunked, y0, mid);
+            first.fork();
+            LoadTask second =
+                new LoadTask(map, board, chunked, mid, y1).compute();
+            return first.join().append(second);
+        }
+
+        /**
+         * Fill the band.
+         */
+        private void fill() {
+            for (int y = y0; y < y1; y++) {
+                for (int x = 0; x < map.getWidth(); x++) {
+                    char code = map.guestCode(x, y);
+                    Guest guest = null;
+                    switch (code) {
+                    case Guest.WALL_TYPE:
+                        if (!chunked) {
+                            guest = new Wall();
+                        }
+                        break;
+                    case Guest.FOOD_TYPE:
+                        food++;
+                        if (chunked) {
+                            points += Food.DEFAULT_POINTS;
+                        } else {
+                            Food f = new Food();
+                            points += f.getPoints();
+                            guest = f;
+                        }
+                        break;
+                    case Guest.PLAYER_TYPE:
+                    case Guest.MONSTER_TYPE:
+                        addMover(x, y);
+                        break;
+                    default:
+                        assert code == Guest.EMPTY_TYPE
+                            : "unknown cell type``" + code + "'' in worldmap";
+                        break;
+                    }
+                    if (guest != null) {
+                        assert board.getGuest(x, y) == null
+                            : "only empty cells can be filled.";
+                        guest.occupy(board.getCell(x, y));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Record the position of a moving guest.
+         * @param x Horizontal position
+         * @param y Vertical position
+         */
+        private void addMover(int x, int y) {
+            if (moverCount + 2 > movers.length) {
+                movers = Arrays.copyOf(movers, 2 * movers.length);
+            }
+            movers[moverCount++] = x;
+            movers[moverCount++] = y;
+        }
+
+        /**
+         * Add the results of the band following this one.
+         * @param next Task of the next band
+         * @return This task, now covering both bands.
+         */
+        private LoadTask append(LoadTask next) {
+            food += next.food;
+            points += next.points;
+            for (int i = 0; i < next.moverCount; i += 2) {
+                addMover(next.movers[i], next.movers[i + 1]);
+            }
+            return this;
+        }
+    }
 }
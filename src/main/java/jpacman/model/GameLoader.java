@@ -1,5 +1,16 @@
 package jpacman.model;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Take care of loading a map of a game from a
@@ -10,7 +21,46 @@ package jpacman.model;
  */
 
 public class GameLoader {
-    
+
+    /**
+     * The property file, found on the classpath, that
+     * names the map to be used.
+     */
+    static final String PROPERTY_FILE = "jpacman.properties";
+
+    /**
+     * The property naming the map file.
+     */
+    static final String MAP_PROPERTY = "jpacman.map.filename";
+
+    /**
+     * The system property that, if true, makes obtainWorld reject maps
+     * with food the player can't reach.
+     */
+    public static final String REACHABLE_PROPERTY =
+        "jpacman.map.requireReachable";
+
+    /**
+     * The system property that, if true, makes the game watch its map
+     * file, and patch the board whenever the file is edited.
+     */
+    public static final String WATCH_PROPERTY = "jpacman.map.watch";
+
+    /**
+     * Character encoding of map files.
+     */
+    private static final String ENCODING = "US-ASCII";
+
+    /**
+     * Time it took to obtain the most recent map, in nanoseconds.
+     */
+    private long loadTime = 0;
+
+    /**
+     * Cache of compiled levels used by obtainWorld, null if none.
+     */
+    private LevelCache cache;
+
     /**
      * The default map of the world, used if
      * no specific map file is provided, or if loading the
@@ -39,19 +89,309 @@ public class GameLoader {
         "WWWWWWWWWWWWWWWWWWWW"
     };
 
+    /**
+     * Create a loader using the default level cache, if any.
+     */
+    public GameLoader() {
+        this(LevelCache.getDefault());
+    }
+
+    /**
+     * Create a loader using a given level cache.
+     * @param levelCache The cache, or null to do without.
+     */
+    public GameLoader(LevelCache levelCache) {
+        cache = levelCache;
+    }
+
     /**
      * Actually obtain a map from a file specified in the 
-     * default property file.
+     * default property file. The file is first looked up on the
+     * file system, and then as a resource on the classpath.
      * @return The map in the file
      * @throws GameLoadException If the map is wrong or the files can't be opened.
      */
     public String[] obtainMap() throws GameLoadException {
-         // TODO. Currently always return default map.
-         return DEFAULT_WORLD_MAP; 
-        
+        long start = System.nanoTime();
+        String fileName = mapFileName();
+        InputStream in = openMap(fileName);
+        try {
+            return readMap(new InputStreamReader(in, ENCODING));
+        } catch (IOException ioe) {
+            throw new GameLoadException("Can't read map " + fileName, ioe);
+        } catch (GameLoadException gle) {
+            throw new GameLoadException(
+                    fileName + ": " + gle.getMessage(), gle);
+        } finally {
+            close(in);
+            loadTime = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Obtain the world map from the file specified in the default
+     * property file. Files with the BinaryLevel extension are read
+     * in binary level format (memory mapped, if they are files),
+     * files with the RleWorldMap extension as run-length encoded text;
+     * all others are read as text. Other than binary levels, maps are
+     * taken from the level cache, if there is one. If REACHABLE_PROPERTY
+     * is set, maps with unreachable food are rejected.
+     * @return The world map in the file
+     * @throws GameLoadException If the map is wrong or can't be opened.
+     */
+    public WorldMap obtainWorld() throws GameLoadException {
+        String fileName = mapFileName();
+        WorldMap result;
+        if (cache != null && !fileName.endsWith(BinaryLevel.EXTENSION)) {
+            result = obtainCached(fileName);
+        } else {
+            long start = System.nanoTime();
+            try {
+                result = readWorld(fileName);
+            } finally {
+                loadTime = System.nanoTime() - start;
+            }
+        }
+        if (Boolean.getBoolean(REACHABLE_PROPERTY)) {
+            String error = checkReachability(result);
+            if (error != null) {
+                throw new GameLoadException(fileName + ": " + error);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Obtain a map through the level cache: look up the compiled level
+     * by the hash of the map's content, and compile the map on a miss.
+     * @param fileName Name of the map
+     * @return The world map in the file.
+     * @throws GameLoadException If the map is wrong or can't be opened.
+     */
+    private WorldMap obtainCached(String fileName) throws GameLoadException {
+        long start = System.nanoTime();
+        boolean hit = false;
+        try {
+            String key;
+            InputStream in = openMap(fileName);
+            try {
+                key = LevelCache.key(in);
+            } catch (IOException ioe) {
+                throw new GameLoadException("Can't read map " + fileName, ioe);
+            } finally {
+                close(in);
+            }
+            WorldMap result = cache.lookup(key);
+            hit = result != null;
+            if (!hit) {
+                result = readWorld(fileName);
+                cache.store(key, result);
+            }
+            return result;
+        } finally {
+            loadTime = System.nanoTime() - start;
+            cache.recordLoad(hit, loadTime);
+        }
+    }
+
+    /**
+     * Read a map in the format indicated by its extension.
+     * @param fileName Name of the map
+     * @return The world map in the file.
+     * @throws GameLoadException If the map is wrong or can't be opened.
+     */
+    static WorldMap readWorld(String fileName) throws GameLoadException {
+        boolean binary = fileName.endsWith(BinaryLevel.EXTENSION);
+        File file = new File(fileName);
+        if (binary && file.isFile()) {
+            return BinaryLevel.open(file);
+        }
+        InputStream in = openMap(fileName);
+        try {
+            if (binary) {
+                return BinaryLevel.read(in);
+            }
+            Reader reader = new InputStreamReader(in, ENCODING);
+            if (fileName.endsWith(RleWorldMap.EXTENSION)) {
+                return RleWorldMap.read(reader);
+            }
+            return new TextWorldMap(readMap(reader));
+        } catch (IOException ioe) {
+            throw new GameLoadException("Can't read map " + fileName, ioe);
+        } catch (GameLoadException gle) {
+            throw new GameLoadException(
+                    fileName + ": " + gle.getMessage(), gle);
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Check that all food of a map can be reached by the player, so that
+     * the game can be won. Batch simulations can use this to reject
+     * maps before playing them.
+     * @param map A sane map.
+     * @return null if all food is reachable, an error message otherwise.
+     */
+    public static String checkReachability(WorldMap map) {
+        assert InvariantChecks.skipExpensive() || checkSanity(map) == null;
+        int[] first = new int[2];
+        int unreachable = Reachability.analyse(map).unreachableFood(first);
+        if (unreachable == 0) {
+            return null;
+        }
+        return unreachable + " food element(s) can't be reached, e.g. at ("
+            + first[0] + "," + first[1] + ")";
+    }
+
+    /**
+     * Return the time it took to obtain the most recent map,
+     * including opening, reading, and checking it.
+     * @return Load time in nanoseconds, 0 if no map has been obtained.
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    /**
+     * Read a map from a character stream, checking each row while it is
+     * read, so that errors are found without reading any further. Only
+     * the checking is streamed: the rows of a correct map are all kept,
+     * as they make up the result, so a text map takes memory in
+     * proportion to its area; RleWorldMap keeps large maps as runs.
+     * @param source The characters of the map, one row per line.
+     * @return The map read.
+     * @throws IOException If the source can't be read.
+     * @throws GameLoadException If the map is incorrect.
+     */
+    static String[] readMap(Reader source)
+        throws IOException, GameLoadException {
+        BufferedReader reader = new BufferedReader(source);
+        MapChecker checker = new MapChecker();
+        List<String> rows = new ArrayList<String>();
+        String row = reader.readLine();
+        while (row != null) {
+            String error = checker.checkRow(row);
+            if (error != null) {
+                throw new GameLoadException(
+                        "line " + (rows.size() + 1) + ": " + error);
+            }
+            rows.add(row);
+            row = reader.readLine();
+        }
+        String error = checker.finish();
+        if (error != null) {
+            throw new GameLoadException(error);
+        }
+        return rows.toArray(new String[rows.size()]);
+    }
+
+    /**
+     * Determine the name of the map file from the property file.
+     * @return The name of the map file.
+     * @throws GameLoadException If the property file is absent or incomplete.
+     */
+    static String mapFileName() throws GameLoadException {
+        InputStream in = GameLoader.class.getClassLoader()
+            .getResourceAsStream(PROPERTY_FILE);
+        if (in == null) {
+            throw new GameLoadException("Can't find " + PROPERTY_FILE);
+        }
+        Properties properties = new Properties();
+        try {
+            properties.load(in);
+        } catch (IOException ioe) {
+            throw new GameLoadException("Can't read " + PROPERTY_FILE, ioe);
+        } finally {
+            close(in);
+        }
+        String fileName = properties.getProperty(MAP_PROPERTY);
+        if (fileName == null) {
+            throw new GameLoadException(
+                    "No " + MAP_PROPERTY + " in " + PROPERTY_FILE);
+        }
+        return fileName.trim();
+    }
+
+    /**
+     * Open a map, either as a file or as a resource on the classpath.
+     * @param fileName The name of the map
+     * @return An open stream containing the map.
+     * @throws GameLoadException If the map can't be found.
+     */
+    static InputStream openMap(String fileName) throws GameLoadException {
+        InputStream result = null;
+        File file = new File(fileName);
+        try {
+            if (file.isFile()) {
+                result = new FileInputStream(file);
+            } else {
+                result = GameLoader.class.getClassLoader()
+                    .getResourceAsStream(fileName);
+            }
+        } catch (IOException ioe) {
+            throw new GameLoadException("Can't open map " + fileName, ioe);
+        }
+        if (result == null) {
+            throw new GameLoadException("Can't find map " + fileName);
+        }
+        return result;
     }
-    
 
+    /**
+     * Close a stream, ignoring any problems in doing so.
+     * @param in The stream to be closed.
+     */
+    static void close(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ioe) {
+            // nothing sensible left to do.
+            return;
+        }
+    }
+
+    /**
+     * Check the correctness of a given world map.
+     * @param map The map to be checked.
+     * @return null if the map is ok, an error message otherwise.
+     */
+    public static String checkSanity(WorldMap map) {
+        assert map != null;
+        return result(check(map));
+    }
+
+    /**
+     * Check a world map, choosing the most efficient way for its
+     * representation.
+     * @param map The map to be checked.
+     * @return The checker, holding the first error found (if any)
+     *         and the numbers of guests of each type.
+     */
+    static MapChecker check(WorldMap map) {
+        if (map instanceof RleWorldMap) {
+            MapChecker checker = new MapChecker();
+            checker.checkRuns((RleWorldMap) map);
+            return checker;
+        }
+        if (map instanceof TextWorldMap) {
+            return check(((TextWorldMap) map).getRows());
+        }
+        return LoadBands.invoke(
+                new SanityTask(map, null, 0, map.getHeight()),
+                map.getHeight(), map.getWidth());
+    }
+
+    /**
+     * Check the correctness of a run-length encoded world map,
+     * one run at a time rather than cell by cell.
+     * @param map The map to be checked.
+     * @return null if the map is ok, an error message otherwise.
+     */
+    public static String checkSanity(RleWorldMap map) {
+        assert map != null;
+        return result(check(map));
+    }
 
     /**
      * Check the correctness of a given map.
@@ -60,54 +400,100 @@ public class GameLoader {
      */
     public static String checkSanity(String[] map) {
         assert map != null;
-        
-        int height = map.length;
-        if (height == 0) {
-            return "Empty board not allowed";
-        }
-        int width = map[0].length();
-        if (width == 0) {
-            return "Empty rows not permitted.";
-        }
-        
-       boolean playerEncountered = false;
-        
-        for (int y = 0; y < height; y++) {
-            if (map[y].length() != width) {
-                return "all lines in map should be of equal length.";
-            }
-            for (int x = 0; x < width; x++) {
-                char ch = map[y].charAt(x);
-                if (!permittedChar(ch)) {
-                    return "Incorrect game character: " + ch;
-                }
-                if (ch == Guest.PLAYER_TYPE) {
-                    playerEncountered = true;
+        return result(check(map));
+    }
+
+    /**
+     * Check the rows of a map given as text, in bands.
+     * @param map The map to be checked.
+     * @return The checker, holding the first error found (if any)
+     *         and the numbers of guests of each type.
+     */
+    static MapChecker check(String[] map) {
+        int width = 0;
+        if (map.length > 0) {
+            width = map[0].length();
+        }
+        return LoadBands.invoke(
+                new SanityTask(null, map, 0, map.length), map.length, width);
+    }
+
+    /**
+     * @param checker Checker that has checked all rows of a map.
+     * @return The first error found in the map, or null if it is ok.
+     */
+    static String result(MapChecker checker) {
+        if (checker.getError() != null) {
+            return checker.getError();
+        }
+        return checker.finish();
+    }
+
+    /**
+     * Fork/join task checking a band of rows of a map, splitting it
+     * into halves as long as it is large. The results of the halves are
+     * combined in order, so the first error of the map is reported.
+     */
+    private static final class SanityTask extends RecursiveTask<MapChecker> {
+
+        /**
+         * Serialization version, unused.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The map to be checked, if given as world map.
+         */
+        private final WorldMap map;
+
+        /**
+         * The map to be checked, if given as text.
+         */
+        private final String[] rows;
+
+        /**
+         * The first row of the band, and the row following it.
+         */
+        private final int y0, y1;
+
+        /**
+         * Create a task checking a band of rows.
+         * @param m The map, or null if given as text
+         * @param r The map as text, or null
+         * @param from First row of the band
+         * @param to Row following the band
+         */
+        SanityTask(WorldMap m, String[] r, int from, int to) {
+            map = m;
+            rows = r;
+            y0 = from;
+            y1 = to;
+        }
+
+        /**
+         * @return The checker of the band.
+         */
+        @Override
+        protected MapChecker compute() {
+            int width;
+            if (rows != null) {
+                width = 0;
+                if (y1 > y0) {
+                    width = rows[y0].length();
                 }
+            } else {
+                width = map.getWidth();
+            }
+            if (y1 - y0 <= LoadBands.rowsPerBand(width)) {
+                MapChecker checker = new MapChecker();
+                checker.checkRows(map, rows, y0, y1);
+                return checker;
             }
-       }
-        if (!playerEncountered) {
-            return "No player defined.";
-        }
-        
-        return null; // = ok.
-    }
-    
-    /**
-     * Identify whether a character is permitted on a map.
-     * @param c The char to be checked
-     * @return true iff c is a valid char.
-     */
-    private static boolean permittedChar(char c) {
-        switch(c) {
-        case Guest.EMPTY_TYPE:
-        case Guest.FOOD_TYPE:
-        case Guest.MONSTER_TYPE:
-        case Guest.PLAYER_TYPE:
-        case Guest.WALL_TYPE:
-            return true;
-        default:
-            return false;
-        }     
-    }    
+            int mid = (y0 + y1) >>> 1;
+            SanityTask first = new SanityTask(map, rows, y0, mid);
+            first.fork();
+            MapChecker second = new SanityTask(map, rows, mid, y1).compute();
+            return first.join().append(second);
+        }
+    }
 }
\ No newline at end of file
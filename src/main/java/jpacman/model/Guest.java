@@ -53,7 +53,8 @@ public abstract class Guest {
       * @return true iff invariant holds.
       */
      protected boolean guestInvariant() {
-    	 return location == null || this.equals(location.getInhabitant());
+    	 Cell at = getLocation();
+    	 return at == null || this.equals(at.getInhabitant());
      }
 
 
@@ -64,6 +65,17 @@ public abstract class Guest {
         return location;
     }
 
+    /**
+     * Record the cell this guest occupies. Subclasses keeping their
+     * location elsewhere override this together with getLocation.
+     *
+     * @param aCell
+     *            The cell, or null if the guest occupies none.
+     */
+    protected void setLocation(Cell aCell) {
+        location = aCell;
+    }
+
     /**
      * Occupy a non-null, empty cell.
      * Precondition: the current Guest must not
@@ -76,13 +88,14 @@ public abstract class Guest {
      */
     public void occupy(Cell aCell) {
         assert guestInvariant();
-        assert this.location == null;
+        assert getLocation() == null;
         assert !aCell.isOccupied();
 
-        location = aCell;
+        setLocation(aCell);
         aCell.setGuest(this);
+        aCell.getBoard().cellChanged(aCell);
 
-        assert aCell.equals(this.location);
+        assert aCell.equals(getLocation());
         assert this.equals(aCell.getInhabitant());
         assert guestInvariant();
     }
@@ -97,11 +110,12 @@ public abstract class Guest {
     public void deoccupy() {
         assert guestInvariant();
         // Save the old location so we can free it after resetting ourselves
-        Cell oldLocation = location;
+        Cell oldLocation = getLocation();
         // Reset the guest's pointer
-        location = null;
+        setLocation(null);
         // Reset the cell's inhabitant pointer.
         oldLocation.free();
+        oldLocation.getBoard().cellChanged(oldLocation);
         assert !oldLocation.isOccupied();
         assert guestInvariant();
     }
@@ -0,0 +1,92 @@
+package jpacman.model;
+
+/**
+ * Precomputed table describing what happens when a moving guest tries to
+ * enter a cell occupied by another guest. The table is indexed by the type
+ * of the mover and the type of the guest at the destination, and yields a
+ * bit set of outcomes: whether the move is possible, whether food is eaten,
+ * and whether the player dies.
+ * <p>
+ * The table is an alternative to the double dispatch via
+ * Move.tryMoveToGuest and Guest.meetPlayer, which remains the reference
+ * implementation of the game's rules. The two must agree, which is checked
+ * by the test suite.
+ *
+ * @version $Id$
+ */
+public final class InteractionTable {
+
+    /**
+     * Outcome bit: the mover can take the destination cell.
+     */
+    static final int POSSIBLE = 1;
+
+    /**
+     * Outcome bit: the mover eats the guest at the destination.
+     */
+    static final int EATS = 2;
+
+    /**
+     * Outcome bit: the player dies as a result of the move.
+     */
+    static final int DIES = 4;
+
+    /**
+     * Kind indices used in the table, one per guest type.
+     */
+    private static final int EMPTY = 0, PLAYER = 1, MONSTER = 2,
+        FOOD = 3, WALL = 4, KINDS = 5;
+
+    /**
+     * Number of characters covered by the kind lookup.
+     */
+    private static final int CHARS = 128;
+
+    /**
+     * Kind index for each guest type character.
+     */
+    private static final int[] KIND_OF = new int[CHARS];
+
+    /**
+     * The outcomes, indexed by mover kind and destination kind.
+     */
+    private static final int[][] OUTCOME = new int[KINDS][KINDS];
+
+    static {
+        KIND_OF[Guest.EMPTY_TYPE] = EMPTY;
+        KIND_OF[Guest.PLAYER_TYPE] = PLAYER;
+        KIND_OF[Guest.MONSTER_TYPE] = MONSTER;
+        KIND_OF[Guest.FOOD_TYPE] = FOOD;
+        KIND_OF[Guest.WALL_TYPE] = WALL;
+
+        // Anyone can move to an empty cell.
+        OUTCOME[PLAYER][EMPTY] = POSSIBLE;
+        OUTCOME[MONSTER][EMPTY] = POSSIBLE;
+        // The player eats food, and dies when meeting a monster.
+        OUTCOME[PLAYER][FOOD] = POSSIBLE | EATS;
+        OUTCOME[PLAYER][MONSTER] = DIES;
+        // A monster can only enter empty cells, but kills the player.
+        OUTCOME[MONSTER][PLAYER] = DIES;
+        // All other combinations (walls, other players, other monsters,
+        // monsters entering food cells) are simply impossible.
+    }
+
+    /**
+     * Utility class, no constructor.
+     */
+    private InteractionTable() { }
+
+    /**
+     * Look up the outcome of a move.
+     *
+     * @param moverType
+     *            Guest type of the moving guest
+     * @param targetType
+     *            Guest type of the guest at the destination
+     * @return Bit set of POSSIBLE, EATS, and DIES.
+     */
+    static int outcome(char moverType, char targetType) {
+        assert moverType < CHARS && targetType < CHARS;
+        return OUTCOME[KIND_OF[moverType]][KIND_OF[targetType]];
+    }
+}
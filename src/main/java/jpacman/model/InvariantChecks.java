@@ -0,0 +1,143 @@
+package jpacman.model;
+
+/**
+ * Control over how often expensive invariants are checked when running
+ * with assertions enabled. Cheap invariants are always checked; expensive
+ * ones (such as the Engine's state machine invariant, or the consistency
+ * of all board/cell associations) are guarded by skipExpensive(), as in:
+ * <pre>
+ *     assert InvariantChecks.skipExpensive() || invariant();
+ * </pre>
+ * The tier is selected with the system property jpacman.invariants:
+ * <ul>
+ * <li>full (default): every expensive check is carried out;
+ * <li>sampled: only every Nth expensive check of each thread is carried
+ * out, where N is given by jpacman.invariants.interval;
+ * <li>cheap: expensive checks are skipped altogether.
+ * </ul>
+ * This keeps invariant coverage in soak and load tests, without the
+ * checks dominating the profile.
+ *
+ * @version $Id$
+ */
+public final class InvariantChecks {
+
+    /**
+     * The available checking tiers.
+     */
+    public enum Tier { FULL, SAMPLED, CHEAP }
+
+    /**
+     * Default sampling interval for the sampled tier.
+     */
+    static final int DEFAULT_INTERVAL = 64;
+
+    /**
+     * The tier currently in use.
+     */
+    private static volatile Tier tier =
+        parse(System.getProperty("jpacman.invariants"));
+
+    /**
+     * Every interval-th expensive check is carried out when sampling.
+     */
+    private static volatile int interval =
+        Integer.getInteger("jpacman.invariants.interval", DEFAULT_INTERVAL);
+
+    /**
+     * Number of times a tier was selected, telling threads to start
+     * counting their checks anew.
+     */
+    private static volatile int generation = 0;
+
+    /**
+     * Per thread, so that threads checking concurrently don't contend
+     * for a shared counter: the generation of the tier, and the number
+     * of expensive checks requested since it was selected.
+     */
+    private static final ThreadLocal<int[]> REQUESTS =
+        new ThreadLocal<int[]>() {
+            @Override
+            protected int[] initialValue() {
+                return new int[2];
+            }
+        };
+
+    /**
+     * Utility class, no constructor.
+     */
+    private InvariantChecks() { }
+
+    /**
+     * Decide whether the next expensive invariant check can be skipped.
+     * Meant to be used within assertions, so that the bookkeeping
+     * only takes place when assertions are enabled.
+     *
+     * @return true iff the check should be skipped.
+     */
+    public static boolean skipExpensive() {
+        boolean skip;
+        switch (tier) {
+        case CHEAP:
+            skip = true;
+            break;
+        case SAMPLED:
+            int[] requests = REQUESTS.get();
+            if (requests[0] != generation) {
+                requests[0] = generation;
+                requests[1] = 0;
+            }
+            int count = requests[1];
+            // the count wraps around to 0 rather than going negative.
+            requests[1] = (count + 1) & Integer.MAX_VALUE;
+            skip = count % interval != 0;
+            break;
+        default:
+            skip = false;
+            break;
+        }
+        return skip;
+    }
+
+    /**
+     * @return The tier currently in use.
+     */
+    public static Tier getTier() {
+        return tier;
+    }
+
+    /**
+     * Select a checking tier.
+     *
+     * @param newTier
+     *            The tier to be used from now on
+     * @param newInterval
+     *            Sampling interval, positive; only used for SAMPLED.
+     */
+    public static void setTier(Tier newTier, int newInterval) {
+        assert newTier != null;
+        assert newInterval > 0;
+        interval = newInterval;
+        generation++;
+        tier = newTier;
+    }
+
+    /**
+     * Translate a property value into a tier.
+     *
+     * @param value
+     *            The value, e.g. "sampled"; may be null.
+     * @return The corresponding tier, FULL if not recognized.
+     */
+    static Tier parse(String value) {
+        Tier result = Tier.FULL;
+        if (value != null) {
+            for (Tier t : Tier.values()) {
+                if (t.name().equalsIgnoreCase(value.trim())) {
+                    result = t;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,235 @@
+package jpacman.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Directory of compiled levels: validated maps stored in the binary level
+ * format, so that subsequent runs can memory map them instead of reading,
+ * checking and converting the source map again. Entries are keyed by the
+ * SHA-256 hash of the source map's content (and the binary format version),
+ * so edited maps simply get a new entry.
+ * <p>
+ * The default cache is located in the directory given by the system
+ * property jpacman.cache.dir; without it, levels aren't cached.
+ * The cache counts hits and misses, and the time spent loading levels
+ * in either case.
+ *
+ * @version $Id$
+ */
+public class LevelCache {
+
+    /**
+     * The system property naming the default cache directory.
+     */
+    public static final String DIR_PROPERTY = "jpacman.cache.dir";
+
+    /**
+     * The default cache, null if caching is disabled.
+     */
+    private static final LevelCache DEFAULT_CACHE = createDefault();
+
+    /**
+     * Directory containing the compiled levels.
+     */
+    private final File dir;
+
+    /**
+     * Numbers of lookups finding, and not finding, a compiled level.
+     */
+    private final AtomicLong hits = new AtomicLong(),
+        misses = new AtomicLong();
+
+    /**
+     * Total time in nanoseconds spent on loads that hit,
+     * and on loads that missed, the cache.
+     */
+    private final AtomicLong hitTime = new AtomicLong(),
+        missTime = new AtomicLong();
+
+    /**
+     * Create a cache in a given directory, which needn't exist yet: it
+     * is created when the first level is stored in it.
+     * @param directory The cache directory.
+     */
+    public LevelCache(File directory) {
+        assert directory != null;
+        dir = directory;
+    }
+
+    /**
+     * @return The cache in the directory given by DIR_PROPERTY, or null.
+     */
+    private static LevelCache createDefault() {
+        String name = System.getProperty(DIR_PROPERTY);
+        if (name == null || name.trim().length() == 0) {
+            return null;
+        }
+        return new LevelCache(new File(name.trim()));
+    }
+
+    /**
+     * @return The cache configured through DIR_PROPERTY,
+     *         or null if levels aren't cached.
+     */
+    public static LevelCache getDefault() {
+        return DEFAULT_CACHE;
+    }
+
+    /**
+     * Compute the key of a source map.
+     *
+     * @param in
+     *            Stream containing the source map, which is read entirely
+     *            but left open.
+     * @return The hexadecimal SHA-256 hash of the format version and
+     *         the map's content.
+     * @throws IOException
+     *             If the stream can't be read.
+     */
+    public static String key(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            // every Java platform is required to support SHA-256.
+            throw new IllegalStateException(nsae);
+        }
+        digest.update((byte) (BinaryLevel.VERSION >> Byte.SIZE));
+        digest.update((byte) BinaryLevel.VERSION);
+        final int bufferSize = 65536;
+        byte[] buffer = new byte[bufferSize];
+        int n = in.read(buffer);
+        while (n >= 0) {
+            digest.update(buffer, 0, n);
+            n = in.read(buffer);
+        }
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(String.format("%02x", b & 0xff));
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param key Key of a source map
+     * @return The file holding its compiled level.
+     */
+    File entry(String key) {
+        return new File(dir, key + BinaryLevel.EXTENSION);
+    }
+
+    /**
+     * Look up the compiled level of a source map, mapping it into memory.
+     * Entries that can't be read are removed, and count as a miss.
+     *
+     * @param key
+     *            Key of the source map
+     * @return The compiled level, or null if it isn't cached.
+     */
+    public BinaryLevel lookup(String key) {
+        File file = entry(key);
+        BinaryLevel result = null;
+        if (file.isFile()) {
+            try {
+                result = BinaryLevel.open(file);
+            } catch (GameLoadException gle) {
+                file.delete();
+            }
+        }
+        if (result == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Store the compiled level of a source map. The level is written to a
+     * temporary file first, which is then renamed, so that concurrent
+     * lookups never see partially written levels. Levels are stored
+     * run-length encoded if that is smaller, or if the map is run-length
+     * encoded already, so that even maps too large for raw cells are
+     * cached.
+     *
+     * @param key
+     *            Key of the source map
+     * @param map
+     *            The validated map
+     * @return True iff the level has been stored.
+     */
+    public boolean store(String key, WorldMap map) {
+        assert InvariantChecks.skipExpensive()
+            || GameLoader.checkSanity(map) == null;
+        boolean result = false;
+        File tmp = null;
+        try {
+            if (dir.isDirectory() || dir.mkdirs()) {
+                tmp = File.createTempFile("level", ".tmp", dir);
+                BinaryLevel.write(map, tmp, BinaryLevel.preferRuns(map));
+                result = tmp.renameTo(entry(key));
+            }
+        } catch (IOException ioe) {
+            // a level that can't be cached can still be played.
+            result = false;
+        } finally {
+            if (tmp != null && !result) {
+                tmp.delete();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Account for the time a load took.
+     * @param hit Whether the level was found in the cache
+     * @param nanos Duration of the load, in nanoseconds.
+     */
+    void recordLoad(boolean hit, long nanos) {
+        if (hit) {
+            hitTime.addAndGet(nanos);
+        } else {
+            missTime.addAndGet(nanos);
+        }
+    }
+
+    /**
+     * @return The cache directory.
+     */
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * @return The number of lookups that found a compiled level.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups that found no compiled level.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Total time in nanoseconds of loads served from the cache.
+     */
+    public long getHitTime() {
+        return hitTime.get();
+    }
+
+    /**
+     * @return Total time in nanoseconds of loads that missed the cache.
+     */
+    public long getMissTime() {
+        return missTime.get();
+    }
+}
@@ -0,0 +1,109 @@
+package jpacman.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Command line tool converting levels in the text format into the
+ * binary level format, or into run-length encoded text. Usage:
+ * <pre>
+ *     java jpacman.model.LevelConverter [-rle] map.txt [map.jpl|map.rle]
+ * </pre>
+ * If no target is given, the extension of the source is replaced by
+ * BinaryLevel.EXTENSION. Targets with the RleWorldMap.EXTENSION are
+ * written as run-length encoded text.
+ *
+ * @version $Id$
+ */
+public final class LevelConverter {
+
+    /**
+     * Utility class, no constructor.
+     */
+    private LevelConverter() { }
+
+    /**
+     * Convert a text level file into a binary level file, or into a
+     * run-length encoded text file if the target has that extension.
+     *
+     * @param source
+     *            The text level
+     * @param target
+     *            The level to be (over)written
+     * @param rle
+     *            Whether to run-length encode the cells of a binary level
+     * @throws IOException
+     *             If reading or writing fails
+     * @throws GameLoadException
+     *             If the text level isn't correct
+     */
+    public static void convert(File source, File target, boolean rle)
+        throws IOException, GameLoadException {
+        String[] map;
+        InputStream in = new FileInputStream(source);
+        try {
+            map = GameLoader.readMap(new InputStreamReader(in, "US-ASCII"));
+        } finally {
+            in.close();
+        }
+        if (target.getName().endsWith(RleWorldMap.EXTENSION)) {
+            Writer out = new OutputStreamWriter(
+                    new FileOutputStream(target), "US-ASCII");
+            try {
+                RleWorldMap.write(new TextWorldMap(map), out);
+            } finally {
+                out.close();
+            }
+        } else {
+            BinaryLevel.write(new TextWorldMap(map), target, rle);
+        }
+    }
+
+    /**
+     * Derive the name of the binary level from that of the text level.
+     * @param source Name of the text level
+     * @return Name with its extension replaced.
+     */
+    static String targetName(String source) {
+        int dot = source.lastIndexOf('.');
+        if (dot <= source.lastIndexOf(File.separatorChar)) {
+            dot = source.length();
+        }
+        return source.substring(0, dot) + BinaryLevel.EXTENSION;
+    }
+
+    /**
+     * Run the converter.
+     * @param args Optional -rle flag, source, and optional target.
+     * @throws Exception if the conversion fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int first = 0;
+        boolean rle = false;
+        if (args.length > 0 && args[0].equals("-rle")) {
+            rle = true;
+            first = 1;
+        }
+        if (args.length - first < 1 || args.length - first > 2) {
+            System.err.println(
+                    "Usage: LevelConverter [-rle] source.txt "
+                    + "[target.jpl|target.rle]");
+            System.exit(1);
+        }
+        String source = args[first];
+        String target;
+        if (args.length - first == 2) {
+            target = args[first + 1];
+        } else {
+            target = targetName(source);
+        }
+        convert(new File(source), new File(target), rle);
+        System.out.println(source + " -> " + target);
+    }
+}
@@ -0,0 +1,477 @@
+package jpacman.model;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Seeded generator of random levels of any size, for benchmarks and
+ * stress tests. Generated levels always pass GameLoader.checkSanity, and
+ * every food element and monster can be reached by the player.
+ * <p>
+ * Levels are mazes carved with the sidewinder algorithm: passages run
+ * between the cells at odd coordinates, and each maze row only connects
+ * to the row above it, so bands of rows are carved independently on the
+ * LoadBands pool. A fraction of the inner walls, given by the wall
+ * density, is kept; the others are removed to create loops. The player
+ * starts in the top left corner, and the monsters and food are spread
+ * over the free cells in proportion to the free cells of each band.
+ * <p>
+ * Each band draws from its own random generator, seeded from the level
+ * seed and the band's index. Since bands depend on the width of the
+ * level only, the same seed yields the same level whatever the number
+ * of threads.
+ *
+ * @version $Id$
+ */
+public final class LevelGenerator {
+
+    /**
+     * Default fraction of inner walls kept.
+     */
+    public static final double DEFAULT_WALL_DENSITY = 0.8;
+
+    /**
+     * Default number of monsters.
+     */
+    public static final int DEFAULT_MONSTERS = 4;
+
+    /**
+     * Food count filling all free cells left by the monsters.
+     */
+    public static final int ALL_FREE_CELLS = -1;
+
+    /**
+     * Smallest width and height of a level: a single cell within walls.
+     */
+    public static final int MIN_SIZE = 3;
+
+    /**
+     * Odd constant spreading the seeds of the bands.
+     */
+    private static final long SEED_MIX = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Dimensions of the level.
+     */
+    private final int width, height;
+
+    /**
+     * Seed of the level.
+     */
+    private final long seed;
+
+    /**
+     * Fraction of inner walls kept.
+     */
+    private double wallDensity = DEFAULT_WALL_DENSITY;
+
+    /**
+     * Numbers of monsters and food elements to be placed.
+     */
+    private int monsters = DEFAULT_MONSTERS, food = ALL_FREE_CELLS;
+
+    /**
+     * Cells of the level during generation, a row at a time.
+     */
+    private char[][] grid;
+
+    /**
+     * The generated level.
+     */
+    private String[] rows;
+
+    /**
+     * Number of rows of a band, which is even.
+     */
+    private int rowsPerBand;
+
+    /**
+     * Per band: the number of free cells, of guests to be placed,
+     * and of monsters among them.
+     */
+    private int[] free, guestQuota, monsterQuota;
+
+    /**
+     * Create a generator of levels of the given size.
+     *
+     * @param w
+     *            Width of the levels, at least MIN_SIZE
+     * @param h
+     *            Height of the levels, at least MIN_SIZE
+     * @param s
+     *            Seed determining the levels
+     */
+    public LevelGenerator(int w, int h, long s) {
+        assert w >= MIN_SIZE && h >= MIN_SIZE;
+        width = w;
+        height = h;
+        seed = s;
+    }
+
+    /**
+     * Set the fraction of inner walls kept: with 1 the level is a maze
+     * without loops, with 0 only the pillars between the cells remain.
+     * @param density Fraction between 0 and 1.
+     */
+    public void setWallDensity(double density) {
+        assert density >= 0 && density <= 1;
+        wallDensity = density;
+    }
+
+    /**
+     * @param count Number of monsters to be placed.
+     */
+    public void setMonsters(int count) {
+        assert count >= 0;
+        monsters = count;
+    }
+
+    /**
+     * @param count Number of food elements to be placed,
+     *     or ALL_FREE_CELLS.
+     */
+    public void setFood(int count) {
+        assert count >= 0 || count == ALL_FREE_CELLS;
+        food = count;
+    }
+
+    /**
+     * Generate a level.
+     *
+     * @return The level's rows, in the GameLoader text format.
+     * @throws IllegalArgumentException
+     *             If the maze has too few free cells for the guests.
+     */
+    public synchronized String[] generate() {
+        rowsPerBand = Math.max(2, LoadBands.rowsPerBand(width) & ~1);
+        int bands = (height + rowsPerBand - 1) / rowsPerBand;
+        grid = new char[height][];
+        rows = new String[height];
+        free = new int[bands];
+        guestQuota = new int[bands];
+        monsterQuota = new int[bands];
+        try {
+            LoadBands.invoke(new BandTask(0, bands, true), height, width);
+            distribute();
+            LoadBands.invoke(new BandTask(0, bands, false), height, width);
+            String[] result = rows;
+            assert InvariantChecks.skipExpensive()
+                || GameLoader.checkSanity(result) == null;
+            return result;
+        } finally {
+            grid = null;
+            rows = null;
+        }
+    }
+
+    /**
+     * Divide the guests over the bands, in proportion to their free
+     * cells, and the monsters over the guests of each band.
+     */
+    private void distribute() {
+        long total = 0;
+        for (int f : free) {
+            total += f;
+        }
+        long guests = monsters;
+        if (food == ALL_FREE_CELLS) {
+            guests = Math.max(guests, total);
+        } else {
+            guests += food;
+        }
+        if (guests > total) {
+            throw new IllegalArgumentException("The level has only "
+                    + total + " free cells for " + guests + " guests.");
+        }
+        long cells = 0;
+        long placed = 0;
+        for (int i = 0; i < free.length; i++) {
+            long before = placed;
+            cells += free[i];
+            if (total > 0) {
+                placed = guests * cells / total;
+            }
+            guestQuota[i] = (int) (placed - before);
+        }
+        placed = 0;
+        long assigned = 0;
+        for (int i = 0; i < free.length; i++) {
+            long before = assigned;
+            placed += guestQuota[i];
+            if (guests > 0) {
+                assigned = monsters * placed / guests;
+            }
+            monsterQuota[i] = (int) (assigned - before);
+        }
+    }
+
+    /**
+     * Random generator of a band in one of the passes.
+     * @param band Index of the band
+     * @param carving Whether it's the carving pass
+     * @return The band's generator.
+     */
+    private Random random(int band, boolean carving) {
+        long stream = 2L * band;
+        if (carving) {
+            stream++;
+        }
+        return new Random(seed + stream * SEED_MIX);
+    }
+
+    /**
+     * Carve the maze rows of a band, and count its free cells.
+     * Rows of a band start at an even row, so each maze row, at an odd
+     * row, carves its passages up into a row of the same band.
+     * @param band Index of the band
+     */
+    private void carve(int band) {
+        Random random = random(band, true);
+        int y0 = band * rowsPerBand;
+        int y1 = Math.min(y0 + rowsPerBand, height);
+        for (int y = y0; y < y1; y++) {
+            grid[y] = new char[width];
+            Arrays.fill(grid[y], Guest.WALL_TYPE);
+        }
+        for (int y = y0 + 1; y < y1 && y + 1 < height; y += 2) {
+            carveRow(y, random);
+        }
+        if (band == 0) {
+            grid[1][1] = Guest.PLAYER_TYPE;
+        }
+        int count = 0;
+        for (int y = y0; y < y1; y++) {
+            for (char c : grid[y]) {
+                if (c == Guest.EMPTY_TYPE) {
+                    count++;
+                }
+            }
+        }
+        free[band] = count;
+    }
+
+    /**
+     * Carve a maze row: cells are joined into runs to the east, and each
+     * run is joined to the row above through one of its cells. The top
+     * row is a single run. Inner walls are removed afterwards with a
+     * probability of 1 - wallDensity.
+     * @param y Odd row of the level
+     * @param random The band's random generator
+     */
+    private void carveRow(int y, Random random) {
+        char[] row = grid[y];
+        char[] above = grid[y - 1];
+        int runStart = 1;
+        for (int x = 1; x + 1 < width; x += 2) {
+            row[x] = Guest.EMPTY_TYPE;
+            boolean last = x + 3 >= width;
+            if (!last && (y == 1 || random.nextBoolean())) {
+                row[x + 1] = Guest.EMPTY_TYPE;
+            } else {
+                if (y > 1) {
+                    int cell = runStart + 2 * random.nextInt(
+                            (x - runStart) / 2 + 1);
+                    above[cell] = Guest.EMPTY_TYPE;
+                }
+                runStart = x + 2;
+            }
+        }
+        for (int x = 1; x + 1 < width; x += 2) {
+            if (x + 3 < width && row[x + 1] == Guest.WALL_TYPE
+                    && random.nextDouble() >= wallDensity) {
+                row[x + 1] = Guest.EMPTY_TYPE;
+            }
+            if (y > 1 && above[x] == Guest.WALL_TYPE
+                    && random.nextDouble() >= wallDensity) {
+                above[x] = Guest.EMPTY_TYPE;
+            }
+        }
+    }
+
+    /**
+     * Place the band's guests on free cells, choosing each free cell
+     * with the probability that exactly the band's quota is placed
+     * (selection sampling), and turn its rows into strings.
+     * @param band Index of the band
+     */
+    private void place(int band) {
+        Random random = random(band, false);
+        int y0 = band * rowsPerBand;
+        int y1 = Math.min(y0 + rowsPerBand, height);
+        int cells = free[band];
+        int guests = guestQuota[band];
+        int monstersLeft = monsterQuota[band];
+        for (int y = y0; y < y1; y++) {
+            char[] row = grid[y];
+            for (int x = 0; x < width && guests > 0; x++) {
+                if (row[x] == Guest.EMPTY_TYPE) {
+                    if (random.nextInt(cells) < guests) {
+                        if (random.nextInt(guests) < monstersLeft) {
+                            row[x] = Guest.MONSTER_TYPE;
+                            monstersLeft--;
+                        } else {
+                            row[x] = Guest.FOOD_TYPE;
+                        }
+                        guests--;
+                    }
+                    cells--;
+                }
+            }
+            rows[y] = new String(row);
+            grid[y] = null;
+        }
+        assert guests == 0 && monstersLeft == 0;
+    }
+
+    /**
+     * Task carving or filling a range of bands.
+     */
+    private final class BandTask extends RecursiveAction {
+
+        /**
+         * Serialization version, unused.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The first band, and the band following the range.
+         */
+        private final int first, last;
+
+        /**
+         * Whether the bands are carved, or filled with guests.
+         */
+        private final boolean carving;
+
+        /**
+         * @param from First band
+         * @param to Band following the range
+         * @param carve Whether to carve the bands
+         */
+        BandTask(int from, int to, boolean carve) {
+            first = from;
+            last = to;
+            carving = carve;
+        }
+
+        /**
+         * Process the bands, splitting ranges of several bands.
+         */
+        @Override
+        protected void compute() {
+            if (last - first > 1) {
+                int mid = (first + last) >>> 1;
+                invokeAll(new BandTask(first, mid, carving),
+                        new BandTask(mid, last, carving));
+            } else if (carving) {
+                carve(first);
+            } else {
+                place(first);
+            }
+        }
+    }
+
+    /**
+     * Save a level, as a binary level or run-length encoded text if the
+     * file has the BinaryLevel or RleWorldMap extension, and as plain
+     * text otherwise.
+     *
+     * @param map
+     *            The level, which must be sane
+     * @param file
+     *            The file to be (over)written
+     * @throws IOException
+     *             If writing fails.
+     */
+    public static void save(String[] map, File file) throws IOException {
+        assert InvariantChecks.skipExpensive()
+            || GameLoader.checkSanity(map) == null;
+        String name = file.getName();
+        if (name.endsWith(BinaryLevel.EXTENSION)) {
+            BinaryLevel.write(new TextWorldMap(map), file, false);
+            return;
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "US-ASCII"));
+        try {
+            if (name.endsWith(RleWorldMap.EXTENSION)) {
+                RleWorldMap.write(new TextWorldMap(map), out);
+            } else {
+                for (String row : map) {
+                    out.write(row);
+                    out.write('\n');
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Run the generator. Usage:
+     * <pre>
+     *     java jpacman.model.LevelGenerator [-seed n] [-walls density]
+     *         [-monsters n] [-food n] [-threads n] width height target
+     * </pre>
+     * @param args Options, dimensions and the file to be written.
+     * @throws Exception if the level can't be written.
+     */
+    public static void main(String[] args) throws Exception {
+        long seed = 0;
+        double density = DEFAULT_WALL_DENSITY;
+        int monsterCount = DEFAULT_MONSTERS;
+        int foodCount = ALL_FREE_CELLS;
+        int i = 0;
+        for (; i + 1 < args.length && args[i].startsWith("-"); i += 2) {
+            String value = args[i + 1];
+            if (args[i].equals("-seed")) {
+                seed = Long.parseLong(value);
+            } else if (args[i].equals("-walls")) {
+                density = Double.parseDouble(value);
+            } else if (args[i].equals("-monsters")) {
+                monsterCount = Integer.parseInt(value);
+            } else if (args[i].equals("-food")) {
+                foodCount = Integer.parseInt(value);
+            } else if (args[i].equals("-threads")) {
+                LoadBands.setParallelism(Integer.parseInt(value));
+            } else {
+                break;
+            }
+        }
+        if (args.length - i != 3 || density < 0 || density > 1
+                || monsterCount < 0 || foodCount < ALL_FREE_CELLS) {
+            System.err.println("Usage: LevelGenerator [-seed n] "
+                    + "[-walls density] [-monsters n] [-food n] "
+                    + "[-threads n] width height target");
+            System.exit(1);
+        }
+        int w = Integer.parseInt(args[i]);
+        int h = Integer.parseInt(args[i + 1]);
+        if (w < MIN_SIZE || h < MIN_SIZE) {
+            System.err.println("Levels are at least " + MIN_SIZE
+                    + " cells wide and high.");
+            System.exit(1);
+        }
+        LevelGenerator generator = new LevelGenerator(w, h, seed);
+        generator.setWallDensity(density);
+        generator.setMonsters(monsterCount);
+        generator.setFood(foodCount);
+        final double nanosPerMilli = 1e6;
+        long start = System.nanoTime();
+        String[] map = generator.generate();
+        long generated = System.nanoTime();
+        save(map, new File(args[i + 2]));
+        long saved = System.nanoTime();
+        System.err.printf("%dx%d level generated in %.0f ms, "
+                + "written to %s in %.0f ms%n", w, h,
+                (generated - start) / nanosPerMilli, args[i + 2],
+                (saved - generated) / nanosPerMilli);
+    }
+}
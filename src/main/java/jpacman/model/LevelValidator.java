@@ -0,0 +1,364 @@
+package jpacman.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Command line tool validating all level files in a directory tree,
+ * concurrently, and writing a report with a line per level. Usage:
+ * <pre>
+ *     java jpacman.model.LevelValidator [-threads n] [-reachable]
+ *         [-report file.csv] directory
+ * </pre>
+ * Files with the BinaryLevel extension are memory mapped, those with the
+ * RleWorldMap extension are read as runs, and all other files as text.
+ * Text levels are checked line by line as they are read, without keeping
+ * the rows, unless the reachability of food is to be checked as well.
+ * <p>
+ * The report is in CSV format, with columns file, status, width, height,
+ * food, monsters, load time (in microseconds) and error, the file and the
+ * error being quoted; the lines follow the order in which the levels are
+ * completed. Any exception while validating a level, even an unexpected
+ * one, is reported as its error. A summary is written to
+ * standard error.
+ *
+ * @version $Id$
+ */
+public final class LevelValidator {
+
+    /**
+     * Number of levels per thread that may be in progress at a time,
+     * which bounds the memory used by pending results.
+     */
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    /**
+     * Utility class, no constructor.
+     */
+    private LevelValidator() { }
+
+    /**
+     * The outcome of validating a single level.
+     */
+    static final class Result {
+
+        /**
+         * The level file.
+         */
+        private final File file;
+
+        /**
+         * The first error found, null if the level is ok.
+         */
+        private String error;
+
+        /**
+         * Dimensions of the level.
+         */
+        private int width, height;
+
+        /**
+         * Numbers of food elements and monsters.
+         */
+        private int food, monsters;
+
+        /**
+         * Time taken to load and check the level, in nanoseconds.
+         */
+        private long loadTime;
+
+        /**
+         * @param f The level file.
+         */
+        Result(File f) {
+            file = f;
+        }
+
+        /**
+         * @return The first error found, null if the level is ok.
+         */
+        String getError() {
+            return error;
+        }
+
+        /**
+         * @return The level's dimensions as "width x height".
+         */
+        String getDimensions() {
+            return width + "x" + height;
+        }
+
+        /**
+         * @return The number of food elements.
+         */
+        int getFood() {
+            return food;
+        }
+
+        /**
+         * @return The number of monsters.
+         */
+        int getMonsters() {
+            return monsters;
+        }
+
+        /**
+         * @return The result as a line of the CSV report.
+         */
+        String toCsv() {
+            final long nanosPerMicro = 1000;
+            String status = "ok";
+            String message = "";
+            if (error != null) {
+                status = "error";
+                message = quote(error);
+            }
+            return quote(file.getPath()) + "," + status + "," + width + ","
+                + height + "," + food + "," + monsters + ","
+                + (loadTime / nanosPerMicro) + "," + message;
+        }
+    }
+
+    /**
+     * Quote a field of the CSV report, which may contain commas, quotes
+     * or line ends.
+     *
+     * @param field
+     *            The text of the field
+     * @return The field between double quotes, with quotes doubled.
+     */
+    static String quote(String field) {
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Validate a single level file.
+     *
+     * @param file
+     *            The level file
+     * @param reachability
+     *            Whether to check that all food can be reached as well
+     * @return The outcome.
+     */
+    static Result validate(File file, boolean reachability) {
+        Result result = new Result(file);
+        long start = System.nanoTime();
+        try {
+            MapChecker checker;
+            WorldMap map = null;
+            String name = file.getName();
+            if (name.endsWith(BinaryLevel.EXTENSION)) {
+                map = BinaryLevel.open(file);
+                checker = GameLoader.check(map);
+            } else {
+                InputStream in = new FileInputStream(file);
+                try {
+                    BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(in, "US-ASCII"));
+                    if (name.endsWith(RleWorldMap.EXTENSION)) {
+                        map = RleWorldMap.read(reader);
+                        checker = GameLoader.check(map);
+                    } else if (reachability) {
+                        map = new TextWorldMap(GameLoader.readMap(reader));
+                        checker = GameLoader.check(map);
+                    } else {
+                        checker = checkLines(reader);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            result.error = GameLoader.result(checker);
+            result.width = checker.getWidth();
+            result.height = checker.getHeight();
+            result.food = checker.getFoodCount();
+            result.monsters = checker.getMonsterCount();
+            if (result.error == null && reachability) {
+                result.error = GameLoader.checkReachability(map);
+            }
+        } catch (GameLoadException gle) {
+            result.error = gle.getMessage();
+        } catch (IOException ioe) {
+            result.error = "Can't read level: " + ioe.getMessage();
+        } catch (RuntimeException re) {
+            // a bug in reading one level shouldn't abort the whole batch.
+            result.error = "Can't validate level: " + re;
+        }
+        result.loadTime = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Check a text level line by line, without keeping the lines.
+     * @param reader The level's lines
+     * @return The checker, holding the first error, with its line.
+     * @throws IOException if the level can't be read.
+     * @throws GameLoadException if a line is wrong.
+     */
+    private static MapChecker checkLines(BufferedReader reader)
+        throws IOException, GameLoadException {
+        MapChecker checker = new MapChecker();
+        int line = 1;
+        String row = reader.readLine();
+        while (row != null) {
+            String error = checker.checkRow(row);
+            if (error != null) {
+                throw new GameLoadException("line " + line + ": " + error);
+            }
+            line++;
+            row = reader.readLine();
+        }
+        return checker;
+    }
+
+    /**
+     * Collect all regular files in a directory tree.
+     * @param dir The directory
+     * @param files List receiving the files.
+     */
+    static void collect(File dir, List<File> files) {
+        File[] entries = dir.listFiles();
+        if (entries != null) {
+            for (File f : entries) {
+                if (f.isDirectory()) {
+                    collect(f, files);
+                } else if (f.isFile()) {
+                    files.add(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Validate levels concurrently, writing a report line per level.
+     * At most IN_FLIGHT_PER_THREAD levels per thread are in progress,
+     * so that memory use doesn't grow with the number of levels.
+     *
+     * @param files
+     *            The levels
+     * @param threads
+     *            Number of threads to use
+     * @param reachability
+     *            Whether to check the reachability of food
+     * @param report
+     *            Writer receiving the report lines
+     * @return The number of levels with errors.
+     * @throws IOException
+     *             If the report can't be written.
+     * @throws InterruptedException
+     *             If interrupted while waiting for levels.
+     */
+    static int validateAll(List<File> files, int threads,
+            final boolean reachability, Writer report)
+        throws IOException, InterruptedException {
+        assert threads > 0;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<Result> done =
+            new ExecutorCompletionService<Result>(pool);
+        int errors = 0;
+        try {
+            int submitted = 0;
+            int completed = 0;
+            int limit = threads * IN_FLIGHT_PER_THREAD;
+            while (completed < files.size()) {
+                while (submitted < files.size()
+                        && submitted - completed < limit) {
+                    final File file = files.get(submitted++);
+                    done.submit(new Callable<Result>() {
+                        public Result call() {
+                            return validate(file, reachability);
+                        }
+                    });
+                }
+                Result r = done.take().get();
+                completed++;
+                if (r.getError() != null) {
+                    errors++;
+                }
+                report.write(r.toCsv());
+                report.write('\n');
+            }
+        } catch (ExecutionException ee) {
+            // validate reports all problems in its result.
+            throw new IllegalStateException(ee.getCause());
+        } finally {
+            pool.shutdownNow();
+            report.flush();
+        }
+        return errors;
+    }
+
+    /**
+     * Run the validator.
+     * @param args Options and the directory, see the class comment.
+     * @throws Exception if the report can't be written.
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean reachability = false;
+        String reportName = null;
+        String dirName = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-reachable")) {
+                reachability = true;
+            } else if (args[i].equals("-report") && i + 1 < args.length) {
+                reportName = args[++i];
+            } else {
+                dirName = args[i];
+            }
+        }
+        if (dirName == null || threads <= 0) {
+            System.err.println("Usage: LevelValidator [-threads n] "
+                    + "[-reachable] [-report file.csv] directory");
+            System.exit(1);
+        }
+        List<File> files = new ArrayList<File>();
+        collect(new File(dirName), files);
+        Writer report;
+        if (reportName != null) {
+            report = new OutputStreamWriter(
+                    new FileOutputStream(reportName), "UTF-8");
+        } else {
+            report = new OutputStreamWriter(System.out, "UTF-8");
+        }
+        final double nanosPerSecond = 1e9;
+        long start = System.nanoTime();
+        int errors;
+        try {
+            report.write("file,status,width,height,food,monsters,"
+                    + "micros,error\n");
+            errors = validateAll(files, threads, reachability, report);
+        } finally {
+            if (reportName != null) {
+                report.close();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / nanosPerSecond;
+        PrintWriter summary = new PrintWriter(System.err, true);
+        summary.printf("%d levels, %d ok, %d with errors, "
+                + "%.1f s (%.0f levels/s) on %d threads%n",
+                files.size(), files.size() - errors, errors, seconds,
+                files.size() / seconds, threads);
+        if (errors > 0) {
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package jpacman.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Shared support for processing large maps in bands of rows on a
+ * fork/join pool, as done when checking and loading levels. Bands are
+ * split until they hold about BAND_CELLS cells, so small maps are
+ * processed as a single band by the calling thread.
+ * <p>
+ * The parallelism of the pool is given by the system property
+ * jpacman.load.threads, defaulting to the number of processors if it
+ * isn't set to a positive number.
+ *
+ * @version $Id$
+ */
+final class LoadBands {
+
+    /**
+     * Approximate number of cells processed as a single band.
+     */
+    static final int BAND_CELLS = 1 << 16;
+
+    /**
+     * The pool executing the bands.
+     */
+    private static volatile ForkJoinPool pool =
+        new ForkJoinPool(configuredParallelism());
+
+    /**
+     * Utility class, no constructor.
+     */
+    private LoadBands() { }
+
+    /**
+     * @return The parallelism given by jpacman.load.threads, or the number
+     *         of processors if it isn't set to a positive number.
+     */
+    static int configuredParallelism() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int threads = Integer.getInteger("jpacman.load.threads", processors);
+        if (threads <= 0) {
+            return processors;
+        }
+        return threads;
+    }
+
+    /**
+     * Determine the number of rows below which bands are not split.
+     * @param width Width of the rows
+     * @return The number of rows, at least 1.
+     */
+    static int rowsPerBand(int width) {
+        return Math.max(1, BAND_CELLS / Math.max(1, width));
+    }
+
+    /**
+     * Process rows in bands on the pool, unless there are too few of
+     * them to make that worthwhile.
+     * @param <T> Type of the task's result
+     * @param task The task covering all rows
+     * @param rows Number of rows
+     * @param width Width of the rows
+     * @return The task's result.
+     */
+    static <T> T invoke(ForkJoinTask<T> task, int rows, int width) {
+        if (rows <= rowsPerBand(width)) {
+            return task.invoke();
+        }
+        return pool.invoke(task);
+    }
+
+    /**
+     * Use a pool of the given parallelism from now on. The previous pool
+     * is left to finish the bands it is processing, rather than shut down
+     * under a load in progress; its threads end once they are idle.
+     * @param threads Number of worker threads, positive.
+     */
+    static void setParallelism(int threads) {
+        assert threads > 0;
+        pool = new ForkJoinPool(threads);
+    }
+}
@@ -0,0 +1,291 @@
+package jpacman.model;
+
+/**
+ * Incremental sanity checker for world maps, which inspects a map one row
+ * at a time. This allows maps to be validated while they are being read,
+ * without first collecting all rows. While checking, the checker also
+ * counts the guests of each type encountered.
+ * <p>
+ * Typical use: invoke checkRow for every row (stopping at the first
+ * error), then invoke finish to check the map as a whole.
+ * <p>
+ * Large maps can be checked in bands of rows, each with its own checker,
+ * using checkRows. The checkers of consecutive bands are then combined,
+ * in order, with append.
+ *
+ * @version $Id$
+ */
+class MapChecker {
+
+    /**
+     * Width of the map, as determined by its first row; -1 before that.
+     */
+    private int width = -1;
+
+    /**
+     * Number of rows checked so far.
+     */
+    private int height = 0;
+
+    /**
+     * Numbers of players, monsters, food elements and walls seen so far.
+     */
+    private int players, monsters, food, walls;
+
+    /**
+     * The first error found by checkRows, if any.
+     */
+    private String error = null;
+
+    /**
+     * Check the next row of the map.
+     *
+     * @param row
+     *            The row's characters.
+     * @return null if the row is ok, an error message otherwise.
+     */
+    String checkRow(CharSequence row) {
+        assert row != null;
+        if (width < 0) {
+            width = row.length();
+            if (width == 0) {
+                return "Empty rows not permitted.";
+            }
+        }
+        if (row.length() != width) {
+            return "all lines in map should be of equal length.";
+        }
+        for (int x = 0; x < width; x++) {
+            char ch = row.charAt(x);
+            String error = checkChar(ch);
+            if (error != null) {
+                return error;
+            }
+        }
+        height++;
+        return null;
+    }
+
+    /**
+     * Check row y of a world map.
+     *
+     * @param map
+     *            The map
+     * @param y
+     *            The row to be checked
+     * @return null if the row is ok, an error message otherwise.
+     */
+    String checkRow(WorldMap map, int y) {
+        assert map != null && y >= 0 && y < map.getHeight();
+        if (width < 0) {
+            width = map.getWidth();
+            if (width == 0) {
+                return "Empty rows not permitted.";
+            }
+        }
+        assert map.getWidth() == width;
+        for (int x = 0; x < width; x++) {
+            String error = checkChar(map.guestCode(x, y));
+            if (error != null) {
+                return error;
+            }
+        }
+        height++;
+        return null;
+    }
+
+    /**
+     * Check a band of rows of a map, recording the first error found.
+     *
+     * @param map
+     *            The map, as text (if rows is non-null) or world map
+     * @param rows
+     *            The rows of the map as text, or null
+     * @param y0
+     *            The first row of the band
+     * @param y1
+     *            The row following the band
+     */
+    void checkRows(WorldMap map, String[] rows, int y0, int y1) {
+        for (int y = y0; y < y1 && error == null; y++) {
+            if (rows != null) {
+                error = checkRow(rows[y]);
+            } else {
+                error = checkRow(map, y);
+            }
+        }
+    }
+
+    /**
+     * Check all rows of a run-length encoded map run by run, recording
+     * the first error found.
+     *
+     * @param map
+     *            The map
+     */
+    void checkRuns(RleWorldMap map) {
+        for (int y = 0; y < map.getHeight() && error == null; y++) {
+            int rowWidth = 0;
+            int end = map.rowStart(y + 1);
+            for (int r = map.rowStart(y); r < end && error == null; r++) {
+                error = checkRun(map.runCode(r), map.runLength(r));
+                rowWidth += map.runLength(r);
+            }
+            if (error == null) {
+                error = endRow(rowWidth);
+            }
+        }
+    }
+
+    /**
+     * Combine this checker with that of the band of rows directly
+     * following this checker's rows. The first error found remains.
+     *
+     * @param next
+     *            Checker of the next band.
+     * @return This checker, now covering both bands.
+     */
+    MapChecker append(MapChecker next) {
+        if (error != null) {
+            return this;
+        }
+        if (width >= 0 && next.width >= 0 && next.width != width) {
+            // found in the first row of the next band, before its errors.
+            error = "all lines in map should be of equal length.";
+        } else {
+            error = next.error;
+        }
+        if (width < 0) {
+            width = next.width;
+        }
+        height += next.height;
+        players += next.players;
+        monsters += next.monsters;
+        food += next.food;
+        walls += next.walls;
+        return this;
+    }
+
+    /**
+     * @return The first error found by checkRows, or null.
+     */
+    String getError() {
+        return error;
+    }
+
+    /**
+     * Check and count a single character of the map.
+     *
+     * @param ch
+     *            The character
+     * @return null if the character is ok, an error message otherwise.
+     */
+    String checkChar(char ch) {
+        return checkRun(ch, 1);
+    }
+
+    /**
+     * Check and count a run of identical characters within a row,
+     * without looking at the individual cells.
+     *
+     * @param ch
+     *            The character repeated in the run
+     * @param length
+     *            Number of cells in the run, positive
+     * @return null if the run is ok, an error message otherwise.
+     */
+    String checkRun(char ch, int length) {
+        assert length > 0;
+        switch (ch) {
+        case Guest.EMPTY_TYPE:
+            break;
+        case Guest.FOOD_TYPE:
+            food += length;
+            break;
+        case Guest.MONSTER_TYPE:
+            monsters += length;
+            break;
+        case Guest.PLAYER_TYPE:
+            players += length;
+            break;
+        case Guest.WALL_TYPE:
+            walls += length;
+            break;
+        default:
+            return "Incorrect game character: " + ch;
+        }
+        return null;
+    }
+
+    /**
+     * Complete a row whose runs were checked with checkRun.
+     *
+     * @param rowWidth
+     *            The total length of the row's runs
+     * @return null if the row is ok, an error message otherwise.
+     */
+    String endRow(int rowWidth) {
+        if (width < 0) {
+            width = rowWidth;
+            if (width == 0) {
+                return "Empty rows not permitted.";
+            }
+        }
+        if (rowWidth != width) {
+            return "all lines in map should be of equal length.";
+        }
+        height++;
+        return null;
+    }
+
+    /**
+     * Check the properties of the map as a whole, after all rows
+     * have been checked.
+     *
+     * @return null if the map is ok, an error message otherwise.
+     */
+    String finish() {
+        if (height == 0) {
+            return "Empty board not allowed";
+        }
+        if (players == 0) {
+            return "No player defined.";
+        }
+        return null;
+    }
+
+    /**
+     * @return The width of the rows checked, or -1 if none were.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The number of rows checked successfully.
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The number of food elements encountered.
+     */
+    int getFoodCount() {
+        return food;
+    }
+
+    /**
+     * @return The number of monsters encountered.
+     */
+    int getMonsterCount() {
+        return monsters;
+    }
+
+    /**
+     * @return The number of walls encountered.
+     */
+    int getWallCount() {
+        return walls;
+    }
+}
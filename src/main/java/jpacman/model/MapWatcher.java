@@ -0,0 +1,214 @@
+package jpacman.model;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the file of the level being played, and brings the engine's
+ * game up to date whenever the file changes, so that levels can be
+ * edited without restarting the game. Changes are patched into the
+ * board, see Engine.reloadWorld.
+ * <p>
+ * Editors often save a file in several steps, so after a change the
+ * watcher waits until no further changes arrive for SETTLE_MILLIS.
+ * Versions of the file that can't be loaded, or that aren't sane, are
+ * skipped, leaving the game as it is; the error is kept for inspection.
+ * Binary levels are memory mapped, so they can't be edited while being
+ * played and are not watched.
+ *
+ * @version $Id$
+ */
+public class MapWatcher implements Runnable {
+
+    /**
+     * Time without changes after which a changed file is reloaded,
+     * in milliseconds.
+     */
+    public static final long SETTLE_MILLIS = 50;
+
+    /**
+     * The engine whose game is updated.
+     */
+    private final Engine engine;
+
+    /**
+     * The watched file.
+     */
+    private final Path file;
+
+    /**
+     * The service reporting changes to the file's directory.
+     */
+    private final WatchService watcher;
+
+    /**
+     * Number of versions of the file loaded so far.
+     */
+    private volatile int reloads = 0;
+
+    /**
+     * Why the most recent version of the file was skipped;
+     * null if it was loaded.
+     */
+    private volatile String lastError = null;
+
+    /**
+     * Start watching a level file on behalf of an engine.
+     *
+     * @param e
+     *            The engine, playing the level in the file
+     * @param levelFile
+     *            The file, which should not be a binary level
+     * @throws IOException
+     *             If the file's directory can't be watched.
+     */
+    public MapWatcher(Engine e, File levelFile) throws IOException {
+        assert e != null;
+        assert !levelFile.getName().endsWith(BinaryLevel.EXTENSION);
+        engine = e;
+        file = levelFile.getAbsoluteFile().toPath();
+        watcher = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+    }
+
+    /**
+     * Create a watcher for the map file of the default property file,
+     * if GameLoader.WATCH_PROPERTY is set and the map is an ordinary
+     * file in a format that can be watched.
+     *
+     * @param e
+     *            The engine playing the map.
+     * @return The watcher, not yet started, or null.
+     * @throws GameLoadException
+     *             If the map file can't be determined or watched.
+     */
+    public static MapWatcher forConfiguredMap(Engine e)
+        throws GameLoadException {
+        if (!Boolean.getBoolean(GameLoader.WATCH_PROPERTY)) {
+            return null;
+        }
+        String fileName = GameLoader.mapFileName();
+        File levelFile = new File(fileName);
+        if (!levelFile.isFile() || fileName.endsWith(BinaryLevel.EXTENSION)) {
+            return null;
+        }
+        try {
+            return new MapWatcher(e, levelFile);
+        } catch (IOException ioe) {
+            throw new GameLoadException("Can't watch map " + fileName, ioe);
+        }
+    }
+
+    /**
+     * Watch the file in a background thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "map watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching the file, ending the background thread.
+     */
+    public void stop() {
+        try {
+            watcher.close();
+        } catch (IOException ioe) {
+            lastError = "Can't stop watching: " + ioe.getMessage();
+        }
+    }
+
+    /**
+     * Wait for changes to the file, and reload it once they settle.
+     */
+    public void run() {
+        try {
+            while (true) {
+                boolean changed = affectsFile(watcher.take());
+                WatchKey next =
+                    watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                while (next != null) {
+                    changed = affectsFile(next) || changed;
+                    next = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException cwse) {
+            // stopped watching.
+            return;
+        }
+    }
+
+    /**
+     * Consume the events of a key, and re-arm it.
+     * @param key The key signalled
+     * @return True iff one of its events may concern the file.
+     */
+    private boolean affectsFile(WatchKey key) {
+        boolean result = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW
+                    || file.getFileName().equals(event.context())) {
+                result = true;
+            }
+        }
+        key.reset();
+        return result;
+    }
+
+    /**
+     * Load the current version of the file, and patch it into
+     * the engine's game.
+     *
+     * @return The number of cells patched, -1 if the game was restarted
+     *         on a map of a different size, or 0 if the file couldn't
+     *         be loaded.
+     */
+    public int reload() {
+        try {
+            WorldMap map = GameLoader.readWorld(file.toString());
+            String error = GameLoader.checkSanity(map);
+            if (error != null) {
+                throw new GameLoadException(file + ": " + error);
+            }
+            int result = engine.reloadWorld(map);
+            lastError = null;
+            reloads++;
+            return result;
+        } catch (GameLoadException gle) {
+            lastError = gle.getMessage();
+            return 0;
+        }
+    }
+
+    /**
+     * @return The number of versions of the file loaded so far.
+     */
+    public int getReloads() {
+        return reloads;
+    }
+
+    /**
+     * @return Why the most recent version of the file was skipped,
+     *         or null if it was loaded.
+     */
+    public String getLastError() {
+        return lastError;
+    }
+}
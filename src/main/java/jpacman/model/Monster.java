@@ -8,6 +8,18 @@ package jpacman.model;
  */
 public class Monster extends MovingGuest {
 
+    /**
+     * Index of this monster in the board's monster store,
+     * or -1 if not stored yet.
+     */
+    private int id = -1;
+
+    /**
+     * The store holding this monster's position once it has been
+     * placed on a board, null before.
+     */
+    private MonsterStore store;
+
     /**
      * Create a new monster, not occupying a cell yet.
      */
@@ -15,6 +27,61 @@ public class Monster extends MovingGuest {
         super();
     }
 
+    /**
+     * Return the id of this monster, which is its index in the
+     * MonsterStore of the board it lives on.
+     *
+     * @return The monster's id, or -1 if it isn't stored yet.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Hand the position of this monster over to a store, which keeps it
+     * from now on. Only to be used by MonsterStore.
+     *
+     * @param monsterStore
+     *            The store, holding the monster's current position
+     * @param newId
+     *            The index of this monster in the store.
+     */
+    void setStore(MonsterStore monsterStore, int newId) {
+        assert store == null;
+        store = monsterStore;
+        id = newId;
+        super.setLocation(null);
+    }
+
+    /**
+     * Once stored, the location of a monster is the cell at the
+     * position recorded in its store.
+     *
+     * @return The location of this monster.
+     */
+    @Override
+    public Cell getLocation() {
+        if (store == null) {
+            return super.getLocation();
+        }
+        return store.location(id);
+    }
+
+    /**
+     * Once stored, the location of a monster is recorded in its store only.
+     *
+     * @param aCell
+     *            The cell, or null if the monster occupies none.
+     */
+    @Override
+    protected void setLocation(Cell aCell) {
+        if (store == null) {
+            super.setLocation(aCell);
+        } else {
+            store.locate(id, aCell);
+        }
+    }
+
     /**
      * The player decided to bumb into this monster. Modify the move's state
      * reflecting the fact that this will cause the player to die.
@@ -0,0 +1,172 @@
+package jpacman.model;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays storage of the monsters on a board. Monster positions and
+ * ids are kept in parallel int arrays, indexed by the monster's id, while the
+ * Monster objects themselves merely act as handles into this store.
+ * <p>
+ * Once a monster has been placed on the board, the arrays are the only
+ * record of its position: the monster's location is the board's cell at
+ * that position, and moving the monster updates the arrays only.
+ * Loops visiting all monsters (for example, to pick a move for each of them
+ * in a single tick) can run sequentially through these arrays instead of
+ * chasing Monster, Cell and list references all over the heap.
+ *
+ * @version $Id$
+ */
+public class MonsterStore {
+
+    /**
+     * Initial number of monsters that can be stored without growing.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The board the monsters live on.
+     */
+    private final Board board;
+
+    /**
+     * Horizontal and vertical positions, indexed by monster id;
+     * the horizontal position is -1 while a monster occupies no cell.
+     */
+    private int[] xs, ys;
+
+    /**
+     * The handles, indexed by monster id.
+     */
+    private Monster[] handles;
+
+    /**
+     * Number of monsters stored.
+     */
+    private int size;
+
+    /**
+     * Create an empty store.
+     *
+     * @param theBoard
+     *            The board the monsters live on.
+     */
+    MonsterStore(Board theBoard) {
+        assert theBoard != null;
+        board = theBoard;
+        xs = new int[INITIAL_CAPACITY];
+        ys = new int[INITIAL_CAPACITY];
+        handles = new Monster[INITIAL_CAPACITY];
+        size = 0;
+        assert invariant();
+    }
+
+    /**
+     * The parallel arrays are of equal length, and large enough
+     * to hold all monsters.
+     *
+     * @return true iff this is the case.
+     */
+    protected boolean invariant() {
+        return size >= 0 && size <= handles.length
+            && xs.length == handles.length && ys.length == handles.length;
+    }
+
+    /**
+     * Add a monster to the store, give it its id, and take over
+     * the record of its position.
+     * Precondition: the monster occupies a cell, and has not
+     * been stored before.
+     *
+     * @param m
+     *            The monster to be stored.
+     */
+    void add(Monster m) {
+        assert invariant();
+        assert m != null && m.getLocation() != null;
+        assert m.getId() < 0 : "monster stored twice";
+        if (size == handles.length) {
+            int capacity = 2 * handles.length;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            handles = Arrays.copyOf(handles, capacity);
+        }
+        assert m.getLocation().getBoard() == board;
+        int id = size++;
+        handles[id] = m;
+        xs[id] = m.getLocation().getX();
+        ys[id] = m.getLocation().getY();
+        m.setStore(this, id);
+        assert invariant();
+    }
+
+    /**
+     * Record the cell a monster occupies.
+     *
+     * @param id
+     *            Id of a stored monster
+     * @param cell
+     *            Its cell on the board, or null if it occupies none.
+     */
+    void locate(int id, Cell cell) {
+        assert id >= 0 && id < size;
+        if (cell == null) {
+            xs[id] = -1;
+            ys[id] = -1;
+        } else {
+            assert cell.getBoard() == board;
+            xs[id] = cell.getX();
+            ys[id] = cell.getY();
+        }
+    }
+
+    /**
+     * @param id
+     *            Id of a stored monster.
+     * @return The cell the monster occupies, or null if none.
+     */
+    Cell location(int id) {
+        assert id >= 0 && id < size;
+        if (xs[id] < 0) {
+            return null;
+        }
+        return board.lookupCell(xs[id], ys[id]);
+    }
+
+    /**
+     * @return The number of monsters stored.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param id
+     *            Id of a stored monster.
+     * @return The horizontal position of the monster, -1 if it
+     *         occupies no cell.
+     */
+    public int x(int id) {
+        assert id >= 0 && id < size;
+        return xs[id];
+    }
+
+    /**
+     * @param id
+     *            Id of a stored monster.
+     * @return The vertical position of the monster.
+     */
+    public int y(int id) {
+        assert id >= 0 && id < size;
+        return ys[id];
+    }
+
+    /**
+     * @param id
+     *            Id of a stored monster.
+     * @return The monster handle with the given id.
+     */
+    public Monster monster(int id) {
+        assert id >= 0 && id < size;
+        return handles[id];
+    }
+}
@@ -16,6 +16,14 @@ package jpacman.model;
  */
 public abstract class Move {
 
+    /**
+     * Should moves be resolved through the InteractionTable rather than
+     * through double dispatch? Initialized from the jpacman.move.table
+     * system property.
+     */
+    private static volatile boolean tableResolution =
+        Boolean.getBoolean("jpacman.move.table");
+
     /**
      * The guest who initiated the move.
      */
@@ -103,6 +111,8 @@ public abstract class Move {
             Guest targetGuest = to.getInhabitant();
             if (targetGuest == null) {
                 cellAvailable = true;
+            } else if (tableResolution) {
+                cellAvailable = resolveByTable(targetGuest);
             } else {
                 cellAvailable = tryMoveToGuest(targetGuest);
             }
@@ -127,6 +137,58 @@ public abstract class Move {
      */
     protected abstract boolean tryMoveToGuest(Guest targetGuest);
 
+    /**
+     * Determine the effect of moving to an occupied cell by a lookup in
+     * the InteractionTable, rather than by double dispatch.
+     * Precondition: as for tryMoveToGuest.
+     *
+     * @param targetGuest
+     *            Guest the mover will meet
+     * @return true iff the move is possible.
+     */
+    private boolean resolveByTable(Guest targetGuest) {
+        assert tryMoveToGuestPrecondition(targetGuest);
+        int outcome = InteractionTable.outcome(
+                mover.guestType(), targetGuest.guestType());
+        if ((outcome & InteractionTable.DIES) != 0) {
+            die();
+        }
+        if ((outcome & InteractionTable.EATS) != 0) {
+            eat(targetGuest);
+        }
+        return (outcome & InteractionTable.POSSIBLE) != 0;
+    }
+
+    /**
+     * Record that the mover will eat the target guest if this move
+     * is carried out. Only invoked for table resolution, and only
+     * for movers that can eat. Precondition: still initializing.
+     *
+     * @param targetGuest
+     *            The food to be eaten.
+     */
+    protected void eat(Guest targetGuest) {
+        assert false : "this mover can't eat " + targetGuest;
+    }
+
+    /**
+     * Select how moves created from now on are resolved.
+     *
+     * @param useTable
+     *            true for InteractionTable lookups, false for the
+     *            reference double dispatch.
+     */
+    static void setTableResolution(boolean useTable) {
+        tableResolution = useTable;
+    }
+
+    /**
+     * @return true iff moves are resolved through the InteractionTable.
+     */
+    static boolean tableResolution() {
+        return tableResolution;
+    }
+
     /**
      * Boolean function representing the precondition of tryMoveToGuest(Guest
      * targetGuest).
@@ -198,6 +260,7 @@ public abstract class Move {
         }
         mover.deoccupy();
         mover.occupy(to);
+        to.getBoard().guestMoved(mover);
 
         assert fromCell.getInhabitant() == null : "old cell should be freed";
         assert moveDone();
@@ -248,7 +311,8 @@ public abstract class Move {
     	assert initialized();
     	assert moveDone();
     	mover.deoccupy();
-        mover.occupy(from);    
+        mover.occupy(from);
+        from.getBoard().guestMoved(mover);
         if (getGuestAtDestination() != null) {
         	getGuestAtDestination().occupy(to);
         }
@@ -266,4 +330,12 @@ public abstract class Move {
     protected Cell getFrom() {
     	return from;
     }
+
+    /**
+     * Obtain the target Cell location.
+     * @return the Cell that is the location we went to during this move
+     */
+    protected Cell getTo() {
+    	return to;
+    }
 }
@@ -9,9 +9,33 @@ package jpacman.model;
  */
 public abstract class MovingGuest extends Guest {
 
+    /**
+     * Position of this guest in the board's spatial index,
+     * or -1 if not indexed.
+     */
+    private int indexSlot = -1;
+
     /**
      * Constructs a new moving guest.
      */
     public MovingGuest() {
     }
+
+    /**
+     * @return The slot this guest occupies in the spatial index, or -1.
+     */
+    int getIndexSlot() {
+        return indexSlot;
+    }
+
+    /**
+     * Record the slot this guest occupies in the spatial index.
+     * Only to be used by SpatialIndex.
+     *
+     * @param slot
+     *            The new slot.
+     */
+    void setIndexSlot(int slot) {
+        indexSlot = slot;
+    }
 }
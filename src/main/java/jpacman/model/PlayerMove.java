@@ -61,6 +61,17 @@ public class PlayerMove extends Move {
         return targetGuest.meetPlayer(this);
     }
 
+    /**
+     * The player will eat the food at the destination.
+     * @param targetGuest The food to be eaten.
+     * @see jpacman.model.Move#eat(jpacman.model.Guest)
+     */
+    @Override
+    protected void eat(Guest targetGuest) {
+        assert targetGuest.guestType() == Guest.FOOD_TYPE;
+        setFoodEaten(((Food) targetGuest).getPoints());
+    }
+
     /**
      * Return the player initiating this move.
      *
@@ -0,0 +1,234 @@
+package jpacman.model;
+
+import java.util.BitSet;
+
+/**
+ * Flood fill of a world map from the player's starting position, finding
+ * the cells the player can ever reach. Walls and the borders of the map
+ * are the only obstacles: monsters move, so their cells count as passable.
+ * <p>
+ * The fill visits every reachable cell once, keeping track of visited
+ * cells in a bit set per row and of the frontier in a ring buffer of cell
+ * indices, so it runs in time and memory linear in the size of the map.
+ * Indices are longs, so that maps of more than Integer.MAX_VALUE cells
+ * can be analysed as well.
+ *
+ * @version $Id$
+ */
+public final class Reachability {
+
+    /**
+     * Initial capacity of the frontier.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The map analysed.
+     */
+    private final WorldMap map;
+
+    /**
+     * The reachable cells of every row, by column; null for rows
+     * without reachable cells.
+     */
+    private final BitSet[] reached;
+
+    /**
+     * Number of reachable cells.
+     */
+    private long reachableCells = 0;
+
+    /**
+     * Number of reachable food elements.
+     */
+    private int reachableFood = 0;
+
+    /**
+     * Analyse a map from a given starting position.
+     * @param m The map
+     * @param x Horizontal starting position
+     * @param y Vertical starting position
+     */
+    private Reachability(WorldMap m, int x, int y) {
+        map = m;
+        reached = new BitSet[m.getHeight()];
+        fill(x, y);
+    }
+
+    /**
+     * Determine the cells reachable from a given position.
+     *
+     * @param map
+     *            The map
+     * @param x
+     *            Horizontal starting position, within the map
+     * @param y
+     *            Vertical starting position, within the map
+     * @return The analysis.
+     */
+    public static Reachability analyse(WorldMap map, int x, int y) {
+        assert map != null;
+        assert x >= 0 && x < map.getWidth() && y >= 0 && y < map.getHeight();
+        return new Reachability(map, x, y);
+    }
+
+    /**
+     * Determine the cells reachable from the player's position.
+     *
+     * @param map
+     *            The map, which should contain a player.
+     * @return The analysis.
+     */
+    public static Reachability analyse(WorldMap map) {
+        assert map != null;
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                if (map.guestCode(x, y) == Guest.PLAYER_TYPE) {
+                    return analyse(map, x, y);
+                }
+            }
+        }
+        assert false : "map without player";
+        return null;
+    }
+
+    /**
+     * Breadth-first flood fill from (x0,y0).
+     * @param x0 Horizontal starting position
+     * @param y0 Vertical starting position
+     */
+    private void fill(int x0, int y0) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        long[] queue = new long[INITIAL_CAPACITY];
+        int head = 0;
+        int size = 1;
+        queue[0] = (long) y0 * width + x0;
+        reach(x0, y0, map.guestCode(x0, y0));
+        final int[][] offsets = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        while (size > 0) {
+            long cell = queue[head];
+            head = (head + 1) & (queue.length - 1);
+            size--;
+            int x = (int) (cell % width);
+            int y = (int) (cell / width);
+            for (int[] d : offsets) {
+                int nx = x + d[0];
+                int ny = y + d[1];
+                if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
+                    char code = Guest.WALL_TYPE;
+                    if (!isReachable(nx, ny)) {
+                        code = map.guestCode(nx, ny);
+                    }
+                    if (code != Guest.WALL_TYPE) {
+                        reach(nx, ny, code);
+                        if (size == queue.length) {
+                            queue = grow(queue, head);
+                            head = 0;
+                        }
+                        queue[(head + size) & (queue.length - 1)] =
+                            (long) ny * width + nx;
+                        size++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark a cell as reached.
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @param code Its guest code
+     */
+    private void reach(int x, int y, char code) {
+        if (reached[y] == null) {
+            reached[y] = new BitSet(map.getWidth());
+        }
+        reached[y].set(x);
+        reachableCells++;
+        if (code == Guest.FOOD_TYPE) {
+            reachableFood++;
+        }
+    }
+
+    /**
+     * Double the capacity of a full ring buffer.
+     * @param queue The buffer, whose capacity is a power of 2
+     * @param head Index of its first element
+     * @return A buffer with the same elements, starting at index 0.
+     */
+    private static long[] grow(long[] queue, int head) {
+        long[] result = new long[2 * queue.length];
+        int tail = queue.length - head;
+        System.arraycopy(queue, head, result, 0, tail);
+        System.arraycopy(queue, 0, result, tail, head);
+        return result;
+    }
+
+    /**
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @return True iff (x,y) can be reached.
+     */
+    public boolean isReachable(int x, int y) {
+        assert x >= 0 && x < map.getWidth() && y >= 0 && y < map.getHeight();
+        return reached[y] != null && reached[y].get(x);
+    }
+
+    /**
+     * @return The number of cells that can be reached.
+     */
+    public long getReachableCells() {
+        return reachableCells;
+    }
+
+    /**
+     * @return The number of food elements that can be reached.
+     */
+    public int getReachableFood() {
+        return reachableFood;
+    }
+
+    /**
+     * Find the unreachable food elements, e.g. to report them.
+     *
+     * @param result
+     *            Array receiving the positions of at most result.length / 2
+     *            elements, as (x,y) pairs.
+     * @return The number of unreachable food elements.
+     */
+    public int unreachableFood(int[] result) {
+        assert result != null;
+        return findUnreachableFood(result);
+    }
+
+    /**
+     * @return The number of food elements that can't be reached.
+     */
+    public int getUnreachableFood() {
+        return findUnreachableFood(null);
+    }
+
+    /**
+     * Count the unreachable food elements, storing their positions.
+     * @param result Array receiving (x,y) pairs, or null
+     * @return The number of unreachable food elements.
+     */
+    private int findUnreachableFood(int[] result) {
+        int count = 0;
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                if (map.guestCode(x, y) == Guest.FOOD_TYPE
+                        && !isReachable(x, y)) {
+                    if (result != null && 2 * count + 1 < result.length) {
+                        result[2 * count] = x;
+                        result[2 * count + 1] = y;
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
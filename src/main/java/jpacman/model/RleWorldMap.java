@@ -0,0 +1,329 @@
+package jpacman.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A world map stored as runs of identical guest codes, row by row.
+ * Large generated mazes consist mostly of long runs of walls and empty
+ * cells, so this takes a fraction of the memory of the rows as text.
+ * <p>
+ * All runs are kept in two flat arrays: the code of each run, and the
+ * column just after its end. The runs of row y are those from
+ * rowStart[y] up to rowStart[y + 1]; looking up a cell is a binary search
+ * within its row.
+ * <p>
+ * In the text form of this encoding, each line holds the runs of one row,
+ * separated by single spaces. A run is written as its guest code,
+ * followed by its length in decimal unless that is 1. For example,
+ * "W F3 05 P W" stands for the row "WFFF00000PW".
+ *
+ * @version $Id$
+ */
+public class RleWorldMap implements WorldMap {
+
+    /**
+     * File name extension used for run-length encoded text levels.
+     */
+    public static final String EXTENSION = ".rle";
+
+    /**
+     * Initial capacity of the run and row arrays.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Number of columns; -1 while no row has been completed.
+     */
+    private int width = -1;
+
+    /**
+     * Number of rows completed.
+     */
+    private int height = 0;
+
+    /**
+     * Index of the first run of every row; entry height marks the end
+     * of the last row (and the start of the row being built).
+     */
+    private int[] rowStart = new int[INITIAL_CAPACITY];
+
+    /**
+     * For every run, the column just after its last cell.
+     */
+    private int[] runEnd = new int[INITIAL_CAPACITY];
+
+    /**
+     * For every run, its guest code.
+     */
+    private byte[] runCode = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Total number of runs.
+     */
+    private int runCount = 0;
+
+    /**
+     * Create an empty map, to be filled with addRun and endRow.
+     */
+    RleWorldMap() { }
+
+    /**
+     * Create the run-length encoded equivalent of a given map.
+     * @param map The map to be encoded, with rows of equal length.
+     */
+    public RleWorldMap(WorldMap map) {
+        assert map != null;
+        for (int y = 0; y < map.getHeight(); y++) {
+            int x = 0;
+            while (x < map.getWidth()) {
+                char code = map.guestCode(x, y);
+                int start = x;
+                while (x < map.getWidth() && map.guestCode(x, y) == code) {
+                    x++;
+                }
+                addRun(code, x - start);
+            }
+            endRow();
+        }
+    }
+
+    /**
+     * Append a run to the row being built.
+     * @param code Guest code of the run
+     * @param length Number of cells in the run, positive
+     */
+    void addRun(char code, int length) {
+        assert length > 0;
+        if (runCount == runEnd.length) {
+            runEnd = Arrays.copyOf(runEnd, 2 * runCount);
+            runCode = Arrays.copyOf(runCode, 2 * runCount);
+        }
+        int x = 0;
+        if (runCount > rowStart[height]) {
+            x = runEnd[runCount - 1];
+        }
+        assert length <= Integer.MAX_VALUE - x;
+        runEnd[runCount] = x + length;
+        runCode[runCount] = (byte) code;
+        runCount++;
+    }
+
+    /**
+     * Complete the row being built.
+     * Precondition: it has as many cells as the rows before it.
+     */
+    void endRow() {
+        int rowWidth = 0;
+        if (runCount > rowStart[height]) {
+            rowWidth = runEnd[runCount - 1];
+        }
+        assert width < 0 || rowWidth == width;
+        width = rowWidth;
+        if (height + 2 > rowStart.length) {
+            rowStart = Arrays.copyOf(rowStart, 2 * rowStart.length);
+        }
+        height++;
+        rowStart[height] = runCount;
+    }
+
+    /**
+     * Read a run-length encoded map from a character stream, checking
+     * each run while it is read. The map is built directly from the runs,
+     * so that its rows never exist as strings.
+     *
+     * @param source
+     *            The runs of the map, one row per line.
+     * @return The map read.
+     * @throws IOException
+     *             If the source can't be read.
+     * @throws GameLoadException
+     *             If the map is incorrect.
+     */
+    public static RleWorldMap read(Reader source)
+        throws IOException, GameLoadException {
+        BufferedReader reader = new BufferedReader(source);
+        MapChecker checker = new MapChecker();
+        RleWorldMap result = new RleWorldMap();
+        int line = 1;
+        int code = -1;
+        int length = -1;
+        boolean rowStarted = false;
+        int ch = reader.read();
+        while (ch >= 0 || code >= 0 || rowStarted) {
+            if (ch < 0) {
+                // the last row lacks its line end.
+                ch = '\n';
+            }
+            String error = null;
+            if (ch == ' ' || ch == '\n') {
+                if (code >= 0) {
+                    if (length < 0) {
+                        length = 1;
+                    }
+                    if (length == 0) {
+                        error = "Illegal run length.";
+                    } else {
+                        error = checker.checkRun((char) code, length);
+                        result.addRun((char) code, length);
+                    }
+                } else if (ch == ' ' || rowStarted) {
+                    error = "Missing run.";
+                }
+                rowStarted = ch == ' ';
+                if (error == null && ch == '\n') {
+                    error = checker.endRow(result.rowWidth());
+                    if (error == null) {
+                        result.endRow();
+                        line++;
+                    }
+                }
+                code = -1;
+                length = -1;
+            } else if (ch != '\r') {
+                if (code < 0) {
+                    code = ch;
+                } else if (ch >= '0' && ch <= '9') {
+                    final int radix = 10;
+                    if (length < 0) {
+                        length = 0;
+                    }
+                    if (length > (Integer.MAX_VALUE - (ch - '0')) / radix) {
+                        error = "Run too long.";
+                    }
+                    length = radix * length + (ch - '0');
+                } else {
+                    error = "Illegal run length.";
+                }
+            }
+            if (error != null) {
+                throw new GameLoadException("line " + line + ": " + error);
+            }
+            ch = reader.read();
+        }
+        String error = checker.finish();
+        if (error != null) {
+            throw new GameLoadException(error);
+        }
+        return result;
+    }
+
+    /**
+     * Write a world map in the run-length encoded text form.
+     *
+     * @param map
+     *            The map to be written
+     * @param out
+     *            The writer to write to, which is flushed but left open.
+     * @throws IOException
+     *             If writing fails.
+     */
+    public static void write(WorldMap map, Writer out) throws IOException {
+        RleWorldMap rle;
+        if (map instanceof RleWorldMap) {
+            rle = (RleWorldMap) map;
+        } else {
+            rle = new RleWorldMap(map);
+        }
+        for (int y = 0; y < rle.getHeight(); y++) {
+            for (int r = rle.rowStart(y); r < rle.rowStart(y + 1); r++) {
+                if (r > rle.rowStart(y)) {
+                    out.write(' ');
+                }
+                out.write(rle.runCode(r));
+                if (rle.runLength(r) != 1) {
+                    out.write(Integer.toString(rle.runLength(r)));
+                }
+            }
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * @return The length of the row being built so far.
+     */
+    private int rowWidth() {
+        if (runCount > rowStart[height]) {
+            return runEnd[runCount - 1];
+        }
+        return 0;
+    }
+
+    /**
+     * Return the index of the first run of a row.
+     * @param y The row, or the height for the end of the last row.
+     * @return Index of the run.
+     */
+    int rowStart(int y) {
+        assert y >= 0 && y <= height;
+        return rowStart[y];
+    }
+
+    /**
+     * @param r Index of a run
+     * @return The guest code of the run.
+     */
+    char runCode(int r) {
+        assert r >= 0 && r < runCount;
+        return (char) runCode[r];
+    }
+
+    /**
+     * @param r Index of a run
+     * @return The number of cells in the run.
+     */
+    int runLength(int r) {
+        assert r >= 0 && r < runCount;
+        int start = 0;
+        // the previous run ends before r, unless it ends a row.
+        if (r > 0 && runEnd[r - 1] < runEnd[r]) {
+            start = runEnd[r - 1];
+        }
+        return runEnd[r] - start;
+    }
+
+    /**
+     * @return The total number of runs in the map.
+     */
+    public int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * @see jpacman.model.WorldMap#getWidth()
+     * @return The length of the rows.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @see jpacman.model.WorldMap#getHeight()
+     * @return The number of rows.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @see jpacman.model.WorldMap#guestCode(int, int)
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @return The guest code of the run covering (x,y).
+     */
+    public char guestCode(int x, int y) {
+        assert x >= 0 && x < width && y >= 0 && y < height;
+        int r = Arrays.binarySearch(runEnd, rowStart[y], rowStart[y + 1], x);
+        if (r >= 0) {
+            // x is the end of run r, hence the start of the next one.
+            r++;
+        } else {
+            r = -r - 1;
+        }
+        return (char) runCode[r];
+    }
+}
@@ -0,0 +1,318 @@
+package jpacman.model;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid laid over the board, keeping track of which moving guests
+ * are located in which region of the board. This allows "which monsters are
+ * near" questions to be answered by visiting only the regions concerned,
+ * rather than every monster in the game.
+ * <p>
+ * The index is kept up to date by the Move class (when moves are applied or
+ * undone), and by the Game when guests are placed on the board. Buckets are
+ * maintained as intrusive doubly linked lists over parallel arrays, so
+ * neither updates nor queries allocate any objects.
+ *
+ * @version $Id$
+ */
+public class SpatialIndex {
+
+    /**
+     * Width and height (in cells) of a single bucket of the grid.
+     */
+    static final int BUCKET_SIZE = 8;
+
+    /**
+     * Initial number of guests that can be stored without growing.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Marker for the end of a bucket list, or an unassigned bucket.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * Number of buckets in horizontal and vertical direction.
+     */
+    private int bucketsX, bucketsY;
+
+    /**
+     * For each bucket, the slot of the first guest in it (or NONE).
+     */
+    private int[] bucketHead;
+
+    /**
+     * For each slot, the next and previous slot in the same bucket.
+     */
+    private int[] next, prev;
+
+    /**
+     * For each slot, the bucket the guest is currently listed in.
+     */
+    private int[] bucketOf;
+
+    /**
+     * For each slot, the cell coordinates of the guest,
+     * as known at the most recent update.
+     */
+    private int[] posX, posY;
+
+    /**
+     * For each slot, the guest occupying it.
+     */
+    private MovingGuest[] guests;
+
+    /**
+     * Number of slots in use.
+     */
+    private int size;
+
+    /**
+     * Create an empty index for a board of the given dimensions.
+     *
+     * @param width
+     *            Width of the board
+     * @param height
+     *            Height of the board
+     */
+    SpatialIndex(int width, int height) {
+        assert width >= 0 && height >= 0;
+        bucketsX = width / BUCKET_SIZE + 1;
+        bucketsY = height / BUCKET_SIZE + 1;
+        bucketHead = new int[bucketsX * bucketsY];
+        for (int b = 0; b < bucketHead.length; b++) {
+            bucketHead[b] = NONE;
+        }
+        next = new int[INITIAL_CAPACITY];
+        prev = new int[INITIAL_CAPACITY];
+        bucketOf = new int[INITIAL_CAPACITY];
+        posX = new int[INITIAL_CAPACITY];
+        posY = new int[INITIAL_CAPACITY];
+        guests = new MovingGuest[INITIAL_CAPACITY];
+        size = 0;
+        assert invariant();
+    }
+
+    /**
+     * The number of indexed guests never exceeds the capacity of the
+     * parallel arrays.
+     *
+     * @return true iff this is the case.
+     */
+    protected boolean invariant() {
+        return size >= 0 && size <= guests.length
+            && guests.length == next.length
+            && guests.length == bucketOf.length;
+    }
+
+    /**
+     * Start keeping track of a moving guest.
+     * Precondition: the guest occupies a cell and is not indexed yet.
+     *
+     * @param guest
+     *            The guest to be indexed.
+     */
+    void add(MovingGuest guest) {
+        assert invariant();
+        assert guest != null && guest.getLocation() != null;
+        assert guest.getIndexSlot() == NONE : "guest indexed twice";
+        if (size == guests.length) {
+            grow();
+        }
+        int slot = size++;
+        guests[slot] = guest;
+        guest.setIndexSlot(slot);
+        Cell c = guest.getLocation();
+        posX[slot] = c.getX();
+        posY[slot] = c.getY();
+        link(slot, bucket(posX[slot], posY[slot]));
+        assert invariant();
+    }
+
+    /**
+     * Bring the index up to date with the current location of the guest.
+     * Precondition: the guest has been added before and occupies a cell.
+     *
+     * @param guest
+     *            The guest that has been moved.
+     */
+    void moved(MovingGuest guest) {
+        assert invariant();
+        int slot = guest.getIndexSlot();
+        assert slot >= 0 && slot < size && guests[slot] == guest;
+        Cell c = guest.getLocation();
+        posX[slot] = c.getX();
+        posY[slot] = c.getY();
+        int b = bucket(posX[slot], posY[slot]);
+        if (b != bucketOf[slot]) {
+            unlink(slot);
+            link(slot, b);
+        }
+        assert invariant();
+    }
+
+    /**
+     * @return The number of moving guests indexed.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the monsters within k steps (Manhattan distance) of position
+     * (x,y). At most result.length monsters are stored in result; the
+     * total number of monsters found is returned, so callers can tell
+     * whether their array was large enough.
+     *
+     * @param x
+     *            Horizontal coordinate of the center
+     * @param y
+     *            Vertical coordinate of the center
+     * @param k
+     *            Maximum number of steps, non-negative
+     * @param result
+     *            Array receiving the monsters found
+     * @return The number of monsters within k steps.
+     */
+    public int monstersWithin(int x, int y, int k, Monster[] result) {
+        assert k >= 0;
+        assert result != null;
+        int found = 0;
+        int bx0 = bucketX(x - k);
+        int bx1 = bucketX(x + k);
+        int by0 = bucketY(y - k);
+        int by1 = bucketY(y + k);
+        for (int by = by0; by <= by1; by++) {
+            for (int bx = bx0; bx <= bx1; bx++) {
+                int slot = bucketHead[by * bucketsX + bx];
+                while (slot != NONE) {
+                    if (Math.abs(posX[slot] - x) + Math.abs(posY[slot] - y) <= k
+                            && guests[slot].guestType() == Guest.MONSTER_TYPE) {
+                        if (found < result.length) {
+                            result[found] = (Monster) guests[slot];
+                        }
+                        found++;
+                    }
+                    slot = next[slot];
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find the monsters located in the rectangle spanned by (x0,y0) and
+     * (x1,y1), both corners inclusive. Storage of results follows
+     * monstersWithin.
+     *
+     * @param x0
+     *            Left border
+     * @param y0
+     *            Top border
+     * @param x1
+     *            Right border, at least x0
+     * @param y1
+     *            Bottom border, at least y0
+     * @param result
+     *            Array receiving the monsters found
+     * @return The number of monsters in the rectangle.
+     */
+    public int monstersInRectangle(int x0, int y0, int x1, int y1,
+            Monster[] result) {
+        assert x0 <= x1 && y0 <= y1;
+        assert result != null;
+        int found = 0;
+        int bx1 = bucketX(x1);
+        int by1 = bucketY(y1);
+        for (int by = bucketY(y0); by <= by1; by++) {
+            for (int bx = bucketX(x0); bx <= bx1; bx++) {
+                int slot = bucketHead[by * bucketsX + bx];
+                while (slot != NONE) {
+                    if (posX[slot] >= x0 && posX[slot] <= x1
+                            && posY[slot] >= y0 && posY[slot] <= y1
+                            && guests[slot].guestType() == Guest.MONSTER_TYPE) {
+                        if (found < result.length) {
+                            result[found] = (Monster) guests[slot];
+                        }
+                        found++;
+                    }
+                    slot = next[slot];
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param x Horizontal cell coordinate, possibly off the board.
+     * @return The (clamped) bucket column containing x.
+     */
+    private int bucketX(int x) {
+        return Math.max(0, Math.min(bucketsX - 1, x / BUCKET_SIZE));
+    }
+
+    /**
+     * @param y Vertical cell coordinate, possibly off the board.
+     * @return The (clamped) bucket row containing y.
+     */
+    private int bucketY(int y) {
+        return Math.max(0, Math.min(bucketsY - 1, y / BUCKET_SIZE));
+    }
+
+    /**
+     * @param x Horizontal cell coordinate
+     * @param y Vertical cell coordinate
+     * @return The bucket containing (x,y).
+     */
+    private int bucket(int x, int y) {
+        return bucketY(y) * bucketsX + bucketX(x);
+    }
+
+    /**
+     * Put a slot at the front of a bucket list.
+     * @param slot The slot to be listed
+     * @param b The bucket it should be listed in
+     */
+    private void link(int slot, int b) {
+        int head = bucketHead[b];
+        next[slot] = head;
+        prev[slot] = NONE;
+        if (head != NONE) {
+            prev[head] = slot;
+        }
+        bucketHead[b] = slot;
+        bucketOf[slot] = b;
+    }
+
+    /**
+     * Remove a slot from the bucket list it is currently in.
+     * @param slot The slot to be removed.
+     */
+    private void unlink(int slot) {
+        int b = bucketOf[slot];
+        if (prev[slot] == NONE) {
+            assert bucketHead[b] == slot;
+            bucketHead[b] = next[slot];
+        } else {
+            next[prev[slot]] = next[slot];
+        }
+        if (next[slot] != NONE) {
+            prev[next[slot]] = prev[slot];
+        }
+        bucketOf[slot] = NONE;
+    }
+
+    /**
+     * Double the capacity of the parallel slot arrays.
+     */
+    private void grow() {
+        int capacity = 2 * guests.length;
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        bucketOf = Arrays.copyOf(bucketOf, capacity);
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        guests = Arrays.copyOf(guests, capacity);
+    }
+}
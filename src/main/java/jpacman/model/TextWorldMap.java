@@ -0,0 +1,60 @@
+package jpacman.model;
+
+/**
+ * A world map represented as an array of strings, one per row,
+ * as used in the text format of levels.
+ *
+ * @version $Id$
+ */
+public class TextWorldMap implements WorldMap {
+
+    /**
+     * The rows of the map.
+     */
+    private String[] rows;
+
+    /**
+     * Create a world map from its rows.
+     * Precondition: the rows are non-empty and of equal length.
+     *
+     * @param map
+     *            The rows of the map.
+     */
+    public TextWorldMap(String[] map) {
+        assert map != null && map.length > 0;
+        rows = map;
+    }
+
+    /**
+     * @see jpacman.model.WorldMap#getWidth()
+     * @return The length of the rows.
+     */
+    public int getWidth() {
+        return rows[0].length();
+    }
+
+    /**
+     * @see jpacman.model.WorldMap#getHeight()
+     * @return The number of rows.
+     */
+    public int getHeight() {
+        return rows.length;
+    }
+
+    /**
+     * @see jpacman.model.WorldMap#guestCode(int, int)
+     * @param x Horizontal position
+     * @param y Vertical position
+     * @return The code at (x,y).
+     */
+    public char guestCode(int x, int y) {
+        return rows[y].charAt(x);
+    }
+
+    /**
+     * @return The rows of this map.
+     */
+    public String[] getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,34 @@
+package jpacman.model;
+
+/**
+ * Read-only view on the layout of a level: a rectangle of guest codes
+ * (see the type constants in Guest) from which a Game builds its board.
+ * Implementations differ in how the codes are stored, e.g. as rows of
+ * text, or in a binary level file.
+ *
+ * @version $Id$
+ */
+public interface WorldMap {
+
+    /**
+     * @return The number of columns of the map.
+     */
+    int getWidth();
+
+    /**
+     * @return The number of rows of the map.
+     */
+    int getHeight();
+
+    /**
+     * Return the guest code at position (x,y).
+     * Precondition: (x,y) falls within the map.
+     *
+     * @param x
+     *            Horizontal position
+     * @param y
+     *            Vertical position
+     * @return The guest code at that position.
+     */
+    char guestCode(int x, int y);
+}
@@ -5,15 +5,35 @@ import junit.framework.JUnit4TestAdapter;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import jpacman.controller.AnimatorTest;
+import jpacman.controller.BoardViewerTest;
+import jpacman.controller.GameLoopTest;
+import jpacman.controller.MinimapTest;
+import jpacman.controller.TileRendererTest;
 import jpacman.controller.ImageFactoryTest;
+import jpacman.model.BinaryLevelTest;
+import jpacman.model.BoardChangesTest;
 import jpacman.model.BoardTest;
 import jpacman.model.CellTest;
+import jpacman.model.ChunkedBoardTest;
 import jpacman.model.EngineTest;
+import jpacman.model.GameLoaderTest;
 import jpacman.model.GameTest;
 import jpacman.model.MonsterMoveTest;
 import jpacman.model.ObserverTest;
 import jpacman.model.PlayerMoveTest;
 import jpacman.model.GuestTest;
+import jpacman.model.InteractionTableTest;
+import jpacman.model.InvariantChecksTest;
+import jpacman.model.LevelCacheTest;
+import jpacman.model.LevelGeneratorTest;
+import jpacman.model.LevelValidatorTest;
+import jpacman.model.LoadBandsTest;
+import jpacman.model.MapWatcherTest;
+import jpacman.model.MonsterStoreTest;
+import jpacman.model.ReachabilityTest;
+import jpacman.model.RleWorldMapTest;
+import jpacman.model.SpatialIndexTest;
 
 
 
@@ -44,7 +64,27 @@ import jpacman.model.GuestTest;
     PlayerMoveTest.class,
     MonsterMoveTest.class,
     ImageFactoryTest.class,
-    GuestTest.class
+    GuestTest.class,
+    SpatialIndexTest.class,
+    MonsterStoreTest.class,
+    InteractionTableTest.class,
+    InvariantChecksTest.class,
+    GameLoaderTest.class,
+    BinaryLevelTest.class,
+    RleWorldMapTest.class,
+    ChunkedBoardTest.class,
+    LoadBandsTest.class,
+    MapWatcherTest.class,
+    LevelCacheTest.class,
+    LevelGeneratorTest.class,
+    LevelValidatorTest.class,
+    ReachabilityTest.class,
+    BoardChangesTest.class,
+    GameLoopTest.class,
+    BoardViewerTest.class,
+    MinimapTest.class,
+    AnimatorTest.class,
+    TileRendererTest.class
 })
 
 public final class TestAll  {
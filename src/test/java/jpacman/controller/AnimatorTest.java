@@ -0,0 +1,60 @@
+package jpacman.controller;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import jpacman.model.Engine;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+
+import org.junit.Test;
+
+/**
+ * Test cases for pausing the animator while the game isn't played.
+ *
+ * @version $Id$
+ */
+public class AnimatorTest {
+
+    /**
+     * Wait for a few animation events.
+     * @throws InterruptedException if interrupted.
+     */
+    private static void await() throws InterruptedException {
+        Thread.sleep(2 * Animator.DELAY + Animator.DELAY / 2);
+    }
+
+    /**
+     * The animator keeps running while the game is played,
+     * and stops once it is halted.
+     * @throws Exception never.
+     */
+    @Test
+    public void testPause() throws Exception {
+        Engine engine = new Engine(new Game(new String[] {
+            "WWWWW",
+            "WP0FW",
+            "WWWWW"
+        }));
+        engine.initialize();
+        engine.start();
+        Animator animator = new Animator(new BoardViewer(engine), engine);
+        animator.start();
+        try {
+            await();
+            assertTrue(animator.isRunning());
+            engine.quit();
+            await();
+            assertFalse(animator.isRunning());
+            engine.start();
+            animator.start();
+            engine.movePlayer(1, 0);
+            engine.movePlayer(1, 0);
+            assertTrue(engine.inWonState());
+            await();
+            assertFalse(animator.isRunning());
+        } finally {
+            animator.stop();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package jpacman.controller;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import jpacman.model.Engine;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+import jpacman.model.LevelGenerator;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of rendering whole boards headless, through an off screen
+ * image of at most TILE_SIZE pixels square that is moved over the board,
+ * so that boards too large for a single image can be rendered. The score
+ * is in frames per second, a frame being all size * size cells; the cells
+ * counter reports the cells rendered per second as renderBoard:cells, so
+ * that boards of all sizes compare, at 1e9 / cells nanoseconds per cell.
+ * The bytes
+ * allocated per frame are reported by the gc profiler, which the benchmark
+ * profile runs, as gc.alloc.rate.norm.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BoardRenderBenchmark {
+
+    /**
+     * Width and height of the off screen image, in pixels.
+     */
+    static final int TILE_SIZE = 1024;
+
+    /**
+     * Width and height of the board.
+     */
+    @Param({"20", "128", "512", "1024" })
+    private int size;
+
+    /**
+     * The viewer rendering the board, which isn't displayed.
+     */
+    private BoardViewer viewer;
+
+    /**
+     * The image rendered on.
+     */
+    private BufferedImage tile;
+
+    /**
+     * The number of columns and rows of cells rendered on the image
+     * at a time.
+     */
+    private int columns, rows;
+
+    /**
+     * Counter of the cells rendered, reported per second next to the
+     * frames per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Cells {
+
+        /**
+         * The number of cells rendered in the current iteration.
+         */
+        public long cells;
+
+        /**
+         * Start counting anew for an iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            cells = 0;
+        }
+    }
+
+    /**
+     * Start a game on a generated level, and a viewer that isn't shown.
+     * @throws GameLoadException never.
+     */
+    @Setup
+    public void setUp() throws GameLoadException {
+        LevelGenerator generator = new LevelGenerator(size, size, 0);
+        Engine engine = new Engine(new Game(generator.generate()));
+        engine.initialize();
+        engine.start();
+        viewer = new BoardViewer(engine);
+        columns = TILE_SIZE / (viewer.cellWidth() + BoardViewer.CELL_HGAP);
+        rows = TILE_SIZE / (viewer.cellHeight() + BoardViewer.CELL_VGAP);
+        // whole cells only, so that no cell is rendered twice.
+        tile = new BufferedImage(
+                columns * (viewer.cellWidth() + BoardViewer.CELL_HGAP),
+                rows * (viewer.cellHeight() + BoardViewer.CELL_VGAP),
+                BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Render all cells of the board.
+     * @param counter Counter of the cells rendered.
+     * @return The number of cells rendered.
+     */
+    @Benchmark
+    public int renderBoard(Cells counter) {
+        int result = 0;
+        for (int y0 = 0; y0 < size; y0 += rows) {
+            for (int x0 = 0; x0 < size; x0 += columns) {
+                result += viewer.render(tile, x0, y0);
+            }
+        }
+        counter.cells += result;
+        return result;
+    }
+}
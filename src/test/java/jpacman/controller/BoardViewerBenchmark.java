@@ -0,0 +1,158 @@
+package jpacman.controller;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+
+import jpacman.model.BoardChanges;
+import jpacman.model.Engine;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+import jpacman.model.LevelGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of painting frames of the board viewer off screen,
+ * either after a single move of the player, or with all cells brought
+ * up to date. Besides the time per frame, the bytes allocated per frame
+ * are reported by the gc profiler, which the benchmark profile runs, as
+ * gc.alloc.rate.norm.
+ * <p>
+ * The move is made, and undone, outside of the measured frame, so that
+ * neither the move nor the changes it reports are counted, and the stack
+ * of moves doesn't grow.
+ * Run headless, e.g. with -Djava.awt.headless=true in MAVEN_OPTS.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BoardViewerBenchmark {
+
+    /**
+     * Width and height of the board.
+     */
+    @Param({"20", "200" })
+    private int size;
+
+    /**
+     * The engine playing an open level of the given size.
+     */
+    private Engine engine;
+
+    /**
+     * The viewer being painted.
+     */
+    private BoardViewer viewer;
+
+    /**
+     * The image standing in for the screen.
+     */
+    private BufferedImage screen;
+
+    /**
+     * Graphics painting on the screen.
+     */
+    private Graphics2D graphics;
+
+    /**
+     * Start a game on an open level, and a viewer following its changes.
+     * @throws GameLoadException never.
+     */
+    @Setup
+    public void setUp() throws GameLoadException {
+        LevelGenerator generator = new LevelGenerator(size, size, 0);
+        generator.setWallDensity(0);
+        engine = new Engine(new Game(generator.generate()));
+        engine.initialize();
+        engine.start();
+        viewer = new BoardViewer(engine);
+        engine.addObserver(new Observer() {
+            public void update(Observable o, Object changes) {
+                viewer.repaintChanges((BoardChanges) changes);
+            }
+        });
+        viewer.setSize(viewer.windowWidth(), viewer.windowHeight());
+        screen = new BufferedImage(viewer.windowWidth(),
+                viewer.windowHeight(), BufferedImage.TYPE_INT_RGB);
+        graphics = screen.createGraphics();
+        viewer.paint(graphics);
+    }
+
+    /**
+     * Release the screen's graphics.
+     */
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    /**
+     * A move of the player, made before each frame and undone after it.
+     */
+    @State(Scope.Thread)
+    public static class PlayerMove {
+
+        /**
+         * Move the player, leaving the cells involved to be redrawn.
+         * @param b The benchmark whose player moves.
+         */
+        @Setup(Level.Invocation)
+        public void move(BoardViewerBenchmark b) {
+            b.engine.movePlayer(1, 0);
+        }
+
+        /**
+         * Undo the move, and paint the cells it restores, so that every
+         * frame starts from the same board.
+         * @param b The benchmark whose player moved.
+         */
+        @TearDown(Level.Invocation)
+        public void undo(BoardViewerBenchmark b) {
+            b.engine.undo();
+            b.engine.start();
+            b.viewer.paint(b.graphics);
+        }
+    }
+
+    /**
+     * Paint the frame resulting from a move of the player.
+     * @param move The move, made outside of the measurement.
+     * @return The number of cells redrawn.
+     */
+    @Benchmark
+    public int moveFrame(PlayerMove move) {
+        viewer.paint(graphics);
+        return viewer.getCellsRedrawn();
+    }
+
+    /**
+     * Paint a frame bringing all cells up to date.
+     * @return The number of cells redrawn.
+     */
+    @Benchmark
+    public int fullFrame() {
+        viewer.repaintAll();
+        viewer.paint(graphics);
+        return viewer.getCellsRedrawn();
+    }
+}
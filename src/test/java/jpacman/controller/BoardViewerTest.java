@@ -0,0 +1,366 @@
+package jpacman.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Observable;
+import java.util.Observer;
+
+import jpacman.model.BoardChanges;
+import jpacman.model.Engine;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for showing part of a board larger than the viewer,
+ * and for the overview of the whole board, rendering off screen.
+ *
+ * @version $Id$
+ */
+public class BoardViewerTest {
+
+    /**
+     * Width and height of the board in cells.
+     */
+    private static final int SIZE = 200;
+
+    /**
+     * Initial position of the player, far from the top left corner.
+     */
+    private static final int PLAYER_X = 150, PLAYER_Y = 100;
+
+    /**
+     * The engine, playing a walled square of food.
+     */
+    private Engine engine;
+
+    /**
+     * The viewer under test, sized as it would be in a window.
+     */
+    private BoardViewer viewer;
+
+    /**
+     * The image painted on.
+     */
+    private BufferedImage image;
+
+    /**
+     * Create the engine and the viewer.
+     * @throws GameLoadException never.
+     */
+    @Before
+    public void setUp() throws GameLoadException {
+        String[] map = new String[SIZE];
+        char[] wall = new char[SIZE];
+        Arrays.fill(wall, 'W');
+        char[] row = new char[SIZE];
+        Arrays.fill(row, 'F');
+        row[0] = 'W';
+        row[SIZE - 1] = 'W';
+        for (int y = 0; y < SIZE; y++) {
+            map[y] = new String(y == 0 || y == SIZE - 1 ? wall : row);
+        }
+        char[] start = row.clone();
+        start[PLAYER_X] = 'P';
+        map[PLAYER_Y] = new String(start);
+        engine = new Engine(new Game(map));
+        engine.initialize();
+        engine.start();
+        viewer = new BoardViewer(engine);
+        viewer.setSize(viewer.windowWidth(), viewer.windowHeight());
+        engine.addObserver(new Observer() {
+            public void update(Observable o, Object changes) {
+                viewer.repaintChanges((BoardChanges) changes);
+            }
+        });
+        image = new BufferedImage(viewer.getWidth(), viewer.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Paint a frame of the viewer on the image.
+     */
+    private void paint() {
+        Graphics2D g2 = image.createGraphics();
+        try {
+            viewer.paint(g2);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * The viewer is no larger than its maximum number of cells.
+     */
+    @Test
+    public void testWindowSize() {
+        assertEquals(BoardViewer.MAX_VIEW_COLUMNS,
+                (viewer.windowWidth() - BoardViewer.CELL_HGAP)
+                / (viewer.cellWidth() + BoardViewer.CELL_HGAP));
+        assertEquals(BoardViewer.MAX_VIEW_ROWS,
+                (viewer.windowHeight() - BoardViewer.CELL_VGAP)
+                / (viewer.cellHeight() + BoardViewer.CELL_VGAP));
+    }
+
+    /**
+     * The viewer centers the player, draws only the visible cells,
+     * and scrolls once the player comes near its edge.
+     */
+    @Test
+    public void testFollowPlayer() {
+        paint();
+        assertEquals(PLAYER_X - BoardViewer.MAX_VIEW_COLUMNS / 2,
+                viewer.getOriginX());
+        assertEquals(PLAYER_Y - BoardViewer.MAX_VIEW_ROWS / 2,
+                viewer.getOriginY());
+        assertTrue(viewer.getCellsRedrawn()
+                <= BoardViewer.MAX_VIEW_COLUMNS * BoardViewer.MAX_VIEW_ROWS);
+        int originX = viewer.getOriginX();
+        int steps = BoardViewer.MAX_VIEW_COLUMNS / 4;
+        for (int i = 1; i < steps; i++) {
+            engine.movePlayer(1, 0);
+            paint();
+            assertEquals(originX, viewer.getOriginX());
+        }
+        engine.movePlayer(1, 0);
+        paint();
+        assertEquals(PLAYER_X + steps - BoardViewer.MAX_VIEW_COLUMNS / 2,
+                viewer.getOriginX());
+    }
+
+    /**
+     * The viewer doesn't scroll beyond the edges of the board.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testClamp() throws GameLoadException {
+        engine = new Engine(new Game(new String[] {
+            "WWWWW",
+            "WP0FW",
+            "WWWWW"
+        }));
+        engine.initialize();
+        viewer = new BoardViewer(engine);
+        viewer.setSize(viewer.windowWidth(), viewer.windowHeight());
+        paint();
+        assertEquals(0, viewer.getOriginX());
+        assertEquals(0, viewer.getOriginY());
+    }
+
+    /**
+     * Rendering on an image shows exactly what the viewer shows,
+     * without changing it.
+     */
+    @Test
+    public void testRender() {
+        paint();
+        engine.movePlayer(0, 1);
+        paint();
+        int originX = viewer.getOriginX();
+        int originY = viewer.getOriginY();
+        BufferedImage rendered = new BufferedImage(image.getWidth(),
+                image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        assertEquals((BoardViewer.MAX_VIEW_COLUMNS + 1)
+                * (BoardViewer.MAX_VIEW_ROWS + 1),
+                viewer.render(rendered, originX, originY));
+        assertEquals(originX, viewer.getOriginX());
+        // the viewer leaves out the cells partly within it.
+        int width = BoardViewer.MAX_VIEW_COLUMNS
+            * (viewer.cellWidth() + BoardViewer.CELL_HGAP);
+        int height = BoardViewer.MAX_VIEW_ROWS
+            * (viewer.cellHeight() + BoardViewer.CELL_VGAP);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(image.getRGB(x, y), rendered.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Changes are pending from the move making them until the next frame,
+     * so that a game loop can skip frames that wouldn't differ.
+     */
+    @Test
+    public void testPendingChanges() {
+        paint();
+        assertFalse(viewer.hasPendingChanges());
+        engine.movePlayer(1, 0);
+        assertTrue(viewer.hasPendingChanges());
+        paint();
+        assertFalse(viewer.hasPendingChanges());
+    }
+
+    /**
+     * A viewer painted by a thread of its own, such as a game loop,
+     * mustn't be painted by another thread.
+     */
+    @Test(expected = AssertionError.class)
+    public void testPainter() {
+        viewer.setPainter(new Thread());
+        paint();
+    }
+
+    /**
+     * Scrolling moves the cells that remain visible, and draws those that
+     * come into view, in all directions, showing what rendering shows.
+     */
+    @Test
+    public void testScroll() {
+        paint();
+        int[][] moves = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        for (int[] move : moves) {
+            int originX = viewer.getOriginX();
+            int originY = viewer.getOriginY();
+            while (originX == viewer.getOriginX()
+                    && originY == viewer.getOriginY()) {
+                engine.movePlayer(move[0], move[1]);
+                paint();
+            }
+            BufferedImage rendered = new BufferedImage(image.getWidth(),
+                    image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            viewer.render(rendered, viewer.getOriginX(), viewer.getOriginY());
+            int width = BoardViewer.MAX_VIEW_COLUMNS
+                * (viewer.cellWidth() + BoardViewer.CELL_HGAP);
+            int height = BoardViewer.MAX_VIEW_ROWS
+                * (viewer.cellHeight() + BoardViewer.CELL_VGAP);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    if (x < width && y < height) {
+                        assertEquals(rendered.getRGB(x, y),
+                                image.getRGB(x, y));
+                    } else {
+                        // no cells are moved beyond the last column or row.
+                        assertEquals(viewer.getBackground().getRGB(),
+                                image.getRGB(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Animating repaints just the cell of the player.
+     */
+    @Test
+    public void testAnimation() {
+        final Rectangle repainted = new Rectangle();
+        final int[] repaints = new int[1];
+        viewer = new BoardViewer(engine) {
+            static final long serialVersionUID = 1L;
+            @Override
+            public void repaint(long tm, int x, int y, int w, int h) {
+                repaints[0]++;
+                repainted.setBounds(x, y, w, h);
+            }
+        };
+        viewer.setSize(viewer.windowWidth(), viewer.windowHeight());
+        paint();
+        repaints[0] = 0;
+        viewer.nextAnimation();
+        assertEquals(1, repaints[0]);
+        assertEquals(new Rectangle(viewer.cellX(PLAYER_X),
+                viewer.cellY(PLAYER_Y), viewer.cellWidth(),
+                viewer.cellHeight()), repainted);
+    }
+
+    /**
+     * After a move, the overview takes just the samples of the changed
+     * cells anew, and shows what a full overview shows.
+     */
+    @Test
+    public void testOverviewChanges() {
+        viewer.setOverview(true);
+        paint();
+        engine.movePlayer(1, 0);
+        engine.movePlayer(1, 0);
+        paint();
+        // two cells per move, the cell passed through reported twice.
+        final int changed = 4;
+        assertEquals(changed, viewer.getCellsRedrawn());
+        BufferedImage incremental = image;
+        viewer = new BoardViewer(engine);
+        viewer.setSize(incremental.getWidth(), incremental.getHeight());
+        viewer.setOverview(true);
+        image = new BufferedImage(incremental.getWidth(),
+                incremental.getHeight(), BufferedImage.TYPE_INT_RGB);
+        paint();
+        assertEquals(SIZE * SIZE, viewer.getCellsRedrawn());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(image.getRGB(x, y), incremental.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * In the overview, a move repaints just the part showing the
+     * changed cells.
+     */
+    @Test
+    public void testOverviewRepaint() {
+        final Rectangle repainted = new Rectangle();
+        viewer = new BoardViewer(engine) {
+            static final long serialVersionUID = 1L;
+            @Override
+            public void repaint(long tm, int x, int y, int w, int h) {
+                repainted.add(new Rectangle(x, y, w, h));
+            }
+        };
+        viewer.setSize(viewer.windowWidth(), viewer.windowHeight());
+        viewer.setOverview(true);
+        paint();
+        // no rectangle yet, which add() replaces by the first one.
+        repainted.setBounds(0, 0, -1, -1);
+        engine.movePlayer(1, 0);
+        assertTrue(repainted.width > 0);
+        assertTrue(repainted.width < viewer.getWidth() / 2);
+        assertTrue(repainted.height < viewer.getHeight() / 2);
+    }
+
+    /**
+     * Cells are sampled for the overview if some sample takes them.
+     */
+    @Test
+    public void testSampleOf() {
+        final int cells = 10;
+        final int count = 4;
+        int sampled = 0;
+        for (int x = 0; x < cells; x++) {
+            int s = BoardViewer.sampleOf(x, cells, count);
+            if (s >= 0) {
+                assertEquals(x, s * cells / count);
+                sampled++;
+            }
+        }
+        assertEquals(count, sampled);
+        assertEquals(1, BoardViewer.sampleOf(1, 2, 2));
+    }
+
+    /**
+     * The overview shows the whole board, marking the player.
+     */
+    @Test
+    public void testOverview() {
+        viewer.setOverview(true);
+        assertTrue(viewer.isOverview());
+        paint();
+        assertTrue(viewer.getCellsRedrawn() <= SIZE * SIZE);
+        int px = PLAYER_X * viewer.getWidth() / SIZE;
+        int py = PLAYER_Y * viewer.getHeight() / SIZE;
+        assertEquals(Color.YELLOW.getRGB(), image.getRGB(px, py));
+        assertEquals(Color.ORANGE.getRGB(), image.getRGB(0, 0));
+        viewer.setOverview(false);
+        paint();
+        assertEquals(PLAYER_X - BoardViewer.MAX_VIEW_COLUMNS / 2,
+                viewer.getOriginX());
+    }
+}
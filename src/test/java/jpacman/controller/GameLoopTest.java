@@ -0,0 +1,176 @@
+package jpacman.controller;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import jpacman.model.Engine;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+import jpacman.model.Guest;
+import jpacman.model.Monster;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for the fixed time step and the interpolation
+ * of the game loop, rendering off screen.
+ *
+ * @version $Id$
+ */
+public class GameLoopTest {
+
+    /**
+     * Tolerance for comparing fractions of a tick.
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Width and height of the frames rendered, in pixels.
+     */
+    private static final int SIZE = 300;
+
+    /**
+     * The engine, playing a corridor with a monster next to the player,
+     * and food at its end.
+     */
+    private Engine engine;
+
+    /**
+     * The number of monster ticks run.
+     */
+    private int monsterTicks;
+
+    /**
+     * Horizontal position in pixels of the monster drawn last.
+     */
+    private int monsterX;
+
+    /**
+     * The loop under test, moving the monster to the right on each tick.
+     */
+    private GameLoop loop;
+
+    /**
+     * Create the engine and the loop.
+     * @throws GameLoadException never.
+     */
+    @Before
+    public void setUp() throws GameLoadException {
+        engine = new Engine(new Game(new String[] {
+            "WWWWWWWWW",
+            "WPM0000FW",
+            "WWWWWWWWW"
+        }));
+        engine.initialize();
+        engine.start();
+        final Monster monster = engine.getMonsters().get(0);
+        IMonsterController ticker = new IMonsterController() {
+            public void start() { }
+            public void stop() { }
+            public void doTick() {
+                monsterTicks++;
+                engine.moveMonster(monster, 1, 0);
+            }
+        };
+        BoardViewer viewer = new BoardViewer(engine) {
+            static final long serialVersionUID = 1L;
+            @Override
+            void drawSprite(int px, int py, char code, Graphics2D g2) {
+                if (code == Guest.MONSTER_TYPE) {
+                    monsterX = px;
+                }
+                super.drawSprite(px, py, code, g2);
+            }
+        };
+        // sized as the canvas would size it.
+        viewer.setSize(SIZE, SIZE);
+        loop = new GameLoop(engine, ticker, viewer, null);
+    }
+
+    /**
+     * Ticks are run in fixed steps, catching up to a limit,
+     * and only while the loop is started.
+     */
+    @Test
+    public void testAdvance() {
+        final double half = 0.5;
+        assertEquals(0, loop.advance(2 * GameLoop.TICK_NANOS), EPSILON);
+        assertEquals(0, loop.getTicks());
+        loop.start();
+        assertEquals(half, loop.advance(GameLoop.TICK_NANOS / 2), EPSILON);
+        assertEquals(0, loop.advance(2 * GameLoop.TICK_NANOS +
+                GameLoop.TICK_NANOS / 2), EPSILON);
+        assertEquals(3, loop.getTicks());
+        assertEquals(3, monsterTicks);
+        final int behind = 100;
+        loop.advance(behind * GameLoop.TICK_NANOS);
+        assertEquals(3 + GameLoop.MAX_CATCH_UP, loop.getTicks());
+        assertEquals(behind - GameLoop.MAX_CATCH_UP, loop.getSkippedTicks());
+        loop.stop();
+        loop.advance(behind * GameLoop.TICK_NANOS);
+        assertEquals(3 + GameLoop.MAX_CATCH_UP, loop.getTicks());
+    }
+
+    /**
+     * Monsters are drawn between their last two cells.
+     */
+    @Test
+    public void testInterpolation() {
+        BufferedImage image = new BufferedImage(SIZE, SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        BoardViewer viewer = new BoardViewer(engine);
+        loop.renderFrame(g2, 0);
+        assertEquals(viewer.cellX(2), monsterX);
+        loop.start();
+        loop.advance(GameLoop.TICK_NANOS);
+        loop.renderFrame(g2, 0);
+        assertEquals(viewer.cellX(2), monsterX);
+        final double half = 0.5;
+        loop.renderFrame(g2, half);
+        assertEquals((viewer.cellX(2) + viewer.cellX(3)) / 2, monsterX);
+        g2.dispose();
+    }
+
+    /**
+     * Once the loop is stopped, monsters are drawn where they are,
+     * rather than between their last two cells.
+     */
+    @Test
+    public void testHalt() {
+        BufferedImage image = new BufferedImage(SIZE, SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        BoardViewer viewer = new BoardViewer(engine);
+        loop.start();
+        loop.advance(GameLoop.TICK_NANOS);
+        loop.stop();
+        engine.quit();
+        loop.renderFrame(g2, 0);
+        assertEquals(viewer.cellX(3), monsterX);
+        g2.dispose();
+    }
+
+    /**
+     * Monsters moved back by undoing are drawn where they are,
+     * even while the loop ticks.
+     */
+    @Test
+    public void testUndo() {
+        BufferedImage image = new BufferedImage(SIZE, SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        BoardViewer viewer = new BoardViewer(engine);
+        loop.start();
+        loop.advance(2 * GameLoop.TICK_NANOS);
+        engine.undo();
+        assertEquals(2, engine.getMonsters().get(0).getLocation().getX());
+        final double half = 0.5;
+        loop.renderFrame(g2, half);
+        assertEquals(viewer.cellX(2), monsterX);
+        g2.dispose();
+    }
+}
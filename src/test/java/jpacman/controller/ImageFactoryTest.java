@@ -2,7 +2,9 @@ package jpacman.controller;
 
 import static org.junit.Assert.*;
 
+import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 import org.junit.Before;
@@ -45,4 +47,41 @@ public class ImageFactoryTest {
         Image m2 = imf.monster(0);
         assertEquals(m1, m2);
     }
+
+    /**
+     * Are images scaled to the size asked for?
+     * @throws IOException if images can't be found.
+     */
+    @Test public void testScaled() throws IOException {
+        final int width = 10;
+        final int height = 12;
+        imf.loadImages(width, height);
+        assertEquals(width, imf.monster(1).getWidth(null));
+        assertEquals(height, imf.player(1, 0, 2).getHeight(null));
+    }
+
+    /**
+     * Does drawing a sprite copy its image?
+     */
+    @Test public void testDrawPlayer() {
+        BufferedImage image = (BufferedImage) imf.player(0, 1, 2);
+        final int border = 3;
+        BufferedImage canvas = new BufferedImage(
+                image.getWidth() + border, image.getHeight() + border,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = canvas.createGraphics();
+        imf.drawPlayer(g2, border, border, 0, 1, 2);
+        g2.dispose();
+        boolean drawn = false;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int expected = image.getRGB(x, y);
+                drawn = drawn || expected != 0;
+                assertEquals(expected,
+                        canvas.getRGB(x + border, y + border));
+            }
+        }
+        assertTrue(drawn);
+        assertEquals(0, canvas.getRGB(0, 0));
+    }
 }
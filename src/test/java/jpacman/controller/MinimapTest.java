@@ -0,0 +1,128 @@
+package jpacman.controller;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.util.Observable;
+import java.util.Observer;
+
+import jpacman.model.BoardChanges;
+import jpacman.model.Engine;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+import jpacman.model.TextWorldMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for the incrementally updated map of the board.
+ *
+ * @version $Id$
+ */
+public class MinimapTest {
+
+    /**
+     * A board of 4 x 2 blocks of 2 x 2 cells: a block of walls, the
+     * player's block, a block with food, and the monster's block.
+     */
+    private static final String[] MAP = {
+        "WW00F000",
+        "WWP0000M",
+        "00000000",
+        "000000F0"
+    };
+
+    /**
+     * The engine playing the map.
+     */
+    private Engine engine;
+
+    /**
+     * The map under test, with two cells per pixel.
+     */
+    private Minimap minimap;
+
+    /**
+     * Create the engine and the map.
+     * @throws GameLoadException never.
+     */
+    @Before
+    public void setUp() throws GameLoadException {
+        engine = new Engine(new Game(MAP));
+        engine.initialize();
+        engine.start();
+        minimap = new Minimap(engine, 2);
+        engine.addObserver(new Observer() {
+            public void update(Observable o, Object changes) {
+                minimap.repaintChanges((BoardChanges) changes);
+            }
+        });
+    }
+
+    /**
+     * @param px Horizontal position of a pixel
+     * @param py Vertical position of a pixel
+     * @return The color of the pixel.
+     */
+    private int pixel(int px, int py) {
+        return minimap.getImage().getRGB(px, py);
+    }
+
+    /**
+     * The map shows all blocks, with moving guests first.
+     */
+    @Test
+    public void testInitial() {
+        assertEquals(4, minimap.getImage().getWidth());
+        assertEquals(2, minimap.getImage().getHeight());
+        assertEquals(Color.ORANGE.getRGB(), pixel(0, 0));
+        assertEquals(Color.YELLOW.getRGB(), pixel(1, 0));
+        assertEquals(Color.GREEN.getRGB(), pixel(2, 0));
+        assertEquals(Color.BLUE.getRGB(), pixel(3, 0));
+        assertEquals(Color.BLACK.getRGB(), pixel(0, 1));
+        assertEquals(Color.GREEN.getRGB(), pixel(3, 1));
+    }
+
+    /**
+     * Moves update just the pixels of the cells involved, and
+     * blocks whose food is eaten turn black.
+     */
+    @Test
+    public void testMoves() {
+        engine.movePlayer(1, 0);
+        assertEquals(1, minimap.getPixelsUpdated());
+        assertEquals(Color.YELLOW.getRGB(), pixel(1, 0));
+        engine.movePlayer(1, 0);
+        assertEquals(2, minimap.getPixelsUpdated());
+        assertEquals(Color.BLACK.getRGB(), pixel(1, 0));
+        assertEquals(Color.YELLOW.getRGB(), pixel(2, 0));
+        engine.movePlayer(1, 0);
+        engine.movePlayer(0, -1);
+        engine.movePlayer(-1, 0);
+        engine.movePlayer(0, 1);
+        engine.movePlayer(-1, 0);
+        assertEquals(Color.YELLOW.getRGB(), pixel(1, 0));
+        assertEquals(Color.BLACK.getRGB(), pixel(2, 0));
+    }
+
+    /**
+     * A new board merely marks the map stale; it is drawn anew in full
+     * when it is next needed, rather than while the engine waits.
+     */
+    @Test
+    public void testStale() {
+        engine.movePlayer(1, 0);
+        assertEquals(1, minimap.getPixelsUpdated());
+        String[] wider = new String[MAP.length];
+        for (int y = 0; y < MAP.length; y++) {
+            wider[y] = MAP[y] + "00";
+        }
+        engine.reloadWorld(new TextWorldMap(wider));
+        assertEquals(1, minimap.getPixelsUpdated());
+        assertEquals(5, minimap.getImage().getWidth());
+        assertEquals(10, minimap.getPixelsUpdated());
+        assertEquals(Color.YELLOW.getRGB(), pixel(1, 0));
+        assertEquals(Color.BLACK.getRGB(), pixel(4, 1));
+    }
+}
@@ -0,0 +1,107 @@
+package jpacman.controller;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import jpacman.model.Engine;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+import jpacman.model.LevelGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of rendering whole boards in tiles, with a given number
+ * of threads: a map of a MAP_SIZE x MAP_SIZE board at one pixel per
+ * cell, and a BOARD_SIZE x BOARD_SIZE board in detail. With enough
+ * processors, the time per image should drop with the number of threads.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g" })
+public class TileRendererBenchmark {
+
+    /**
+     * Width and height of the board exported as a map.
+     */
+    static final int MAP_SIZE = 4096;
+
+    /**
+     * Width and height of the board rendered in detail.
+     */
+    static final int BOARD_SIZE = 128;
+
+    /**
+     * Number of threads rendering tiles.
+     */
+    @Param({"1", "2", "4" })
+    private int threads;
+
+    /**
+     * Renderer of the board exported as a map.
+     */
+    private TileRenderer mapRenderer;
+
+    /**
+     * Renderer of the board rendered in detail.
+     */
+    private TileRenderer boardRenderer;
+
+    /**
+     * Create a renderer of a generated level.
+     * @param size Width and height of the level
+     * @return The renderer.
+     * @throws GameLoadException never.
+     */
+    private static TileRenderer renderer(int size) throws GameLoadException {
+        Engine engine = new Engine(new Game(
+                new LevelGenerator(size, size, 0).generate()));
+        engine.initialize();
+        engine.start();
+        return new TileRenderer(new BoardViewer(engine));
+    }
+
+    /**
+     * Create the renderers, rendering on the given number of threads.
+     * @throws GameLoadException never.
+     */
+    @Setup
+    public void setUp() throws GameLoadException {
+        TileRenderer.setParallelism(threads);
+        mapRenderer = renderer(MAP_SIZE);
+        boardRenderer = renderer(BOARD_SIZE);
+    }
+
+    /**
+     * Export the large board as a map.
+     * @return The image of the map.
+     */
+    @Benchmark
+    public BufferedImage renderMap() {
+        return mapRenderer.renderMap(1);
+    }
+
+    /**
+     * Render the smaller board in detail.
+     * @return The image of the board.
+     */
+    @Benchmark
+    public BufferedImage renderBoard() {
+        return boardRenderer.renderBoard();
+    }
+}
@@ -0,0 +1,193 @@
+package jpacman.controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import jpacman.model.Cell;
+import jpacman.model.Engine;
+import jpacman.model.Game;
+import jpacman.model.GameLoadException;
+import jpacman.model.Guest;
+import jpacman.model.LevelGenerator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for rendering boards in tiles on several threads, which
+ * should give the same images as rendering them in one go.
+ *
+ * @version $Id$
+ */
+public class TileRendererTest {
+
+    /**
+     * The engine, playing a generated level.
+     */
+    private Engine engine;
+
+    /**
+     * The viewer rendering the cells, which isn't displayed.
+     */
+    private BoardViewer viewer;
+
+    /**
+     * Render on a few threads, even on a single processor.
+     */
+    @Before
+    public void setUp() {
+        TileRenderer.setParallelism(2 + 1);
+    }
+
+    /**
+     * Restore the default parallelism.
+     */
+    @After
+    public void tearDown() {
+        TileRenderer.setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * A parallelism that isn't positive falls back to the number
+     * of processors.
+     */
+    @Test
+    public void testConfiguredParallelism() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        String old = System.getProperty(TileRenderer.THREADS_PROPERTY);
+        try {
+            System.setProperty(TileRenderer.THREADS_PROPERTY, "2");
+            assertEquals(2, TileRenderer.configuredParallelism());
+            System.setProperty(TileRenderer.THREADS_PROPERTY, "0");
+            assertEquals(processors, TileRenderer.configuredParallelism());
+            System.setProperty(TileRenderer.THREADS_PROPERTY, "-1");
+            assertEquals(processors, TileRenderer.configuredParallelism());
+        } finally {
+            if (old == null) {
+                System.clearProperty(TileRenderer.THREADS_PROPERTY);
+            } else {
+                System.setProperty(TileRenderer.THREADS_PROPERTY, old);
+            }
+        }
+    }
+
+    /**
+     * Start a game on a generated level.
+     * @param width Width of the level
+     * @param height Height of the level
+     * @throws GameLoadException never.
+     */
+    private void play(int width, int height) throws GameLoadException {
+        engine = new Engine(new Game(
+                new LevelGenerator(width, height, 1).generate()));
+        engine.initialize();
+        engine.start();
+        viewer = new BoardViewer(engine);
+    }
+
+    /**
+     * @param image An RGB image
+     * @return Its pixels.
+     */
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * A board rendered in detail in tiles equals the board
+     * rendered by the viewer at once.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testRenderBoard() throws GameLoadException {
+        final int width = 61;
+        final int height = 43;
+        play(width, height);
+        BufferedImage tiled = new TileRenderer(viewer).renderBoard();
+        assertEquals(width * (viewer.cellWidth() + BoardViewer.CELL_HGAP),
+                tiled.getWidth());
+        BufferedImage whole = new BufferedImage(tiled.getWidth(),
+                tiled.getHeight(), BufferedImage.TYPE_INT_RGB);
+        assertEquals(width * height, viewer.render(whole, 0, 0));
+        assertArrayEquals(pixels(whole), pixels(tiled));
+    }
+
+    /**
+     * A map rendered in tiles equals the map rendered at once,
+     * and shows the player.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testRenderMap() throws GameLoadException {
+        final int width = 1100;
+        final int height = 700;
+        play(width, height);
+        BufferedImage tiled = new TileRenderer(viewer).renderMap(2);
+        assertEquals(2 * width, tiled.getWidth());
+        assertEquals(2 * height, tiled.getHeight());
+        BufferedImage whole = new BufferedImage(tiled.getWidth(),
+                tiled.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = whole.createGraphics();
+        try {
+            viewer.renderMap(g2, 0, 0, width, height, 2);
+        } finally {
+            g2.dispose();
+        }
+        assertArrayEquals(pixels(whole), pixels(tiled));
+        assertEquals(Color.ORANGE.getRGB(), tiled.getRGB(0, 0));
+        Cell at = engine.getPlayer().getLocation();
+        assertEquals(Color.YELLOW.getRGB(),
+                tiled.getRGB(2 * at.getX() + 1, 2 * at.getY() + 1));
+    }
+
+    /**
+     * Across the seams of tiles rendered on several threads, the board
+     * in detail shows the colors of the map at the centers of all cells
+     * without moving guests.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testSeams() throws GameLoadException {
+        final int width = 61;
+        final int height = 43;
+        play(width, height);
+        TileRenderer renderer = new TileRenderer(viewer);
+        int pitchX = viewer.cellWidth() + BoardViewer.CELL_HGAP;
+        int pitchY = viewer.cellHeight() + BoardViewer.CELL_VGAP;
+        assertTrue(width * pitchX > 2 * TileRenderer.TILE_PIXELS);
+        assertTrue(height * pitchY > 2 * TileRenderer.TILE_PIXELS);
+        BufferedImage board = renderer.renderBoard();
+        BufferedImage map = renderer.renderMap(pitchX);
+        int checked = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                char code = engine.getGuestCode(x, y);
+                if (code != Guest.PLAYER_TYPE && code != Guest.MONSTER_TYPE) {
+                    int px = x * pitchX + pitchX / 2;
+                    assertEquals(map.getRGB(px, y * pitchX + pitchX / 2),
+                            board.getRGB(px, y * pitchY + pitchY / 2));
+                    checked++;
+                }
+            }
+        }
+        assertTrue(checked > width * height / 2);
+    }
+
+    /**
+     * Boards too large for an image in detail are refused.
+     * @throws GameLoadException never.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLarge() throws GameLoadException {
+        final int size = 1800;
+        play(size, size);
+        new TileRenderer(viewer).renderBoard();
+    }
+}
@@ -0,0 +1,178 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Test cases for the binary level format.
+ *
+ * @version $Id$
+ */
+public class BinaryLevelTest {
+
+    /**
+     * Encode a text map in the binary level format.
+     * @param map The map
+     * @param rle Whether to use run-length encoding
+     * @return The encoded level
+     * @throws IOException never.
+     */
+    private byte[] encode(String[] map, boolean rle) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryLevel.write(new TextWorldMap(map), out, rle);
+        return out.toByteArray();
+    }
+
+    /**
+     * Check that a level has exactly the cells of a text map.
+     * @param map The text map
+     * @param level The level
+     */
+    private void assertSameCells(String[] map, WorldMap level) {
+        assertEquals(map[0].length(), level.getWidth());
+        assertEquals(map.length, level.getHeight());
+        for (int y = 0; y < map.length; y++) {
+            for (int x = 0; x < map[y].length(); x++) {
+                assertEquals(map[y].charAt(x), level.guestCode(x, y));
+            }
+        }
+    }
+
+    /**
+     * The default map survives a round trip in both encodings,
+     * and its counts are recorded in the header.
+     * @throws Exception if the level can't be written or read.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        String[] map = GameLoader.DEFAULT_WORLD_MAP;
+        byte[] raw = encode(map, false);
+        byte[] rle = encode(map, true);
+        assertEquals(BinaryLevel.HEADER_SIZE
+                + map.length * map[0].length(), raw.length);
+        BinaryLevel level = BinaryLevel.read(ByteBuffer.wrap(raw));
+        assertSameCells(map, level);
+        assertSameCells(map, BinaryLevel.read(ByteBuffer.wrap(rle)));
+        Game game = new Game(map);
+        game.initialize();
+        assertEquals(game.monsterCount(), level.getMonsterCount());
+    }
+
+    /**
+     * Levels without the magic number are rejected.
+     * @throws Exception if the level can't be written.
+     */
+    @Test(expected = GameLoadException.class)
+    public void testBadMagic() throws Exception {
+        byte[] level = encode(GameTestCase.SIMPLE_MAP, false);
+        level[0] = 0;
+        BinaryLevel.read(ByteBuffer.wrap(level));
+    }
+
+    /**
+     * Levels whose cells don't match the header are rejected.
+     * @throws Exception if the level can't be written.
+     */
+    @Test
+    public void testCorrupted() throws Exception {
+        byte[] level = encode(GameTestCase.SIMPLE_MAP, false);
+        byte[] truncated = new byte[level.length - 1];
+        System.arraycopy(level, 0, truncated, 0, truncated.length);
+        assertRejected(truncated);
+        level[BinaryLevel.HEADER_SIZE] = (byte) '/';
+        assertRejected(level);
+        level[BinaryLevel.HEADER_SIZE] = (byte) Guest.FOOD_TYPE;
+        assertRejected(level);
+        byte[] rle = encode(GameTestCase.SIMPLE_MAP, true);
+        rle[rle.length - 2] = Byte.MAX_VALUE;
+        assertRejected(rle);
+    }
+
+    /**
+     * Run-length encoded levels may hold more cells than fit in an array,
+     * and can be analysed: a player followed by walls, in runs spanning
+     * several rows.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testHugeRuns() throws GameLoadException {
+        final int size = 1 << (Short.SIZE);
+        final int runs = 3;
+        ByteBuffer buf = ByteBuffer.allocate(BinaryLevel.HEADER_SIZE
+                + Integer.SIZE / Byte.SIZE + (runs + 1) * (Integer.SIZE
+                        / Byte.SIZE + 1));
+        buf.putInt(BinaryLevel.MAGIC).putShort(BinaryLevel.VERSION)
+            .putShort(BinaryLevel.FLAG_RLE).putInt(size).putInt(size)
+            .putInt(0).putInt(0).putInt(runs + 1);
+        buf.putInt(1).put((byte) Guest.PLAYER_TYPE);
+        long walls = (long) size * size - 1;
+        for (int r = 0; r < runs; r++) {
+            int length = (int) Math.min(walls, Integer.MAX_VALUE);
+            buf.putInt(length).put((byte) Guest.WALL_TYPE);
+            walls -= length;
+        }
+        assertEquals(0, walls);
+        BinaryLevel level = BinaryLevel.read(buf);
+        assertEquals(size, level.getWidth());
+        assertEquals(size, level.getHeight());
+        assertEquals(Guest.PLAYER_TYPE, level.guestCode(0, 0));
+        assertEquals(Guest.WALL_TYPE, level.guestCode(1, 0));
+        assertEquals(Guest.WALL_TYPE, level.guestCode(size - 1, size - 1));
+        assertEquals(1, Reachability.analyse(level).getReachableCells());
+    }
+
+    /**
+     * Assert that a buffer isn't accepted as level.
+     * @param level The buffer's content.
+     */
+    private void assertRejected(byte[] level) {
+        try {
+            BinaryLevel.read(ByteBuffer.wrap(level));
+            fail("Corrupted level accepted");
+        } catch (GameLoadException gle) {
+            assertTrue(gle.getMessage().length() > 0);
+        }
+    }
+
+    /**
+     * A level file converted from text can be memory mapped,
+     * and played.
+     * @throws Exception if the files can't be written or read.
+     */
+    @Test
+    public void testConvertAndMap() throws Exception {
+        File text = File.createTempFile("level", ".txt");
+        File binary = new File(LevelConverter.targetName(text.getPath()));
+        try {
+            OutputStream out = new FileOutputStream(text);
+            try {
+                for (String row : GameTestCase.SIMPLE_MAP) {
+                    out.write((row + "\n").getBytes("US-ASCII"));
+                }
+            } finally {
+                out.close();
+            }
+            LevelConverter.convert(text, binary, true);
+            BinaryLevel level = BinaryLevel.open(binary);
+            assertSameCells(GameTestCase.SIMPLE_MAP, level);
+            Game game = new Game(level);
+            game.initialize();
+            assertEquals(2, game.monsterCount());
+            assertEquals(Guest.WALL_TYPE,
+                    game.getBoard().guestCode(1, 0));
+        } finally {
+            text.delete();
+            binary.delete();
+        }
+    }
+}
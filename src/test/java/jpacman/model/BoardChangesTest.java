@@ -0,0 +1,113 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Observable;
+import java.util.Observer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for tracking the cells of a board that have changed.
+ *
+ * @version $Id$
+ */
+public class BoardChangesTest implements Observer {
+
+    /**
+     * The engine playing a simple map.
+     */
+    private Engine engine;
+
+    /**
+     * The changes most recently reported to this observer.
+     */
+    private BoardChanges reported;
+
+    /**
+     * Start an engine on the simple map, observed by this test.
+     * @throws GameLoadException never.
+     */
+    @Before
+    public void setUp() throws GameLoadException {
+        engine = new Engine(new Game(GameTestCase.SIMPLE_MAP));
+        engine.initialize();
+        engine.addObserver(this);
+        engine.start();
+    }
+
+    /**
+     * @param o The engine
+     * @param changes The changes it reports
+     */
+    public void update(Observable o, Object changes) {
+        reported = (BoardChanges) changes;
+    }
+
+    /**
+     * A new board reports that all cells have changed; after that,
+     * a move reports the cell left and the cell entered, and
+     * bumping into a wall reports nothing.
+     */
+    @Test
+    public void testMove() {
+        assertFalse(reported.isComplete());
+        engine.movePlayer(0, -1);
+        assertTrue(reported.isComplete());
+        assertEquals(0, reported.size());
+        engine.movePlayer(1, 0);
+        assertTrue(reported.isComplete());
+        assertEquals(2, reported.size());
+        assertEquals(1, reported.getX(0));
+        assertEquals(1, reported.getY(0));
+        assertEquals(2, reported.getX(1));
+        assertEquals(1, reported.getY(1));
+    }
+
+    /**
+     * Eating food changes the cell entered just once.
+     */
+    @Test
+    public void testEat() {
+        engine.movePlayer(-1, 0);
+        assertEquals(2, reported.size());
+        assertEquals(1, reported.getX(0) + reported.getX(1));
+    }
+
+    /**
+     * Restarting on a new map reports that all cells have changed.
+     */
+    @Test
+    public void testReload() {
+        engine.reloadWorld(new TextWorldMap(new String[] {"P0", "0F"}));
+        assertFalse(reported.isComplete());
+    }
+
+    /**
+     * Too many changes are reported as incomplete, and after they have
+     * been taken, changes are recorded anew.
+     */
+    @Test
+    public void testOverflow() {
+        final int width = 100;
+        Board board = new Board(width, Board.MAX_CHANGES / width + 1);
+        assertTrue(!board.takeChanges().isComplete());
+        board.trackChanges(true);
+        for (int i = 0; i < Board.MAX_CHANGES; i++) {
+            board.cellChanged(board.getCell(i % width, i / width));
+            board.cellChanged(board.getCell(i % width, i / width));
+        }
+        BoardChanges changes = board.takeChanges();
+        assertTrue(changes.isComplete());
+        assertEquals(Board.MAX_CHANGES, changes.size());
+        for (int i = 0; i <= Board.MAX_CHANGES; i++) {
+            board.cellChanged(board.getCell(i % width, i / width));
+        }
+        assertFalse(board.takeChanges().isComplete());
+        board.cellChanged(board.getCell(0, 0));
+        assertEquals(1, board.takeChanges().size());
+    }
+}
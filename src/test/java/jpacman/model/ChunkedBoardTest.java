@@ -0,0 +1,142 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for boards whose chunks of cells are created lazily.
+ *
+ * @version $Id$
+ */
+public class ChunkedBoardTest {
+
+    /**
+     * Dimensions of the test map, deliberately not
+     * multiples of the chunk size.
+     */
+    private static final int WIDTH = 200, HEIGHT = 150;
+
+    /**
+     * Position of the player: two steps left of the border
+     * between the first two chunks.
+     */
+    private static final int PLAYER_X = ChunkedBoard.CHUNK_SIZE - 2;
+
+    /**
+     * The game played on the chunked board.
+     */
+    private Game game;
+
+    /**
+     * The chunked board.
+     */
+    private ChunkedBoard board;
+
+    /**
+     * Create a walled map, filled with food, with the player in the
+     * top left chunk and a monster far away, and load it into
+     * a chunked board.
+     * @throws GameLoadException if the map is wrong.
+     */
+    @Before
+    public void setUp() throws GameLoadException {
+        String[] map = new String[HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            StringBuilder row = new StringBuilder(WIDTH);
+            for (int x = 0; x < WIDTH; x++) {
+                if (x == 0 || y == 0 || x == WIDTH - 1 || y == HEIGHT - 1) {
+                    row.append(Guest.WALL_TYPE);
+                } else if (x == PLAYER_X && y == 1) {
+                    row.append(Guest.PLAYER_TYPE);
+                } else if (x == WIDTH - 2 && y == HEIGHT - 2) {
+                    row.append(Guest.MONSTER_TYPE);
+                } else {
+                    row.append(Guest.FOOD_TYPE);
+                }
+            }
+            map[y] = row.toString();
+        }
+        Game.setChunkedThreshold(0);
+        game = new Game(map);
+        game.initialize();
+        board = (ChunkedBoard) game.getBoard();
+    }
+
+    /**
+     * Restore the default threshold, so that other tests aren't affected.
+     */
+    @After
+    public void tearDown() {
+        Game.setChunkedThreshold(Game.DEFAULT_CHUNKED_THRESHOLD);
+    }
+
+    /**
+     * Only the chunks of the moving guests are expanded upon loading,
+     * yet all food counts, and guest codes are available everywhere.
+     */
+    @Test
+    public void testLazyLoading() {
+        final int chunks = 4 * 3;
+        assertEquals(chunks, board.getChunkCount());
+        assertEquals(2, board.getExpandedChunks());
+        assertEquals((WIDTH - 2) * (HEIGHT - 2) - 2,
+                game.getPlayer().getPointsEaten() + foodLeft());
+        assertEquals(Guest.FOOD_TYPE, board.guestCode(WIDTH / 2, HEIGHT / 2));
+        assertEquals(Guest.WALL_TYPE, board.guestCode(WIDTH - 1, 0));
+        assertEquals(2, board.getExpandedChunks());
+        Guest g = board.getGuest(WIDTH / 2, HEIGHT / 2);
+        assertTrue(g instanceof Food);
+        assertEquals(3, board.getExpandedChunks());
+        assertTrue(board.consistentBoardCellAssociation());
+    }
+
+    /**
+     * Food eaten in an evicted chunk remains eaten.
+     */
+    @Test
+    public void testEviction() {
+        game.movePlayer(1, 0);
+        game.movePlayer(1, 0);
+        game.movePlayer(1, 0);
+        assertEquals(ChunkedBoard.CHUNK_SIZE + 1,
+                game.getPlayer().getLocation().getX());
+        assertEquals(3, game.getPlayer().getPointsEaten());
+        assertTrue(game.hasMoves());
+        assertEquals(1, game.compactBoard());
+        assertFalse(game.hasMoves());
+        assertEquals(2, board.getExpandedChunks());
+        assertEquals(Guest.EMPTY_TYPE,
+                board.guestCode(ChunkedBoard.CHUNK_SIZE - 1, 1));
+        assertEquals(Guest.FOOD_TYPE,
+                board.guestCode(ChunkedBoard.CHUNK_SIZE - 3, 1));
+        assertNull(board.getGuest(PLAYER_X, 1));
+        assertNull(board.getGuest(ChunkedBoard.CHUNK_SIZE - 1, 1));
+        assertEquals(3, board.getExpandedChunks());
+        game.movePlayer(-1, 0);
+        assertEquals(3, game.getPlayer().getPointsEaten());
+        assertEquals(foodLeft(),
+                (WIDTH - 2) * (HEIGHT - 2) - 2 - 3);
+    }
+
+    /**
+     * @return The number of food elements left on the board, counted
+     *         without expanding any chunks.
+     */
+    private int foodLeft() {
+        int result = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (board.guestCode(x, y) == Guest.FOOD_TYPE) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -1,10 +1,15 @@
 package jpacman.model;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static jpacman.model.GameLoader.checkSanity;
 
-import org.junit.Before;
+import java.io.IOException;
+import java.io.StringReader;
+
 import org.junit.Test;
 
 /**
@@ -71,5 +76,62 @@ public class GameLoaderTest {
         assertNotNull(checkSanity(map));
     }
 
-    
+    /**
+     * The map named in the property file is read from the classpath.
+     * @throws GameLoadException if it can't be loaded.
+     */
+    @Test
+    public void obtainConfiguredMap() throws GameLoadException {
+        GameLoader loader = new GameLoader();
+        String[] map = loader.obtainMap();
+        final int levelSize = 20;
+        assertEquals(levelSize, map.length);
+        assertEquals(levelSize, map[0].length());
+        assertNull(checkSanity(map));
+        assertTrue(loader.getLoadTime() > 0);
+    }
+
+    /**
+     * A correct map is read row by row.
+     * @throws IOException never
+     * @throws GameLoadException never
+     */
+    @Test
+    public void readCorrectMap() throws IOException, GameLoadException {
+        String[] map = GameLoader.readMap(new StringReader("W0W\nFPM\n"));
+        assertEquals(2, map.length);
+        assertEquals("FPM", map[1]);
+    }
+
+    /**
+     * Errors are reported with the line they occur on.
+     * @throws IOException never
+     */
+    @Test
+    public void readIncorrectMap() throws IOException {
+        try {
+            GameLoader.readMap(new StringReader("W0W\nFP\nWWW\n"));
+            fail("rows of different length should be rejected");
+        } catch (GameLoadException gle) {
+            assertTrue(gle.getMessage().startsWith("line 2"));
+        }
+    }
+
+    /**
+     * A map without a player is only rejected after it has been read.
+     * @throws IOException never
+     */
+    @Test(expected = GameLoadException.class)
+    public void readMapWithoutPlayer() throws IOException, GameLoadException {
+        GameLoader.readMap(new StringReader("W0W\nF0M\n"));
+    }
+
+    /**
+     * Maps that can't be found result in a load exception.
+     * @throws GameLoadException always.
+     */
+    @Test(expected = GameLoadException.class)
+    public void missingMap() throws GameLoadException {
+        GameLoader.openMap("no-such-map.txt");
+    }
 }
@@ -3,9 +3,10 @@ package jpacman.model;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
+import java.util.List;
 import java.util.Stack;
-import java.util.Vector;
 
 import org.junit.Test;
 
@@ -31,15 +32,37 @@ public class GameTest extends GameTestCase {
     }
 
     /**
-     * Is each list of monsters a fresh one?
+     * Is the list of monsters a shared, immutable snapshot?
      */
     @Test
     public void testGetMonsters() {
         assertEquals(2, getTheGame().getMonsters().size());
-        // each call to getMonsters should deliver a fresh copy.
-        Vector<Monster> ms1 = getTheGame().getMonsters();
-        Vector<Monster> ms2 = getTheGame().getMonsters();
-        assertNotSame(ms1, ms2);
+        // each call to getMonsters delivers the same snapshot.
+        List<Monster> ms1 = getTheGame().getMonsters();
+        List<Monster> ms2 = getTheGame().getMonsters();
+        assertSame(ms1, ms2);
+        assertEquals(2, getTheGame().monsterCount());
+        assertSame(ms1.get(1), getTheGame().getMonster(1));
+    }
+
+    /**
+     * The snapshot of monsters cannot be modified by clients.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMonstersImmutable() {
+        getTheGame().getMonsters().remove(0);
+    }
+
+    /**
+     * Reloading the world publishes a new snapshot.
+     */
+    @Test
+    public void testMonstersAfterReload() {
+        List<Monster> before = getTheGame().getMonsters();
+        getTheGame().reInitialize();
+        List<Monster> after = getTheGame().getMonsters();
+        assertNotSame(before, after);
+        assertEquals(before.size(), after.size());
     }
 
     /**
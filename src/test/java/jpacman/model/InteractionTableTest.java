@@ -0,0 +1,129 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Differential test checking that resolving moves through the
+ * InteractionTable yields exactly the same effects as the reference
+ * double dispatch implementation in the Move and Guest hierarchies.
+ *
+ * @version $Id$
+ */
+public class InteractionTableTest {
+
+    /**
+     * Number of random moves checked.
+     */
+    private static final int MOVES = 1000000;
+
+    /**
+     * Fixed seed, so that failures can be reproduced.
+     */
+    private static final long SEED = 3205L;
+
+    /**
+     * The four possible offsets of a move.
+     */
+    private static final int[][] OFFSETS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+
+    /**
+     * The game the random moves are made in.
+     */
+    private Game game;
+
+    /**
+     * Resolution mode before the test, restored afterwards.
+     */
+    private boolean oldResolution;
+
+    /**
+     * Create a game on the default map.
+     * @throws GameLoadException if the map can't be loaded.
+     */
+    @Before
+    public void setUp() throws GameLoadException {
+        oldResolution = Move.tableResolution();
+        game = new Game(GameLoader.DEFAULT_WORLD_MAP);
+        game.initialize();
+    }
+
+    /**
+     * Restore the resolution mode.
+     */
+    @After
+    public void tearDown() {
+        Move.setTableResolution(oldResolution);
+    }
+
+    /**
+     * Play a long random game. Before each step, the intended move is
+     * resolved both ways and the effects are compared; the move is then
+     * carried out by the game, alternating between both resolution modes.
+     */
+    @Test
+    public void testRandomMoves() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < MOVES; i++) {
+            if (game.gameOver()) {
+                game.reInitialize();
+            }
+            int[] offset = OFFSETS[random.nextInt(OFFSETS.length)];
+            int who = random.nextInt(game.monsterCount() + 1);
+            MovingGuest mover;
+            if (who == game.monsterCount()) {
+                mover = game.getPlayer();
+            } else {
+                mover = game.getMonster(who);
+            }
+            Cell target = mover.getLocation().cellAtOffset(
+                    offset[0], offset[1]);
+            compare(createMove(mover, target, true),
+                    createMove(mover, target, false));
+
+            Move.setTableResolution(i % 2 == 0);
+            if (mover == game.getPlayer()) {
+                game.movePlayer(offset[0], offset[1]);
+            } else {
+                game.moveMonster((Monster) mover, offset[0], offset[1]);
+            }
+        }
+    }
+
+    /**
+     * Create a move using a given resolution mode.
+     * @param mover The guest to be moved
+     * @param target Its destination
+     * @param useTable The resolution mode
+     * @return The initialized move.
+     */
+    private Move createMove(MovingGuest mover, Cell target, boolean useTable) {
+        Move.setTableResolution(useTable);
+        Move result;
+        if (mover instanceof Player) {
+            result = new PlayerMove((Player) mover, target);
+        } else {
+            result = new MonsterMove((Monster) mover, target);
+        }
+        return result;
+    }
+
+    /**
+     * Check that two moves have identical effects.
+     * @param table The move resolved by table lookup
+     * @param reference The move resolved by double dispatch
+     */
+    private void compare(Move table, Move reference) {
+        assertEquals(reference.movePossible(), table.movePossible());
+        assertEquals(reference.playerDies(), table.playerDies());
+        if (reference instanceof PlayerMove) {
+            assertEquals(((PlayerMove) reference).getFoodEaten(),
+                    ((PlayerMove) table).getFoodEaten());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import jpacman.model.InvariantChecks.Tier;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test cases for the selection of invariant checking tiers.
+ *
+ * @version $Id$
+ */
+public class InvariantChecksTest {
+
+    /**
+     * Return to full checking, so that other tests aren't affected.
+     */
+    @After
+    public void tearDown() {
+        InvariantChecks.setTier(Tier.FULL, InvariantChecks.DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Property values are translated case insensitively,
+     * defaulting to full checking.
+     */
+    @Test
+    public void testParse() {
+        assertEquals(Tier.FULL, InvariantChecks.parse(null));
+        assertEquals(Tier.FULL, InvariantChecks.parse("bogus"));
+        assertEquals(Tier.SAMPLED, InvariantChecks.parse("sampled"));
+        assertEquals(Tier.CHEAP, InvariantChecks.parse(" CHEAP "));
+    }
+
+    /**
+     * Full checking never skips, cheap checking always skips.
+     */
+    @Test
+    public void testFullAndCheap() {
+        InvariantChecks.setTier(Tier.FULL, 1);
+        assertFalse(InvariantChecks.skipExpensive());
+        InvariantChecks.setTier(Tier.CHEAP, 1);
+        assertTrue(InvariantChecks.skipExpensive());
+    }
+
+    /**
+     * Sampling carries out every Nth check only.
+     */
+    @Test
+    public void testSampled() {
+        final int interval = 3;
+        InvariantChecks.setTier(Tier.SAMPLED, interval);
+        assertFalse(InvariantChecks.skipExpensive());
+        assertTrue(InvariantChecks.skipExpensive());
+        assertTrue(InvariantChecks.skipExpensive());
+        assertFalse(InvariantChecks.skipExpensive());
+    }
+
+    /**
+     * Threads sample their own checks.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @Test
+    public void testSampledPerThread() throws InterruptedException {
+        final int interval = 2;
+        InvariantChecks.setTier(Tier.SAMPLED, interval);
+        assertFalse(InvariantChecks.skipExpensive());
+        final boolean[] skipped = new boolean[2];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                skipped[0] = InvariantChecks.skipExpensive();
+                skipped[1] = InvariantChecks.skipExpensive();
+            }
+        };
+        other.start();
+        other.join();
+        assertFalse(skipped[0]);
+        assertTrue(skipped[1]);
+        assertTrue(InvariantChecks.skipExpensive());
+    }
+
+    /**
+     * The engine still works when its invariant is only sampled.
+     * @throws GameLoadException if the default map can't be loaded.
+     */
+    @Test
+    public void testSampledEngine() throws GameLoadException {
+        InvariantChecks.setTier(Tier.SAMPLED, 2);
+        Engine engine = new Engine(new Game(GameTestCase.SIMPLE_MAP));
+        engine.initialize();
+        engine.start();
+        engine.movePlayer(1, 0);
+        assertTrue(engine.inPlayingState());
+    }
+}
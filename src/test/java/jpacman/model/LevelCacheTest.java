@@ -0,0 +1,147 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for the cache of compiled levels.
+ *
+ * @version $Id$
+ */
+public class LevelCacheTest {
+
+    /**
+     * The cache directory, removed after each test.
+     */
+    private File dir;
+
+    /**
+     * The cache under test.
+     */
+    private LevelCache cache;
+
+    /**
+     * Create an empty cache directory.
+     * @throws IOException if it can't be created.
+     */
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("levels", "");
+        assertTrue(dir.delete());
+        cache = new LevelCache(dir);
+    }
+
+    /**
+     * Remove the cache directory.
+     */
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Keys depend on the content only.
+     * @throws IOException never.
+     */
+    @Test
+    public void testKey() throws IOException {
+        String k1 = LevelCache.key(new ByteArrayInputStream("W0P".getBytes()));
+        String k2 = LevelCache.key(new ByteArrayInputStream("W0P".getBytes()));
+        String k3 = LevelCache.key(new ByteArrayInputStream("WP0".getBytes()));
+        final int hexDigits = 64;
+        assertEquals(hexDigits, k1.length());
+        assertEquals(k1, k2);
+        assertFalse(k1.equals(k3));
+    }
+
+    /**
+     * The first load misses and compiles the level,
+     * the second one maps the compiled level.
+     * @throws GameLoadException if the configured map can't be loaded.
+     */
+    @Test
+    public void testMissThenHit() throws GameLoadException {
+        GameLoader loader = new GameLoader(cache);
+        WorldMap first = loader.obtainWorld();
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertTrue(cache.getMissTime() > 0);
+        WorldMap second = loader.obtainWorld();
+        assertTrue(second instanceof BinaryLevel);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertTrue(cache.getHitTime() > 0);
+        assertEquals(first.getWidth(), second.getWidth());
+        for (int y = 0; y < first.getHeight(); y++) {
+            for (int x = 0; x < first.getWidth(); x++) {
+                assertEquals(first.guestCode(x, y), second.guestCode(x, y));
+            }
+        }
+    }
+
+    /**
+     * Corrupted entries are discarded and rebuilt.
+     * @throws Exception if the entry can't be written.
+     */
+    @Test
+    public void testCorruptedEntry() throws Exception {
+        String key = "corrupted";
+        assertTrue(cache.store(key, new TextWorldMap(GameTestCase.SIMPLE_MAP)));
+        assertTrue(cache.lookup(key) != null);
+        OutputStream out = new FileOutputStream(cache.entry(key));
+        try {
+            out.write("garbage".getBytes());
+        } finally {
+            out.close();
+        }
+        assertEquals(null, cache.lookup(key));
+        assertFalse(cache.entry(key).exists());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        WorldMap map = new TextWorldMap(GameTestCase.SIMPLE_MAP);
+        assertTrue(cache.store(key, map));
+        assertNotSame(map, cache.lookup(key));
+    }
+
+    /**
+     * Run-length encoded maps are stored as runs rather than raw cells,
+     * and read back as the same map.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testStoreRuns() throws GameLoadException {
+        final int size = 512;
+        LevelGenerator generator = new LevelGenerator(size, size, 0);
+        WorldMap map = new RleWorldMap(
+                new TextWorldMap(generator.generate()));
+        String key = "runs";
+        assertTrue(cache.store(key, map));
+        assertFalse(cache.entry(key).length()
+                == BinaryLevel.HEADER_SIZE + size * size);
+        BinaryLevel level = cache.lookup(key);
+        assertEquals(size, level.getHeight());
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                assertEquals(map.guestCode(x, y), level.guestCode(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package jpacman.model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark measuring how checking and building a large level
+ * scales with the number of threads loading it in bands.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g" })
+public class LevelConstructionBenchmark {
+
+    /**
+     * Width and height of the level; below the size for which
+     * a ChunkedBoard is used.
+     */
+    @Param({"1024", "2000" })
+    private int size;
+
+    /**
+     * Number of threads loading the level.
+     */
+    @Param({"1", "2", "4" })
+    private int threads;
+
+    /**
+     * The level, walled in, with food, walls and monsters.
+     */
+    private BinaryLevel level;
+
+    /**
+     * Generate the level, and set up the loading pool.
+     * @throws Exception if the level can't be generated.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        final int segment = 7;
+        String[] map = new String[size];
+        StringBuilder row = new StringBuilder(size);
+        for (int y = 0; y < size; y++) {
+            row.setLength(0);
+            for (int x = 0; x < size; x++) {
+                if (x == 0 || y == 0 || x == size - 1 || y == size - 1) {
+                    row.append(Guest.WALL_TYPE);
+                } else if (x == 1 && y == 1) {
+                    row.append(Guest.PLAYER_TYPE);
+                } else if ((x * y) % (segment * segment * segment) == 1) {
+                    row.append(Guest.MONSTER_TYPE);
+                } else if (y % segment == 0 && x % segment != 1) {
+                    row.append(Guest.WALL_TYPE);
+                } else {
+                    row.append(Guest.FOOD_TYPE);
+                }
+            }
+            map[y] = row.toString();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryLevel.write(new TextWorldMap(map), out, false);
+        level = BinaryLevel.read(ByteBuffer.wrap(out.toByteArray()));
+        LoadBands.setParallelism(threads);
+    }
+
+    /**
+     * @return Error found in the level, if any.
+     */
+    @Benchmark
+    public String check() {
+        return GameLoader.checkSanity(level);
+    }
+
+    /**
+     * @return The game built from the level.
+     * @throws GameLoadException never.
+     */
+    @Benchmark
+    public Game build() throws GameLoadException {
+        Game game = new Game(level);
+        game.initialize();
+        return game;
+    }
+}
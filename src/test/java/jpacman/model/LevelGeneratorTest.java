@@ -0,0 +1,175 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Test cases for the generator of random levels.
+ *
+ * @version $Id$
+ */
+public class LevelGeneratorTest {
+
+    /**
+     * Count the occurrences of a guest code in a level.
+     * @param map The level
+     * @param code The guest code
+     * @return The number of cells with that code.
+     */
+    private static int count(String[] map, char code) {
+        int result = 0;
+        for (String row : map) {
+            for (int x = 0; x < row.length(); x++) {
+                if (row.charAt(x) == code) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Generated levels are sane, have the requested guests,
+     * and all of them can be reached.
+     */
+    @Test
+    public void testGenerate() {
+        final int width = 301;
+        final int height = 500;
+        final int monsters = 37;
+        final int food = 5000;
+        LevelGenerator generator = new LevelGenerator(width, height, 1);
+        generator.setMonsters(monsters);
+        generator.setFood(food);
+        String[] map = generator.generate();
+        assertEquals(height, map.length);
+        assertNull(GameLoader.checkSanity(map));
+        assertEquals(1, count(map, Guest.PLAYER_TYPE));
+        assertEquals(Guest.PLAYER_TYPE, map[1].charAt(1));
+        assertEquals(monsters, count(map, Guest.MONSTER_TYPE));
+        assertEquals(food, count(map, Guest.FOOD_TYPE));
+        assertNull(GameLoader.checkReachability(new TextWorldMap(map)));
+        assertEquals(width * height - count(map, Guest.WALL_TYPE),
+                Reachability.analyse(new TextWorldMap(map))
+                .getReachableCells());
+    }
+
+    /**
+     * The same seed yields the same level, also with a different
+     * number of threads, and other seeds yield other levels.
+     */
+    @Test
+    public void testSeeded() {
+        final int size = 1000;
+        String[] first = new LevelGenerator(size, size, 2).generate();
+        LoadBands.setParallelism(1);
+        try {
+            assertArrayEquals(first,
+                    new LevelGenerator(size, size, 2).generate());
+        } finally {
+            LoadBands.setParallelism(
+                    Runtime.getRuntime().availableProcessors());
+        }
+        assertFalse(Arrays.equals(first,
+                new LevelGenerator(size, size, 3).generate()));
+    }
+
+    /**
+     * Without monsters and food limits, all free cells get food;
+     * fewer walls leave more room for it.
+     */
+    @Test
+    public void testWallDensity() {
+        final int size = 99;
+        LevelGenerator generator = new LevelGenerator(size, size, 0);
+        generator.setMonsters(0);
+        generator.setWallDensity(1);
+        String[] maze = generator.generate();
+        assertEquals(0, count(maze, Guest.EMPTY_TYPE));
+        int cells = (size / 2) * (size / 2);
+        assertEquals(2 * cells - 2, count(maze, Guest.FOOD_TYPE));
+        generator.setWallDensity(0);
+        String[] open = generator.generate();
+        final int pillars = (size / 2 - 1) * (size / 2 - 1);
+        assertEquals(size * size - (4 * size - 4) - pillars - 1,
+                count(open, Guest.FOOD_TYPE));
+    }
+
+    /**
+     * The smallest level holds just the player.
+     */
+    @Test
+    public void testSmallest() {
+        LevelGenerator generator = new LevelGenerator(
+                LevelGenerator.MIN_SIZE, LevelGenerator.MIN_SIZE, 0);
+        generator.setMonsters(0);
+        assertArrayEquals(new String[] {"WWW", "WPW", "WWW"},
+                generator.generate());
+    }
+
+    /**
+     * Asking for more guests than free cells fails.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyGuests() {
+        LevelGenerator generator = new LevelGenerator(5, 5, 0);
+        generator.setMonsters(1);
+        generator.setFood(7);
+        generator.generate();
+    }
+
+    /**
+     * Levels are saved in all formats and read back.
+     * @throws Exception if the level can't be saved or read.
+     */
+    @Test
+    public void testSave() throws Exception {
+        final int size = 64;
+        String[] map = new LevelGenerator(size, size, 4).generate();
+        String[] extensions = {".txt", RleWorldMap.EXTENSION,
+            BinaryLevel.EXTENSION};
+        for (String extension : extensions) {
+            File file = File.createTempFile("generated", extension);
+            try {
+                LevelGenerator.save(map, file);
+                assertNull(LevelValidator.validate(file, true).getError());
+                WorldMap loaded;
+                if (extension.equals(BinaryLevel.EXTENSION)) {
+                    loaded = BinaryLevel.open(file);
+                } else {
+                    Reader reader = new InputStreamReader(
+                            new FileInputStream(file), "US-ASCII");
+                    try {
+                        if (extension.equals(RleWorldMap.EXTENSION)) {
+                            loaded = RleWorldMap.read(reader);
+                        } else {
+                            loaded = new TextWorldMap(
+                                    GameLoader.readMap(reader));
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                }
+                for (int y = 0; y < size; y++) {
+                    for (int x = 0; x < size; x++) {
+                        assertEquals(map[y].charAt(x),
+                                loaded.guestCode(x, y));
+                    }
+                }
+            } finally {
+                assertTrue(file.delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package jpacman.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark comparing the time needed to load square levels of
+ * various sizes from a text file, from a raw binary level file, and
+ * from a run-length encoded binary level file. Loading includes
+ * opening the file and checking the map, but not building the board.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelLoadBenchmark {
+
+    /**
+     * Width and height of the level.
+     */
+    @Param({"20", "256", "1024", "4096" })
+    private int size;
+
+    /**
+     * The level files in the three formats.
+     */
+    private File text, raw, rle;
+
+    /**
+     * Generate a level of the given size, walled in, filled with food,
+     * with some wall segments and monsters, and write it in all formats.
+     * @throws IOException if the files can't be written.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        final int segment = 7;
+        String[] map = new String[size];
+        StringBuilder row = new StringBuilder(size);
+        for (int y = 0; y < size; y++) {
+            row.setLength(0);
+            for (int x = 0; x < size; x++) {
+                if (x == 0 || y == 0 || x == size - 1 || y == size - 1) {
+                    row.append(Guest.WALL_TYPE);
+                } else if (x == 1 && y == 1) {
+                    row.append(Guest.PLAYER_TYPE);
+                } else if ((x + y) % segment == 0) {
+                    row.append(Guest.MONSTER_TYPE);
+                } else if (y % segment == 0 && x % segment != 1) {
+                    row.append(Guest.WALL_TYPE);
+                } else {
+                    row.append(Guest.FOOD_TYPE);
+                }
+            }
+            map[y] = row.toString();
+        }
+        text = File.createTempFile("level", ".txt");
+        OutputStream out = new FileOutputStream(text);
+        try {
+            for (String r : map) {
+                out.write(r.getBytes("US-ASCII"));
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        raw = File.createTempFile("level", BinaryLevel.EXTENSION);
+        BinaryLevel.write(new TextWorldMap(map), raw, false);
+        rle = File.createTempFile("level", BinaryLevel.EXTENSION);
+        BinaryLevel.write(new TextWorldMap(map), rle, true);
+    }
+
+    /**
+     * Remove the level files.
+     */
+    @TearDown
+    public void tearDown() {
+        text.delete();
+        raw.delete();
+        rle.delete();
+    }
+
+    /**
+     * @return The level read from the text file.
+     * @throws Exception if it can't be read.
+     */
+    @Benchmark
+    public String[] loadText() throws Exception {
+        InputStream in = new FileInputStream(text);
+        try {
+            return GameLoader.readMap(new InputStreamReader(in, "US-ASCII"));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return The level mapped from the raw binary file.
+     * @throws GameLoadException if it can't be read.
+     */
+    @Benchmark
+    public BinaryLevel loadBinary() throws GameLoadException {
+        return BinaryLevel.open(raw);
+    }
+
+    /**
+     * @return The level mapped from the run-length encoded binary file.
+     * @throws GameLoadException if it can't be read.
+     */
+    @Benchmark
+    public BinaryLevel loadBinaryRle() throws GameLoadException {
+        return BinaryLevel.open(rle);
+    }
+}
@@ -0,0 +1,160 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for the batch level validator.
+ *
+ * @version $Id$
+ */
+public class LevelValidatorTest {
+
+    /**
+     * Directory containing the levels.
+     */
+    private File dir;
+
+    /**
+     * Create a directory with a nested directory.
+     * @throws IOException if it can't be created.
+     */
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("levels", "");
+        assertTrue(dir.delete());
+        assertTrue(new File(dir, "nested").mkdirs());
+    }
+
+    /**
+     * Remove the directory tree.
+     */
+    @After
+    public void tearDown() {
+        List<File> files = new ArrayList<File>();
+        LevelValidator.collect(dir, files);
+        for (File f : files) {
+            f.delete();
+        }
+        new File(dir, "nested").delete();
+        dir.delete();
+    }
+
+    /**
+     * Write a text file.
+     * @param name Path relative to the directory
+     * @param text The content
+     * @return The file.
+     * @throws IOException if it can't be written.
+     */
+    private File write(String name, String text) throws IOException {
+        File f = new File(dir, name);
+        OutputStream out = new FileOutputStream(f);
+        try {
+            out.write(text.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+
+    /**
+     * Levels in all formats are validated, reporting their counts.
+     * @throws Exception if the levels can't be written.
+     */
+    @Test
+    public void testValidLevels() throws Exception {
+        File text = write("simple.txt", "0W0\nFP0\nFM0\n0WM\n");
+        File rle = write("nested/simple.rle", "0 W 0\nF P 0\nF M 0\n0 W M\n");
+        File binary = new File(dir, "nested/simple" + BinaryLevel.EXTENSION);
+        BinaryLevel.write(new TextWorldMap(GameTestCase.SIMPLE_MAP),
+                binary, true);
+        for (File f : new File[] {text, rle, binary}) {
+            LevelValidator.Result r = LevelValidator.validate(f, true);
+            assertNull(r.getError());
+            assertEquals("3x4", r.getDimensions());
+            assertEquals(2, r.getFood());
+            assertEquals(2, r.getMonsters());
+        }
+    }
+
+    /**
+     * Errors are reported per level, with the line they occur on.
+     * @throws Exception if the levels can't be written.
+     */
+    @Test
+    public void testInvalidLevels() throws Exception {
+        LevelValidator.Result r = LevelValidator.validate(
+                write("short.txt", "W0W\nFP\n"), false);
+        assertEquals("line 2: all lines in map should be of equal length.",
+                r.getError());
+        r = LevelValidator.validate(write("walled.txt", "PWF\n"), false);
+        assertNull(r.getError());
+        r = LevelValidator.validate(write("walled.txt", "PWF\n"), true);
+        assertTrue(r.getError().contains("can't be reached"));
+        r = LevelValidator.validate(write("bad.jpl", "garbage"), false);
+        assertEquals("Not a binary level.", r.getError());
+    }
+
+    /**
+     * All levels of a directory tree end up in the report.
+     * @throws Exception if the levels can't be written.
+     */
+    @Test
+    public void testValidateAll() throws Exception {
+        final int levels = 50;
+        for (int i = 0; i < levels; i++) {
+            String content = "W0P\n";
+            if (i % 10 == 0) {
+                content = "W0M\n";
+            }
+            write("nested/level" + i + ".txt", content);
+        }
+        List<File> files = new ArrayList<File>();
+        LevelValidator.collect(dir, files);
+        assertEquals(levels, files.size());
+        StringWriter report = new StringWriter();
+        assertEquals(levels / 10,
+                LevelValidator.validateAll(files, 3, false, report));
+        String[] lines = report.toString().split("\n");
+        assertEquals(levels, lines.length);
+        int failed = 0;
+        for (String line : lines) {
+            if (line.contains(",error,")) {
+                assertTrue(line.endsWith(",\"No player defined.\""));
+                failed++;
+            } else {
+                assertTrue(line.contains(",ok,3,1,0,0,"));
+            }
+        }
+        assertEquals(levels / 10, failed);
+    }
+
+    /**
+     * Paths are quoted in the report, as they may contain commas.
+     * @throws Exception if the level can't be written.
+     */
+    @Test
+    public void testQuotedPath() throws Exception {
+        File level = write("nested/a,\"b\".txt", "W0P\n");
+        List<File> files = new ArrayList<File>();
+        files.add(level);
+        StringWriter report = new StringWriter();
+        assertEquals(0, LevelValidator.validateAll(files, 1, false, report));
+        String path = level.getPath().replace("\"", "\"\"");
+        assertTrue(report.toString().startsWith("\"" + path + "\",ok,"));
+    }
+}
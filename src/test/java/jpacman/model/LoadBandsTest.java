@@ -0,0 +1,104 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test cases for checking and loading large maps in bands of rows,
+ * which should give the same results as doing so serially.
+ *
+ * @version $Id$
+ */
+public class LoadBandsTest {
+
+    /**
+     * Dimensions of the test map, large enough to be split in bands.
+     */
+    private static final int WIDTH = 300, HEIGHT = 1000;
+
+    /**
+     * Create a walled map with a monster at the start of every row,
+     * and food everywhere else.
+     * @return The map.
+     */
+    private String[] largeMap() {
+        String[] map = new String[HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            StringBuilder row = new StringBuilder(WIDTH);
+            for (int x = 0; x < WIDTH; x++) {
+                if (x == 0 || y == 0 || x == WIDTH - 1 || y == HEIGHT - 1) {
+                    row.append(Guest.WALL_TYPE);
+                } else if (x == 1 && y == 1) {
+                    row.append(Guest.PLAYER_TYPE);
+                } else if (x == 1) {
+                    row.append(Guest.MONSTER_TYPE);
+                } else {
+                    row.append(Guest.FOOD_TYPE);
+                }
+            }
+            map[y] = row.toString();
+        }
+        return map;
+    }
+
+    /**
+     * The map is split into several bands.
+     */
+    @Test
+    public void testBands() {
+        assertTrue(HEIGHT > 2 * LoadBands.rowsPerBand(WIDTH));
+    }
+
+    /**
+     * Loading in bands yields all guests, with the monsters
+     * in row-major order.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testLoad() throws GameLoadException {
+        String[] map = largeMap();
+        assertNull(GameLoader.checkSanity(map));
+        Game game = new Game(map);
+        game.initialize();
+        assertEquals(HEIGHT - 3, game.monsterCount());
+        for (int i = 0; i < game.monsterCount(); i++) {
+            assertEquals(i + 2, game.getMonster(i).getLocation().getY());
+        }
+        assertEquals(map[HEIGHT / 2], rowOf(game.getBoard(), HEIGHT / 2));
+        assertEquals(map[HEIGHT - 1], rowOf(game.getBoard(), HEIGHT - 1));
+        assertEquals(1, game.getPlayer().getLocation().getX());
+    }
+
+    /**
+     * @param board A board
+     * @param y A row
+     * @return The guest codes of the row.
+     */
+    private String rowOf(Board board, int y) {
+        StringBuilder result = new StringBuilder();
+        for (int x = 0; x < board.getWidth(); x++) {
+            result.append(board.guestCode(x, y));
+        }
+        return result.toString();
+    }
+
+    /**
+     * The first error of the map is reported, even if later
+     * bands contain errors as well.
+     */
+    @Test
+    public void testFirstError() {
+        String[] map = largeMap();
+        map[HEIGHT - 2] = map[HEIGHT - 2].replace('F', '/');
+        assertEquals("Incorrect game character: /",
+                GameLoader.checkSanity(map));
+        map[HEIGHT / 2] = map[HEIGHT / 2] + "W";
+        assertEquals("all lines in map should be of equal length.",
+                GameLoader.checkSanity(map));
+        assertEquals("all lines in map should be of equal length.",
+                GameLoader.checkSanity(new TextWorldMap(map)));
+    }
+}
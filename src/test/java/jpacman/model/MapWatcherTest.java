@@ -0,0 +1,280 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+/**
+ * Test cases for patching edited maps into a running game,
+ * and for watching map files.
+ *
+ * @version $Id$
+ */
+public class MapWatcherTest {
+
+    /**
+     * A level with a corridor of food, and a walled off food element.
+     */
+    private static final String[] MAP = {
+        "WWWWWWW",
+        "WP0FFMW",
+        "W0WWWWW",
+        "W00WFWW",
+        "WWWWWWW"
+    };
+
+    /**
+     * Create a started engine playing a map.
+     * @param map The map
+     * @return The engine.
+     * @throws GameLoadException never.
+     */
+    private static Engine play(String[] map) throws GameLoadException {
+        Engine engine = new Engine(new Game(map));
+        engine.initialize();
+        engine.start();
+        return engine;
+    }
+
+    /**
+     * Food and walls are patched into the board, leaving
+     * the moving guests and eaten food as they are.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testPatchFood() throws GameLoadException {
+        Engine engine = play(MAP);
+        Game game = engine.getGame();
+        Player player = game.getPlayer();
+        Monster monster = game.getMonster(0);
+        engine.movePlayer(1, 0);
+        engine.movePlayer(1, 0);
+        assertEquals(1, game.getUnreachableFood());
+        assertTrue(game.hasMoves());
+        String[] edited = {
+            "WWWWWWW",
+            "WP0F0MW",
+            "WFWWWWW",
+            "W0WWFWW",
+            "WWWWWWW"
+        };
+        assertEquals(3, engine.reloadWorld(new TextWorldMap(edited)));
+        assertEquals(Guest.EMPTY_TYPE, game.getGuestCode(4, 1));
+        assertEquals(Guest.FOOD_TYPE, game.getGuestCode(1, 2));
+        assertEquals(Guest.WALL_TYPE, game.getGuestCode(2, 3));
+        assertEquals(Guest.PLAYER_TYPE, game.getGuestCode(3, 1));
+        assertSame(player, game.getPlayer());
+        assertSame(monster, game.getMonster(0));
+        assertEquals(1, player.getPointsEaten());
+        assertFalse(game.hasMoves());
+        assertEquals(1, game.getUnreachableFood());
+        assertTrue(engine.inPlayingState());
+        engine.movePlayer(-1, 0);
+        engine.movePlayer(-1, 0);
+        engine.movePlayer(0, 1);
+        assertTrue(engine.inWonState());
+    }
+
+    /**
+     * Walls never end up on moving guests, and changing walls
+     * changes the food that can be reached.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testPatchWalls() throws GameLoadException {
+        Engine engine = play(MAP);
+        Game game = engine.getGame();
+        String[] edited = {
+            "WWWWWWW",
+            "WPWFFWW",
+            "W0WW0WW",
+            "W00WFWW",
+            "WWWWWWW"
+        };
+        assertEquals(2, engine.reloadWorld(new TextWorldMap(edited)));
+        assertEquals(Guest.PLAYER_TYPE, game.getGuestCode(1, 1));
+        assertEquals(Guest.WALL_TYPE, game.getGuestCode(2, 1));
+        assertEquals(Guest.MONSTER_TYPE, game.getGuestCode(5, 1));
+        assertEquals(3, game.getUnreachableFood());
+        assertTrue(engine.inWonState());
+    }
+
+    /**
+     * An edit of a cell the player stands on is patched once the
+     * player leaves it, also when it leaves by undoing its move.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testPatchUnderPlayer() throws GameLoadException {
+        Engine engine = play(MAP);
+        Game game = engine.getGame();
+        engine.movePlayer(1, 0);
+        engine.movePlayer(1, 0);
+        String[] edited = MAP.clone();
+        edited[1] = "WP00FMW";
+        assertEquals(0, engine.reloadWorld(new TextWorldMap(edited)));
+        assertEquals(Guest.PLAYER_TYPE, game.getGuestCode(3, 1));
+        engine.undo();
+        assertEquals(Guest.EMPTY_TYPE, game.getGuestCode(3, 1));
+        assertEquals(Guest.PLAYER_TYPE, game.getGuestCode(2, 1));
+        edited = edited.clone();
+        edited[1] = "WPF0FMW";
+        assertEquals(0, engine.reloadWorld(new TextWorldMap(edited)));
+        engine.start();
+        engine.movePlayer(-1, 0);
+        assertEquals(Guest.FOOD_TYPE, game.getGuestCode(2, 1));
+    }
+
+    /**
+     * Undoing the move that let a deferred edit be patched reverts
+     * the edit, which is patched again once the player leaves, and the
+     * moves made before remain undoable.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testUndoPatch() throws GameLoadException {
+        Engine engine = play(MAP);
+        Game game = engine.getGame();
+        engine.movePlayer(1, 0);
+        String[] edited = MAP.clone();
+        edited[1] = "WPFFFMW";
+        assertEquals(0, engine.reloadWorld(new TextWorldMap(edited)));
+        engine.movePlayer(1, 0);
+        assertEquals(Guest.FOOD_TYPE, game.getGuestCode(2, 1));
+        assertEquals(1, game.getPlayer().getPointsEaten());
+        engine.undo();
+        assertEquals(Guest.PLAYER_TYPE, game.getGuestCode(2, 1));
+        assertEquals(Guest.FOOD_TYPE, game.getGuestCode(3, 1));
+        assertEquals(0, game.getPlayer().getPointsEaten());
+        assertTrue(game.hasMoves());
+        engine.undo();
+        assertEquals(Guest.PLAYER_TYPE, game.getGuestCode(1, 1));
+        assertEquals(Guest.FOOD_TYPE, game.getGuestCode(2, 1));
+        assertFalse(game.hasMoves());
+    }
+
+    /**
+     * The layout version tells viewers when walls have changed.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testLayoutVersion() throws GameLoadException {
+        Engine engine = play(MAP);
+        int version = engine.getLayoutVersion();
+        String[] edited = MAP.clone();
+        edited[3] = "W0FWFWW";
+        engine.reloadWorld(new TextWorldMap(edited));
+        assertEquals(version, engine.getLayoutVersion());
+        edited = MAP.clone();
+        edited[3] = "W0WWFWW";
+        engine.reloadWorld(new TextWorldMap(edited));
+        assertFalse(version == engine.getLayoutVersion());
+    }
+
+    /**
+     * A map of another size restarts the game.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testResize() throws GameLoadException {
+        Engine engine = play(MAP);
+        assertEquals(-1, engine.reloadWorld(
+                new TextWorldMap(GameTestCase.SIMPLE_MAP)));
+        assertEquals(GameTestCase.SIMPLE_MAP.length, engine.boardHeight());
+        assertTrue(engine.inStartingState());
+    }
+
+    /**
+     * A cell of a large map, on a chunked board, is patched.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testPatchLargeMap() throws GameLoadException {
+        final int size = 2048;
+        LevelGenerator generator = new LevelGenerator(size, size, 0);
+        generator.setMonsters(0);
+        String[] map = generator.generate();
+        Engine engine = play(map);
+        String[] edited = map.clone();
+        int y = size / 2 + 1;
+        edited[y] = edited[y].substring(0, 1) + Guest.WALL_TYPE
+            + edited[y].substring(2);
+        assertEquals(1, engine.reloadWorld(new TextWorldMap(edited)));
+        assertEquals(Guest.WALL_TYPE, engine.getGuestCode(1, y));
+    }
+
+    /**
+     * Write a map to a file.
+     * @param file The file
+     * @param map The map's rows
+     * @throws IOException if it can't be written.
+     */
+    private static void write(File file, String[] map) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            for (String row : map) {
+                out.write((row + "\n").getBytes("US-ASCII"));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Wait until the watcher has seen a number of versions of its file.
+     * @param watcher The watcher
+     * @param reloads The number of versions
+     * @throws InterruptedException if interrupted.
+     */
+    private static void await(MapWatcher watcher, int reloads)
+        throws InterruptedException {
+        final int timeout = 10000;
+        final int step = 10;
+        for (int t = 0; t < timeout && watcher.getReloads() < reloads;
+                t += step) {
+            Thread.sleep(step);
+        }
+    }
+
+    /**
+     * Edits of the watched file are patched into the game, and broken
+     * versions are skipped.
+     * @throws Exception if the file can't be written.
+     */
+    @Test
+    public void testWatch() throws Exception {
+        File file = File.createTempFile("watched", ".txt");
+        MapWatcher watcher = null;
+        try {
+            write(file, MAP);
+            Engine engine = play(MAP);
+            watcher = new MapWatcher(engine, file);
+            watcher.start();
+            String[] edited = MAP.clone();
+            edited[3] = "W0FWFWW";
+            write(file, edited);
+            await(watcher, 1);
+            assertEquals(Guest.FOOD_TYPE, engine.getGuestCode(2, 3));
+            assertEquals(null, watcher.getLastError());
+            assertEquals(0, watcher.reload());
+            write(file, new String[] {"W0W"});
+            assertEquals(0, watcher.reload());
+            assertNotNull(watcher.getLastError());
+            assertEquals(Guest.FOOD_TYPE, engine.getGuestCode(2, 3));
+        } finally {
+            if (watcher != null) {
+                watcher.stop();
+            }
+            assertTrue(file.delete());
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package jpacman.model;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark comparing a monster tick through the object graph
+ * (list of Monsters, positions obtained via their Cells) with the
+ * same tick running through the arrays of the MonsterStore.
+ * <p>
+ * The scan benchmarks only read positions and compute the direction each
+ * monster would like to take; the tick benchmarks actually carry out
+ * these moves as well, and are undone after each invocation, so that
+ * every tick starts from the same layout and the stack of moves doesn't
+ * grow.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonsterLayoutBenchmark {
+
+    /**
+     * Number of monsters on the board.
+     */
+    @Param({"10000" })
+    private int monsterCount;
+
+    /**
+     * The game containing the monsters.
+     */
+    private Game game;
+
+    /**
+     * The monsters in object layout.
+     */
+    private List<Monster> monsters;
+
+    /**
+     * The monsters in struct-of-arrays layout.
+     */
+    private MonsterStore store;
+
+    /**
+     * Location of the player, the monsters' target.
+     */
+    private int playerX, playerY;
+
+    /**
+     * Create the game.
+     * @throws GameLoadException if the generated map is wrong.
+     */
+    @Setup
+    public void setUp() throws GameLoadException {
+        game = new Game(monsterMap(monsterCount));
+        game.initialize();
+        monsters = game.getMonsters();
+        store = game.getBoard().getMonsterStore();
+        playerX = game.getPlayer().getLocation().getX();
+        playerY = game.getPlayer().getLocation().getY();
+    }
+
+    /**
+     * Undo the moves of a tick, so that ticks don't pile all monsters up.
+     */
+    @TearDown(Level.Invocation)
+    public void undoTick() {
+        while (game.hasMoves()) {
+            game.getMostRecentMove().undo();
+        }
+    }
+
+    /**
+     * @return Sum of directions chosen, reading the object graph.
+     */
+    @Benchmark
+    public int objectScan() {
+        int sum = 0;
+        for (Monster m : monsters) {
+            Cell c = m.getLocation();
+            sum += direction(c.getX(), c.getY());
+        }
+        return sum;
+    }
+
+    /**
+     * @return Sum of directions chosen, reading the parallel arrays.
+     */
+    @Benchmark
+    public int arrayScan() {
+        int sum = 0;
+        for (int id = 0; id < store.size(); id++) {
+            sum += direction(store.x(id), store.y(id));
+        }
+        return sum;
+    }
+
+    /**
+     * Move every monster towards the player, using the object graph.
+     */
+    @Benchmark
+    public void objectTick() {
+        final int[] dx = {1, -1, 0, 0 };
+        final int[] dy = {0, 0, 1, -1 };
+        for (Monster m : monsters) {
+            Cell c = m.getLocation();
+            int dir = direction(c.getX(), c.getY());
+            game.moveMonster(m, dx[dir], dy[dir]);
+        }
+    }
+
+    /**
+     * Move every monster towards the player, using the parallel arrays.
+     */
+    @Benchmark
+    public void arrayTick() {
+        final int[] dx = {1, -1, 0, 0 };
+        final int[] dy = {0, 0, 1, -1 };
+        for (int id = 0; id < store.size(); id++) {
+            int dir = direction(store.x(id), store.y(id));
+            game.moveMonster(id, dx[dir], dy[dir]);
+        }
+    }
+
+    /**
+     * @param x Horizontal position of a monster
+     * @param y Vertical position of a monster
+     * @return 0..3 for right, left, down, up towards the player.
+     */
+    private int direction(int x, int y) {
+        final int down = 2;
+        final int up = 3;
+        int result;
+        if (x < playerX) {
+            result = 0;
+        } else if (x > playerX) {
+            result = 1;
+        } else if (y < playerY) {
+            result = down;
+        } else {
+            result = up;
+        }
+        return result;
+    }
+
+    /**
+     * Create a walled square map with the player in the middle and
+     * monsters on every other cell of every other row.
+     * @param count Number of monsters required
+     * @return The map.
+     */
+    static String[] monsterMap(int count) {
+        int side = 2 * (int) Math.ceil(Math.sqrt(count)) + 3;
+        String[] map = new String[side];
+        int placed = 0;
+        for (int y = 0; y < side; y++) {
+            StringBuilder row = new StringBuilder(side);
+            for (int x = 0; x < side; x++) {
+                char c = Guest.EMPTY_TYPE;
+                if (x == 0 || y == 0 || x == side - 1 || y == side - 1) {
+                    c = Guest.WALL_TYPE;
+                } else if (x == side / 2 && y == side / 2) {
+                    c = Guest.PLAYER_TYPE;
+                } else if (x == 1 && y == 1) {
+                    c = Guest.FOOD_TYPE;
+                } else if (x % 2 == 1 && y % 2 == 0 && placed < count) {
+                    c = Guest.MONSTER_TYPE;
+                    placed++;
+                }
+                row.append(c);
+            }
+            map[y] = row.toString();
+        }
+        assert placed == count;
+        return map;
+    }
+}
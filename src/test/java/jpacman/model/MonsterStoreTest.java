@@ -0,0 +1,62 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Test cases for the struct-of-arrays monster store,
+ * checking that it mirrors the monsters' actual locations.
+ *
+ * @version $Id$
+ */
+public class MonsterStoreTest extends GameTestCase {
+
+    /**
+     * Each monster on the board has an id referring to its
+     * own position in the store.
+     */
+    @Test
+    public void testInitialStore() {
+        MonsterStore store = getTheGame().getBoard().getMonsterStore();
+        assertEquals(2, store.size());
+        int id = getTheMonster().getId();
+        assertSame(getTheMonster(), store.monster(id));
+        assertEquals(getMonsterCell().getX(), store.x(id));
+        assertEquals(getMonsterCell().getY(), store.y(id));
+        assertSame(getMonsterCell(), getTheMonster().getLocation());
+    }
+
+    /**
+     * Moves and undos are reflected in the stored positions.
+     */
+    @Test
+    public void testMoveAndUndo() {
+        MonsterStore store = getTheGame().getBoard().getMonsterStore();
+        int id = getTheMonster().getId();
+        MonsterMove move = new MonsterMove(getTheMonster(), getEmptyCell());
+        move.apply();
+        assertEquals(getEmptyCell().getX(), store.x(id));
+        assertEquals(getEmptyCell().getY(), store.y(id));
+        assertSame(getEmptyCell(), getTheMonster().getLocation());
+        move.undo();
+        assertEquals(getMonsterCell().getX(), store.x(id));
+        assertEquals(getMonsterCell().getY(), store.y(id));
+        assertSame(getMonsterCell(), getTheMonster().getLocation());
+    }
+
+    /**
+     * Monsters moved by id end up where the store says they are.
+     */
+    @Test
+    public void testMoveById() {
+        MonsterStore store = getTheGame().getBoard().getMonsterStore();
+        int id = getTheMonster().getId();
+        int dx = getEmptyCell().getX() - getMonsterCell().getX();
+        int dy = getEmptyCell().getY() - getMonsterCell().getY();
+        getTheGame().moveMonster(id, dx, dy);
+        assertSame(getEmptyCell(), getTheMonster().getLocation());
+        assertEquals(getEmptyCell().getX(), store.x(id));
+    }
+}
@@ -0,0 +1,105 @@
+package jpacman.model;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark comparing move resolution through double dispatch
+ * with resolution through the InteractionTable. Each invocation resolves
+ * (but does not apply) moves of the player and of every monster of the
+ * default map in all four directions.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveResolutionBenchmark {
+
+    /**
+     * Whether to use the table.
+     */
+    @Param({"false", "true" })
+    private boolean table;
+
+    /**
+     * All moving guests of the game.
+     */
+    private MovingGuest[] movers;
+
+    /**
+     * Their neighbouring cells, in all four directions.
+     */
+    private Cell[][] targets;
+
+    /**
+     * Set up the default game, and precompute the
+     * moves' sources and targets.
+     * @throws GameLoadException if the default map can't be loaded.
+     */
+    @Setup
+    public void setUp() throws GameLoadException {
+        Move.setTableResolution(table);
+        Game game = new Game(GameLoader.DEFAULT_WORLD_MAP);
+        game.initialize();
+        final int[][] offsets = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        movers = new MovingGuest[game.monsterCount() + 1];
+        targets = new Cell[movers.length][offsets.length];
+        for (int i = 0; i < movers.length; i++) {
+            if (i < game.monsterCount()) {
+                movers[i] = game.getMonster(i);
+            } else {
+                movers[i] = game.getPlayer();
+            }
+            for (int d = 0; d < offsets.length; d++) {
+                targets[i][d] = movers[i].getLocation().cellAtOffset(
+                        offsets[d][0], offsets[d][1]);
+            }
+        }
+    }
+
+    /**
+     * Restore the default resolution mode.
+     */
+    @TearDown
+    public void tearDown() {
+        Move.setTableResolution(false);
+    }
+
+    /**
+     * @return Number of possible moves found.
+     */
+    @Benchmark
+    public int resolveAll() {
+        int possible = 0;
+        for (int i = 0; i < movers.length; i++) {
+            for (Cell target : targets[i]) {
+                Move m;
+                if (movers[i] instanceof Player) {
+                    m = new PlayerMove((Player) movers[i], target);
+                } else {
+                    m = new MonsterMove((Monster) movers[i], target);
+                }
+                if (m.movePossible()) {
+                    possible++;
+                }
+            }
+        }
+        return possible;
+    }
+}
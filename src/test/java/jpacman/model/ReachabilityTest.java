@@ -0,0 +1,99 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test cases for the reachability analysis of food.
+ *
+ * @version $Id$
+ */
+public class ReachabilityTest {
+
+    /**
+     * Map with two food elements walled off in the top right corner.
+     */
+    private static final String[] WALLED_MAP = {
+        "WWWWWWW",
+        "WP0MWFW",
+        "WF00WFW",
+        "W0000WW",
+        "WWWWWWW"
+    };
+
+    /**
+     * Walled off food is found, and the rest is reachable.
+     */
+    @Test
+    public void testAnalyse() {
+        Reachability r = Reachability.analyse(new TextWorldMap(WALLED_MAP));
+        assertEquals(1, r.getReachableFood());
+        assertTrue(r.isReachable(3, 1));
+        assertFalse(r.isReachable(5, 1));
+        assertFalse(r.isReachable(0, 0));
+        final int cells = 10;
+        assertEquals(cells, r.getReachableCells());
+        int[] found = new int[2];
+        assertEquals(2, r.unreachableFood(found));
+        assertEquals(5, found[0]);
+        assertEquals(1, found[1]);
+    }
+
+    /**
+     * The loader reports unreachable food.
+     */
+    @Test
+    public void testCheckReachability() {
+        assertNull(GameLoader.checkReachability(
+                new TextWorldMap(GameLoader.DEFAULT_WORLD_MAP)));
+        assertEquals("2 food element(s) can't be reached, e.g. at (5,1)",
+                GameLoader.checkReachability(new TextWorldMap(WALLED_MAP)));
+    }
+
+    /**
+     * Unreachable food isn't needed to win the game.
+     * @throws GameLoadException never.
+     */
+    @Test
+    public void testWinnable() throws GameLoadException {
+        Game game = new Game(WALLED_MAP);
+        game.initialize();
+        assertEquals(2, game.getUnreachableFood());
+        game.movePlayer(0, 1);
+        assertTrue(game.playerWon());
+    }
+
+    /**
+     * A serpentine maze of a million cells, in which the fill
+     * has to visit half of the cells, is analysed quickly.
+     */
+    @Test(timeout = 10000)
+    public void testLargeMaze() {
+        final int size = 1001;
+        String[] map = new String[size];
+        for (int y = 0; y < size; y++) {
+            StringBuilder row = new StringBuilder(size);
+            for (int x = 0; x < size; x++) {
+                boolean inner = y > 0 && y < size - 1;
+                boolean gap = inner && (y % 4 == 2 && x == size - 2
+                    || y % 4 == 0 && x == 1);
+                if (y % 2 == 0 && !gap || x == 0 || x == size - 1) {
+                    row.append(Guest.WALL_TYPE);
+                } else {
+                    row.append(Guest.FOOD_TYPE);
+                }
+            }
+            map[y] = row.toString();
+        }
+        map[1] = "W" + Guest.PLAYER_TYPE + map[1].substring(2);
+        Reachability r = Reachability.analyse(new TextWorldMap(map));
+        assertEquals(0, r.unreachableFood(new int[0]));
+        int corridors = size / 2;
+        int gaps = corridors - 1;
+        assertEquals(corridors * (size - 2) + gaps - 1, r.getReachableFood());
+    }
+}
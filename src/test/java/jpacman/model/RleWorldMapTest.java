@@ -0,0 +1,123 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Test cases for run-length encoded world maps.
+ *
+ * @version $Id$
+ */
+public class RleWorldMapTest {
+
+    /**
+     * Read a map from its run-length encoded text.
+     * @param text The runs
+     * @return The map
+     * @throws Exception if the text is incorrect.
+     */
+    private RleWorldMap read(String text) throws Exception {
+        return RleWorldMap.read(new StringReader(text));
+    }
+
+    /**
+     * Runs are expanded into the right cells.
+     * @throws Exception if the map is rejected.
+     */
+    @Test
+    public void testRead() throws Exception {
+        RleWorldMap map = read("W F3 05 P W\nW11\r\n");
+        assertEquals(11, map.getWidth());
+        assertEquals(2, map.getHeight());
+        assertEquals(6, map.getRunCount());
+        String row = "WFFF00000PW";
+        for (int x = 0; x < row.length(); x++) {
+            assertEquals(row.charAt(x), map.guestCode(x, 0));
+            assertEquals(Guest.WALL_TYPE, map.guestCode(x, 1));
+        }
+    }
+
+    /**
+     * Encoding, writing and reading back yields the same map,
+     * which is considered sane on the basis of its runs.
+     * @throws Exception if the map is rejected.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        TextWorldMap text = new TextWorldMap(GameLoader.DEFAULT_WORLD_MAP);
+        StringWriter out = new StringWriter();
+        RleWorldMap.write(text, out);
+        RleWorldMap map = read(out.toString());
+        assertNull(GameLoader.checkSanity(map));
+        assertTrue(map.getRunCount() < map.getWidth() * map.getHeight());
+        for (int y = 0; y < text.getHeight(); y++) {
+            for (int x = 0; x < text.getWidth(); x++) {
+                assertEquals(text.guestCode(x, y), map.guestCode(x, y));
+            }
+        }
+    }
+
+    /**
+     * A game can be played directly on a run-length encoded map.
+     * @throws Exception if the map is rejected.
+     */
+    @Test
+    public void testGame() throws Exception {
+        Game game = new Game(read("0 W 0\nF P 0\nF M 0\n0 W M"));
+        game.initialize();
+        assertEquals(2, game.monsterCount());
+        assertEquals(GameTestCase.SIMPLE_MAP[1].charAt(0),
+                game.getBoard().guestCode(0, 1));
+    }
+
+    /**
+     * Sanity checks on runs find the same errors as those on text.
+     */
+    @Test
+    public void testCheckSanity() {
+        RleWorldMap noPlayer = new RleWorldMap();
+        noPlayer.addRun(Guest.WALL_TYPE, 2);
+        noPlayer.endRow();
+        assertNotNull(GameLoader.checkSanity(noPlayer));
+        RleWorldMap illegal = new RleWorldMap();
+        illegal.addRun(Guest.PLAYER_TYPE, 1);
+        illegal.addRun('/', 1);
+        illegal.endRow();
+        assertNotNull(GameLoader.checkSanity(illegal));
+    }
+
+    /**
+     * Incorrect encodings are rejected, with the offending line.
+     */
+    @Test
+    public void testRejected() {
+        final String[] wrong = {
+            "P W\nW\n",
+            "P  W\n",
+            "P Wx\n",
+            "P W0\n",
+            "P W99999999999\n",
+            "P\n\nW\n",
+            "P /\n",
+            "W2\n",
+        };
+        for (String text : wrong) {
+            try {
+                read(text);
+                fail("Accepted " + text);
+            } catch (GameLoadException gle) {
+                assertNotNull(gle.getMessage());
+            } catch (Exception e) {
+                fail("Unexpected " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package jpacman.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Test cases for the spatial index of moving guests,
+ * in particular whether it remains up to date when
+ * moves are applied and undone.
+ *
+ * @version $Id$
+ */
+public class SpatialIndexTest extends GameTestCase {
+
+    /**
+     * Array large enough to hold all monsters of the simple map.
+     */
+    private Monster[] found = new Monster[2];
+
+    /**
+     * The player and both monsters are indexed upon loading.
+     */
+    @Test
+    public void testInitialIndex() {
+        assertEquals(3, getTheGame().getBoard().getGuestIndex().size());
+        assertEquals(0, getTheGame().monstersNearPlayer(0, found));
+        assertEquals(1, getTheGame().monstersNearPlayer(1, found));
+        assertSame(getTheMonster(), found[0]);
+        assertEquals(2, getTheGame().monstersNearPlayer(3, found));
+    }
+
+    /**
+     * Rectangle queries include both corners.
+     */
+    @Test
+    public void testRectangle() {
+        assertEquals(1, getTheGame().monstersInRectangle(0, 0, 1, 2, found));
+        assertSame(getTheMonster(), found[0]);
+        assertEquals(2, getTheGame().monstersInRectangle(0, 0, 2, 3, found));
+        assertEquals(0, getTheGame().monstersInRectangle(0, 0, 0, 3, found));
+    }
+
+    /**
+     * Applying and undoing a monster move updates the index.
+     */
+    @Test
+    public void testMoveAndUndo() {
+        MonsterMove move = new MonsterMove(getTheMonster(),
+                getTheGame().getBoard().getCell(0, 3));
+        move.apply();
+        assertEquals(1, getTheGame().monstersInRectangle(0, 3, 0, 3, found));
+        assertEquals(0, getTheGame().monstersInRectangle(1, 2, 1, 2, found));
+        move.undo();
+        assertEquals(0, getTheGame().monstersInRectangle(0, 3, 0, 3, found));
+        assertEquals(1, getTheGame().monstersInRectangle(1, 2, 1, 2, found));
+    }
+
+    /**
+     * The number of monsters found is reported even if the
+     * result array is too small to hold them all.
+     */
+    @Test
+    public void testSmallResultArray() {
+        Monster[] tooSmall = new Monster[1];
+        assertEquals(2, getTheGame().monstersNearPlayer(3, tooSmall));
+    }
+
+    /**
+     * Moves crossing bucket borders are tracked as well.
+     * @throws GameLoadException if the map can't be loaded.
+     */
+    @Test
+    public void testAcrossBuckets() throws GameLoadException {
+        final int width = 3 * SpatialIndex.BUCKET_SIZE;
+        final int monsterX = SpatialIndex.BUCKET_SIZE - 1;
+        StringBuilder row = new StringBuilder();
+        for (int x = 0; x < width; x++) {
+            row.append(Guest.EMPTY_TYPE);
+        }
+        row.setCharAt(0, Guest.PLAYER_TYPE);
+        row.setCharAt(monsterX, Guest.MONSTER_TYPE);
+        row.setCharAt(width - 1, Guest.FOOD_TYPE);
+        Game game = new Game(new String[] {row.toString()});
+        game.initialize();
+
+        assertEquals(0, game.monstersNearPlayer(monsterX - 1, found));
+        assertEquals(1, game.monstersNearPlayer(monsterX, found));
+
+        game.moveMonster(found[0], 1, 0);
+        assertEquals(0, game.monstersNearPlayer(monsterX, found));
+        assertEquals(1, game.monstersInRectangle(
+                monsterX + 1, 0, width - 1, 0, found));
+    }
+}